@@ -0,0 +1,151 @@
+package com.scvetkovic.android.foodmaniac;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Build;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the bytes allocated per bound row by {@link FoodPagedAdapter} with the binding of
+ * the cursor adapter it replaced, which looked up its views and columns and read every column
+ * as a String for each row. Both bind the same recipes into the same list item, on the main
+ * thread, and the numbers are logged so they can be compared between changes.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FoodPagedAdapterBindTest {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = FoodPagedAdapterBindTest.class.getSimpleName();
+
+    private static final int ROWS = 200;
+
+    /** Rows near the end load the next page when bound, so they are left out */
+    private static final int BOUND_ROWS = ROWS - 50;
+
+    /** Passes over the rows before and while measuring */
+    private static final int WARMUP_PASSES = 5;
+    private static final int PASSES = 20;
+
+    private Context mContext;
+    private List<FoodRow> mRows;
+
+    @Before
+    public void setUp() {
+        mContext = new ContextThemeWrapper(InstrumentationRegistry.getTargetContext(),
+                R.style.AppTheme);
+        mRows = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            String hashtags = i % 3 == 0 ? "" : "#brzo #lako #ručak";
+            mRows.add(new FoodRow(i + 1, ("Domaća pita sa sirom " + i).toCharArray(),
+                    hashtags.toCharArray(), 5 * (i % 60), null));
+        }
+    }
+
+    @Test
+    public void bindsWithFewerAllocationsThanCursorAdapter() {
+        assumeTrue("Allocations are only counted from API 23",
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.M);
+        final long[] bytesPerRow = new long[2];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                bytesPerRow[0] = measureCursorAdapter();
+                bytesPerRow[1] = measurePagedAdapter();
+            }
+        });
+        Log.i(LOG_TAG, "Bytes allocated per bound row: cursor adapter " + bytesPerRow[0]
+                + ", paged adapter " + bytesPerRow[1]);
+        assertTrue("Paged adapter allocates " + bytesPerRow[1] + " bytes per row, cursor adapter "
+                + bytesPerRow[0], bytesPerRow[1] < bytesPerRow[0]);
+    }
+
+    private long measurePagedAdapter() {
+        FoodPagedAdapter adapter = new FoodPagedAdapter(mContext);
+        adapter.showSnapshot(mRows);
+        FoodPagedAdapter.ViewHolder holder = adapter.onCreateViewHolder(
+                new FrameLayout(mContext), 0);
+
+        long start = 0;
+        for (int pass = -WARMUP_PASSES; pass < PASSES; pass++) {
+            if (pass == 0) {
+                start = ScrollBenchmark.getBytesAllocated();
+            }
+            for (int i = 0; i < BOUND_ROWS; i++) {
+                adapter.onBindViewHolder(holder, i);
+            }
+        }
+        long bytes = ScrollBenchmark.getBytesAllocated() - start;
+        adapter.close();
+        return bytes / (PASSES * BOUND_ROWS);
+    }
+
+    private long measureCursorAdapter() {
+        MatrixCursor cursor = new MatrixCursor(FoodRow.PROJECTION);
+        for (FoodRow row : mRows) {
+            cursor.addRow(new Object[] { row.id, new String(row.name), new String(row.hashtags),
+                    row.time });
+        }
+        View view = LayoutInflater.from(mContext).inflate(R.layout.list_item,
+                new FrameLayout(mContext), false);
+
+        long start = 0;
+        for (int pass = -WARMUP_PASSES; pass < PASSES; pass++) {
+            if (pass == 0) {
+                start = ScrollBenchmark.getBytesAllocated();
+            }
+            for (int i = 0; i < BOUND_ROWS; i++) {
+                cursor.moveToPosition(i);
+                bindCursorRow(view, cursor);
+            }
+        }
+        long bytes = ScrollBenchmark.getBytesAllocated() - start;
+        cursor.close();
+        return bytes / (PASSES * BOUND_ROWS);
+    }
+
+    /**
+     * The binding of the cursor adapter the catalog used before the paged adapter.
+     */
+    private void bindCursorRow(View view, Cursor cursor) {
+        TextView nameTextView = (TextView) view.findViewById(R.id.name);
+        TextView summaryTextView = (TextView) view.findViewById(R.id.summary);
+        TextView minutesTextView = (TextView) view.findViewById(R.id.preparation_time);
+
+        int nameColumnIndex = cursor.getColumnIndex(FoodEntry.COLUMN_FOOD_NAME);
+        int hashtagColumnIndex = cursor.getColumnIndex(FoodEntry.COLUMN_FOOD_HASHTAGS);
+        int minutesColumnIndex = cursor.getColumnIndex(FoodEntry.COLUMN_FOOD_TIME);
+
+        String recipeName = cursor.getString(nameColumnIndex);
+        String recipeHashtags = cursor.getString(hashtagColumnIndex);
+        String recipeMinutes = cursor.getString(minutesColumnIndex);
+
+        if (TextUtils.isEmpty(recipeHashtags)) {
+            recipeHashtags = mContext.getString(R.string.no_hashtag);
+        }
+
+        nameTextView.setText(recipeName);
+        summaryTextView.setText(recipeHashtags);
+        minutesTextView.setText(recipeMinutes);
+    }
+}
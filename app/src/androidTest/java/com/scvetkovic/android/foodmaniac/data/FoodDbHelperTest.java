@@ -0,0 +1,160 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the journaling of {@link FoodDbHelper} on the device's own SQLite: with write-ahead
+ * logging, readers on other threads keep reading while a long write transaction is open, and
+ * see the recipes committed before it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FoodDbHelperTest {
+
+    /** Recipes in the database before the write starts */
+    private static final int RECIPES = 200;
+
+    /** Reader threads querying while the write is open */
+    private static final int READERS = 4;
+
+    /** Queries made by each reader */
+    private static final int QUERIES_PER_READER = 20;
+
+    /** Time the write transaction is held open for */
+    private static final long WRITE_MILLIS = 3000;
+
+    private TestDatabaseContext mContext;
+    private FoodDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mContext = new TestDatabaseContext(InstrumentationRegistry.getTargetContext());
+        mContext.deleteDatabase(FoodDbHelper.DATABASE_NAME);
+        mDbHelper = new FoodDbHelper(mContext);
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < RECIPES; i++) {
+                db.insert(FoodEntry.TABLE_NAME, null, recipe("Recipe " + i));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(FoodDbHelper.DATABASE_NAME);
+    }
+
+    @Test
+    public void usesWriteAheadLog() {
+        Cursor cursor = mDbHelper.getWritableDatabase().rawQuery("PRAGMA journal_mode", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("wal", cursor.getString(0).toLowerCase());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void readersDontWaitForWriter() throws InterruptedException {
+        final SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch readersDone = new CountDownLatch(READERS);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // Insert a recipe and hold the transaction open, like a slow save
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                db.beginTransaction();
+                try {
+                    db.insert(FoodEntry.TABLE_NAME, null, recipe("Uncommitted"));
+                    writing.countDown();
+                    readersDone.await(WRITE_MILLIS, TimeUnit.MILLISECONDS);
+                    db.setTransactionSuccessful();
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        });
+        writer.start();
+        assertTrue(writing.await(WRITE_MILLIS, TimeUnit.MILLISECONDS));
+
+        // Every reader sees the recipes committed before the write, and none of them waits
+        // until the write commits
+        final AtomicInteger wrongCounts = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int r = 0; r < READERS; r++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int q = 0; q < QUERIES_PER_READER; q++) {
+                            if (countRecipes(mDbHelper.getReadableDatabase()) != RECIPES) {
+                                wrongCounts.incrementAndGet();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        readersDone.countDown();
+                    }
+                }
+            }).start();
+        }
+        boolean readersFinished = readersDone.await(WRITE_MILLIS, TimeUnit.MILLISECONDS);
+        long readMillis = (System.nanoTime() - start) / 1000000;
+        writer.join();
+
+        assertNull(failure.get());
+        assertTrue("Readers stalled behind the writer for " + readMillis + " ms",
+                readersFinished && readMillis < WRITE_MILLIS / 2);
+        assertEquals(0, wrongCounts.get());
+        assertEquals(RECIPES + 1, countRecipes(db));
+    }
+
+    private static long countRecipes(SQLiteDatabase db) {
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + FoodEntry.TABLE_NAME, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ContentValues recipe(String name) {
+        ContentValues values = new ContentValues();
+        values.put(FoodEntry.COLUMN_FOOD_NAME, name);
+        values.put(FoodEntry.COLUMN_FOOD_MEAL, FoodEntry.MEAL_LUNCH);
+        values.put(FoodEntry.COLUMN_FOOD_TIME, 30);
+        return values;
+    }
+}
@@ -0,0 +1,57 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import android.database.DatabaseErrorHandler;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.File;
+
+/**
+ * Context giving the databases and preferences opened through it names of their own, so the
+ * instrumentation tests, which run in the app's process, never touch the user's recipes.
+ */
+class TestDatabaseContext extends ContextWrapper {
+
+    /** Prefix of the names of the test databases and preferences */
+    private static final String PREFIX = "test_";
+
+    TestDatabaseContext(Context base) {
+        super(base);
+    }
+
+    @Override
+    public File getDatabasePath(String name) {
+        return super.getDatabasePath(PREFIX + name);
+    }
+
+    @Override
+    public SQLiteDatabase openOrCreateDatabase(String name, int mode,
+                                               SQLiteDatabase.CursorFactory factory) {
+        return super.openOrCreateDatabase(PREFIX + name, mode, factory);
+    }
+
+    @Override
+    public SQLiteDatabase openOrCreateDatabase(String name, int mode,
+                                               SQLiteDatabase.CursorFactory factory,
+                                               DatabaseErrorHandler errorHandler) {
+        return super.openOrCreateDatabase(PREFIX + name, mode, factory, errorHandler);
+    }
+
+    @Override
+    public boolean deleteDatabase(String name) {
+        return super.deleteDatabase(PREFIX + name);
+    }
+
+    @Override
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        return super.getSharedPreferences(PREFIX + name, mode);
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        // Callers keeping the application context must keep the renamed files too
+        return this;
+    }
+}
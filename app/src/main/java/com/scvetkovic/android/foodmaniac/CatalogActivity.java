@@ -1,39 +1,119 @@
 package com.scvetkovic.android.foodmaniac;
 
-import android.app.LoaderManager;
 import android.content.ContentUris;
 import android.content.ContentValues;
-import android.content.CursorLoader;
 import android.content.Intent;
-import android.content.Loader;
-import android.database.Cursor;
+import android.database.ContentObserver;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.design.widget.FloatingActionButton;
+import android.support.v4.view.MenuItemCompat;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.Toast;
 
 import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
 
+import java.io.File;
+
 /**
  * Displays list of recipes that were entered and stored in the app.
  */
-public class CatalogActivity extends AppCompatActivity implements
-        LoaderManager.LoaderCallbacks<Cursor> {
+public class CatalogActivity extends AppCompatActivity {
+
+    /** Adapter for the RecyclerView, loading the recipes a page at a time */
+    FoodPagedAdapter mAdapter;
+
+    /** Empty view shown when there are no recipes */
+    private View mEmptyView;
+
+    /** Keys for saving the order and the filters of the list */
+    private static final String STATE_SORT_COLUMN = "sort_column";
+    private static final String STATE_MEAL = "meal";
+    private static final String STATE_MAX_TIME = "max_time";
+    private static final String STATE_SEARCH_TEXT = "search_text";
+
+    /** Time to wait after a keystroke before the list is searched */
+    private static final long SEARCH_DEBOUNCE_MS = 150;
+
+    /** Column the list is sorted on */
+    private String mSortColumn = FoodEntry._ID;
 
-    /** Identifier for the recipe data loader */
-    private static final int PET_LOADER = 0;
+    /** Meal category and maximum preparation time shown, or -1 for any */
+    private int mMeal = -1;
+    private int mMaxTime = -1;
 
-    /** Adapter for the ListView */
-    FoodCursorAdapter mCursorAdapter;
+    /** Text typed in the search box */
+    private String mSearchText = "";
+
+    /** Whether the first page has been loaded since the activity was created */
+    private boolean mFirstPageLoaded;
+
+    /** Searches the list once the user stops typing for {@link #SEARCH_DEBOUNCE_MS} */
+    private final Handler mSearchHandler = new Handler();
+    private final Runnable mSearchRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mAdapter.setSearchText(mSearchText);
+        }
+    };
+
+    /**
+     * Applies the recipe changes to the list. Changes to a single recipe carry its _id and the
+     * kind of change, and only move that recipe; anything else makes the list diff itself.
+     */
+    private final ContentObserver mFoodObserver = new ContentObserver(new Handler()) {
+        @Override
+        public void onChange(boolean selfChange) {
+            // Only called without the uri before API 16
+            mAdapter.reload();
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            // The hashtag and ingredient term counts and the lists derived from the recipes,
+            // like the searches, are notified under the recipe URI too
+            if (uri != null && !FoodEntry.isRecipeUri(uri)) {
+                return;
+            }
+            String change = uri != null ? uri.getQueryParameter(FoodEntry.QUERY_PARAM_CHANGE) : null;
+            if (change == null || FoodEntry.CHANGE_BULK.equals(change)) {
+                mAdapter.reload();
+                return;
+            }
+            long id;
+            try {
+                id = ContentUris.parseId(uri);
+            } catch (NumberFormatException | UnsupportedOperationException e) {
+                id = -1;
+            }
+            if (id < 0) {
+                mAdapter.reload();
+            } else {
+                mAdapter.onRecipeChanged(id, change);
+            }
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.beginSection("CatalogActivity.onCreate");
+
+        // Open the database and read the first page in the background while the views are
+        // inflated, instead of only once the list asks for it. A recreated activity restores
+        // its own query, and the database is open by then.
+        if (savedInstanceState == null) {
+            FoodPagedAdapter.warmUp(this);
+        }
+
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_catalog);
 
@@ -47,28 +127,47 @@ public class CatalogActivity extends AppCompatActivity implements
             }
         });
 
-        // Find the ListView which will be populated with the recipe data
-        ListView petListView = (ListView) findViewById(R.id.list);
+        // Find the RecyclerView which will be populated with the recipe data
+        RecyclerView foodRecyclerView = (RecyclerView) findViewById(R.id.list);
+        foodRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        foodRecyclerView.setHasFixedSize(true);
 
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        petListView.setEmptyView(emptyView);
+        // Find the empty view, which is only shown when the list has 0 items.
+        mEmptyView = findViewById(R.id.empty_view);
 
-        // Setup an Adapter to create a list item for each row of recipe data in the Cursor.
-        // There is no pet data yet (until the loader finishes) so pass in null for the Cursor.
-        mCursorAdapter = new FoodCursorAdapter(this, null);
-        petListView.setAdapter(mCursorAdapter);
+        // Setup an Adapter to create a list item for each row of recipe data. There is no
+        // recipe data yet (until the first page is loaded).
+        mAdapter = new FoodPagedAdapter(this);
+        mAdapter.setOnPageLoadedListener(new FoodPagedAdapter.OnPageLoadedListener() {
+            @Override
+            public void onPageLoaded(int itemCount) {
+                mEmptyView.setVisibility(itemCount == 0 ? View.VISIBLE : View.GONE);
+                if (!mFirstPageLoaded) {
+                    mFirstPageLoaded = true;
+                    StartupTrace.mark("First catalog page loaded");
+                    // Tells the system the start is complete, for the "Fully drawn" log line
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                        reportFullyDrawn();
+                    }
+                }
+            }
+        });
+        foodRecyclerView.setAdapter(mAdapter);
+
+        // Log how smoothly the list scrolls while developing
+        if (BuildConfig.DEBUG) {
+            ScrollBenchmark.attach(foodRecyclerView, mAdapter);
+        }
 
         // Setup the item click listener
-        petListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        mAdapter.setOnRecipeClickListener(new FoodPagedAdapter.OnRecipeClickListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
+            public void onRecipeClick(long id) {
                 // Create new intent to go to {@link EditorActivity}
                 Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
 
                 // Form the content URI that represents the specific recipe that was clicked on,
-                // by appending the "id" (passed as input to this method) onto the
-                // {@link FoodEntry#CONTENT_URI}.
+                // by appending the "id" onto the {@link FoodEntry#CONTENT_URI}.
                 Uri currentPetUri = ContentUris.withAppendedId(FoodEntry.CONTENT_URI, id);
 
                 // Set the URI on the data field of the intent
@@ -79,8 +178,48 @@ public class CatalogActivity extends AppCompatActivity implements
             }
         });
 
-        // Kick off the loader
-        getLoaderManager().initLoader(PET_LOADER, null, this);
+        // Reload the list whenever a recipe is inserted, updated or deleted
+        getContentResolver().registerContentObserver(FoodEntry.CONTENT_URI, true, mFoodObserver);
+
+        // Restore the order and the filters the list was shown with
+        if (savedInstanceState != null) {
+            mSortColumn = savedInstanceState.getString(STATE_SORT_COLUMN, FoodEntry._ID);
+            mMeal = savedInstanceState.getInt(STATE_MEAL, -1);
+            mMaxTime = savedInstanceState.getInt(STATE_MAX_TIME, -1);
+            mSearchText = savedInstanceState.getString(STATE_SEARCH_TEXT, "");
+        }
+
+        // Show the rows saved by the last run until the first page is read, if the list is
+        // shown the way the catalog opens. The adapter reads them on its page thread.
+        mAdapter.showSnapshotOnLoad();
+
+        // Kick off loading the first page, unless a restored query already did
+        boolean loading = mAdapter.setQuery(mSortColumn, mMeal, mMaxTime);
+        if (!mSearchText.isEmpty()) {
+            mAdapter.setSearchText(mSearchText);
+            loading = true;
+        }
+        if (!loading) {
+            mAdapter.reload();
+        }
+        StartupTrace.endSection();
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_SORT_COLUMN, mSortColumn);
+        outState.putInt(STATE_MEAL, mMeal);
+        outState.putInt(STATE_MAX_TIME, mMaxTime);
+        outState.putString(STATE_SEARCH_TEXT, mSearchText);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        getContentResolver().unregisterContentObserver(mFoodObserver);
+        mSearchHandler.removeCallbacks(mSearchRunnable);
+        mAdapter.close();
     }
 
     /**
@@ -108,22 +247,164 @@ public class CatalogActivity extends AppCompatActivity implements
         Log.v("CatalogActivity", rowsDeleted + " rows deleted from recepti database");
     }
 
+    /**
+     * Helper method to export all recipes to, or import recipes from, the recipe file in the
+     * app's external files directory.
+     */
+    private void transferRecipes(boolean export) {
+        File directory = getExternalFilesDir(null);
+        if (directory == null) {
+            Toast.makeText(this, export ? R.string.export_failed : R.string.import_failed,
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+        File file = new File(directory, RecipeTransferTask.FILE_NAME);
+        new RecipeTransferTask(this, file, export).execute();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+
+        // Search the list as the user types, restoring the search shown before
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        final SearchView searchView = (SearchView) MenuItemCompat.getActionView(searchItem);
+        searchView.setQueryHint(getString(R.string.search_hint));
+        if (!mSearchText.isEmpty()) {
+            String searchText = mSearchText;
+            MenuItemCompat.expandActionView(searchItem);
+            searchView.setQuery(searchText, false);
+        }
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                // Every keystroke restarts the wait, so only the text typed last is searched.
+                // The adapter cancels the queries of the text searched before.
+                mSearchText = newText;
+                mSearchHandler.removeCallbacks(mSearchRunnable);
+                mSearchHandler.postDelayed(mSearchRunnable, SEARCH_DEBOUNCE_MS);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mSearchText = query;
+                mSearchHandler.removeCallbacks(mSearchRunnable);
+                mSearchRunnable.run();
+                searchView.clearFocus();
+                return true;
+            }
+        });
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        // Check the options the list is currently shown with
+        int sortId = R.id.sort_added;
+        if (FoodEntry.COLUMN_FOOD_NAME.equals(mSortColumn)) {
+            sortId = R.id.sort_name;
+        } else if (FoodEntry.COLUMN_FOOD_TIME.equals(mSortColumn)) {
+            sortId = R.id.sort_time;
+        }
+        menu.findItem(sortId).setChecked(true);
+
+        int mealId = R.id.filter_all_meals;
+        switch (mMeal) {
+            case FoodEntry.MEAL_BREAKFAST:
+                mealId = R.id.filter_breakfast;
+                break;
+            case FoodEntry.MEAL_LUNCH:
+                mealId = R.id.filter_lunch;
+                break;
+            case FoodEntry.MEAL_DINNER:
+                mealId = R.id.filter_dinner;
+                break;
+            case FoodEntry.MEAL_DESSERT:
+                mealId = R.id.filter_dessert;
+                break;
+        }
+        menu.findItem(mealId).setChecked(true);
+
+        int timeId = R.id.filter_any_time;
+        if (mMaxTime == 15) {
+            timeId = R.id.filter_max_15;
+        } else if (mMaxTime == 30) {
+            timeId = R.id.filter_max_30;
+        } else if (mMaxTime == 60) {
+            timeId = R.id.filter_max_60;
+        }
+        menu.findItem(timeId).setChecked(true);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    /**
+     * Show the list with the given order and filters.
+     */
+    private void setQuery(String sortColumn, int meal, int maxTime) {
+        mSortColumn = sortColumn;
+        mMeal = meal;
+        mMaxTime = maxTime;
+        mAdapter.setQuery(sortColumn, meal, maxTime);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
         switch (item.getItemId()) {
+            // Respond to a click on one of the sort options
+            case R.id.sort_added:
+                setQuery(FoodEntry._ID, mMeal, mMaxTime);
+                return true;
+            case R.id.sort_name:
+                setQuery(FoodEntry.COLUMN_FOOD_NAME, mMeal, mMaxTime);
+                return true;
+            case R.id.sort_time:
+                setQuery(FoodEntry.COLUMN_FOOD_TIME, mMeal, mMaxTime);
+                return true;
+            // Respond to a click on one of the meal filters
+            case R.id.filter_all_meals:
+                setQuery(mSortColumn, -1, mMaxTime);
+                return true;
+            case R.id.filter_breakfast:
+                setQuery(mSortColumn, FoodEntry.MEAL_BREAKFAST, mMaxTime);
+                return true;
+            case R.id.filter_lunch:
+                setQuery(mSortColumn, FoodEntry.MEAL_LUNCH, mMaxTime);
+                return true;
+            case R.id.filter_dinner:
+                setQuery(mSortColumn, FoodEntry.MEAL_DINNER, mMaxTime);
+                return true;
+            case R.id.filter_dessert:
+                setQuery(mSortColumn, FoodEntry.MEAL_DESSERT, mMaxTime);
+                return true;
+            // Respond to a click on one of the preparation time filters
+            case R.id.filter_any_time:
+                setQuery(mSortColumn, mMeal, -1);
+                return true;
+            case R.id.filter_max_15:
+                setQuery(mSortColumn, mMeal, 15);
+                return true;
+            case R.id.filter_max_30:
+                setQuery(mSortColumn, mMeal, 30);
+                return true;
+            case R.id.filter_max_60:
+                setQuery(mSortColumn, mMeal, 60);
+                return true;
             // Respond to a click on the "Insert dummy data" menu option
             case R.id.action_insert_existing_data:
                 insertFood();
                 return true;
+            // Respond to a click on the "Export recipes" menu option
+            case R.id.action_export_recipes:
+                transferRecipes(true);
+                return true;
+            // Respond to a click on the "Import recipes" menu option
+            case R.id.action_import_recipes:
+                transferRecipes(false);
+                return true;
             // Respond to a click on the "Delete all entries" menu option
             case R.id.action_delete_all_entries:
                 deleteAllFood();
@@ -131,34 +412,4 @@ public class CatalogActivity extends AppCompatActivity implements
         }
         return super.onOptionsItemSelected(item);
     }
-
-    @Override
-    public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        // Define a projection that specifies the columns from the table we care about.
-        String[] projection = {
-                FoodEntry._ID,
-                FoodEntry.COLUMN_FOOD_NAME,
-                FoodEntry.COLUMN_FOOD_HASHTAGS,
-                FoodEntry.COLUMN_FOOD_TIME};
-
-        // This loader will execute the ContentProvider's query method on a background thread
-        return new CursorLoader(this,   // Parent activity context
-                FoodEntry.CONTENT_URI,   // Provider content URI to query
-                projection,             // Columns to include in the resulting Cursor
-                null,                   // No selection clause
-                null,                   // No selection arguments
-                null);                  // Default sort order
-    }
-
-    @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        // Update {@link FoodCursorAdapter} with this new cursor containing updated recipe data
-        mCursorAdapter.swapCursor(data);
-    }
-
-    @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
-        // Callback called when the data needs to be deleted
-        mCursorAdapter.swapCursor(null);
-    }
 }
@@ -0,0 +1,184 @@
+package com.scvetkovic.android.foodmaniac;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The first screen of catalog rows, saved in a small file so a cold start can show them before
+ * the database is even open. The rows are replaced by the ones read from the provider as soon
+ * as the first page is loaded, so a snapshot that is out of date only shows for a moment.
+ *
+ * Only the list the catalog opens with is saved: sorted by _id, with no filter or search.
+ *
+ * The file holds, in big-endian order: a magic number, the format version and the number of
+ * rows, then for every row its _id (long), its preparation time (int), and its name and
+ * hashtags, each as a length (int) followed by that many chars. It is memory-mapped to be
+ * read, and written to a temporary file that is synced to the disk before it replaces the
+ * snapshot, so neither a crash nor a power loss leaves half a snapshot.
+ */
+final class CatalogSnapshot {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = CatalogSnapshot.class.getSimpleName();
+
+    /** Name of the snapshot in the app's files directory */
+    static final String FILE_NAME = "catalog_snapshot.bin";
+
+    /** Number of rows saved, enough to fill the first screen of the list */
+    static final int MAX_ROWS = 20;
+
+    /** "FMCS", and the version of the format; files of another version are ignored */
+    private static final int MAGIC = 0x464d4353;
+    private static final int VERSION = 1;
+
+    /** Rows last read or written, so unchanged rows aren't written again. Guarded by the class. */
+    private static List<FoodRow> sSavedRows;
+
+    private CatalogSnapshot() {}
+
+    /**
+     * Returns the rows of the snapshot, or an empty list if there is none or it can't be read.
+     * Reads from the disk, so must not be called on the main thread.
+     */
+    static List<FoodRow> read(Context context) {
+        StartupTrace.beginSection("CatalogSnapshot.read");
+        File file = getFile(context);
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(file, "r");
+            MappedByteBuffer buffer = input.getChannel()
+                    .map(FileChannel.MapMode.READ_ONLY, 0, input.length());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return Collections.emptyList();
+            }
+            int count = buffer.getInt();
+            if (count < 0 || count > MAX_ROWS) {
+                throw new IOException("Bad row count " + count);
+            }
+            List<FoodRow> rows = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long id = buffer.getLong();
+                int time = buffer.getInt();
+                char[] name = readText(buffer);
+                char[] hashtags = readText(buffer);
+                rows.add(new FoodRow(id, name, hashtags, time, null));
+            }
+            synchronized (CatalogSnapshot.class) {
+                sSavedRows = rows;
+            }
+            return rows;
+        } catch (FileNotFoundException e) {
+            // Nothing was saved yet
+            return Collections.emptyList();
+        } catch (IOException | BufferUnderflowException e) {
+            Log.w(LOG_TAG, "Ignoring unreadable snapshot " + file, e);
+            return Collections.emptyList();
+        } finally {
+            close(input);
+            StartupTrace.endSection();
+        }
+    }
+
+    private static char[] readText(MappedByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining() / 2) {
+            throw new IOException("Bad text length " + length);
+        }
+        char[] text = new char[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = buffer.getChar();
+        }
+        return text;
+    }
+
+    /**
+     * Save the first {@link #MAX_ROWS} of the given rows, unless they are the ones saved
+     * already. Writes to the disk, so must not be called on the main thread.
+     */
+    static void save(Context context, List<FoodRow> rows) {
+        rows = rows.subList(0, Math.min(rows.size(), MAX_ROWS));
+        synchronized (CatalogSnapshot.class) {
+            if (sSavedRows != null && hasSameContent(sSavedRows, rows)) {
+                return;
+            }
+            File file = getFile(context);
+            File temporary = new File(file.getPath() + ".tmp");
+            DataOutputStream output = null;
+            try {
+                FileOutputStream fileOutput = new FileOutputStream(temporary);
+                output = new DataOutputStream(new BufferedOutputStream(fileOutput));
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeInt(rows.size());
+                for (FoodRow row : rows) {
+                    output.writeLong(row.id);
+                    output.writeInt(row.time);
+                    writeText(output, row.name);
+                    writeText(output, row.hashtags);
+                }
+                // The rename can reach the disk before the data, so the data is synced first
+                output.flush();
+                fileOutput.getFD().sync();
+                output.close();
+                output = null;
+                if (!temporary.renameTo(file)) {
+                    throw new IOException("Failed to rename " + temporary + " to " + file);
+                }
+                sSavedRows = new ArrayList<>(rows);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Failed to save snapshot " + file, e);
+                temporary.delete();
+            } finally {
+                close(output);
+            }
+        }
+    }
+
+    private static void writeText(DataOutputStream output, char[] text) throws IOException {
+        output.writeInt(text.length);
+        for (char c : text) {
+            output.writeChar(c);
+        }
+    }
+
+    private static boolean hasSameContent(List<FoodRow> a, List<FoodRow> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).hasSameContent(b.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing left to do with it
+            }
+        }
+    }
+}
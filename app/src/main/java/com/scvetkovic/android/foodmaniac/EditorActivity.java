@@ -2,7 +2,9 @@ package com.scvetkovic.android.foodmaniac;
 
 import android.app.AlertDialog;
 import android.app.LoaderManager;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -17,10 +19,13 @@ import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.EditText;
+import android.widget.MultiAutoCompleteTextView;
 import android.widget.Spinner;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import com.scvetkovic.android.foodmaniac.data.FoodContract;
@@ -35,6 +40,9 @@ public class EditorActivity extends AppCompatActivity implements
     /** Identifier for the recipe data loader */
     private static final int EXISTING_PET_LOADER = 0;
 
+    /** Identifier for the loader of the recipes with similar ingredients */
+    private static final int SIMILAR_LOADER = 1;
+
     /** Content URI for the existing recipe (null if it's a new pet) */
     private Uri mCurrentFoodUri;
 
@@ -42,7 +50,7 @@ public class EditorActivity extends AppCompatActivity implements
     private EditText mNameEditText;
 
     /** EditText field to enter the recipe hashtags */
-    private EditText mHashtagEditText;
+    private MultiAutoCompleteTextView mHashtagEditText;
 
     /** EditText field to enter the recipe time */
     private EditText mTimeEditText;
@@ -51,7 +59,7 @@ public class EditorActivity extends AppCompatActivity implements
     private Spinner mMealSpinner;
 
     /** EditText field to enter the recipe ingredients*/
-    private EditText mIngredientsEditText;
+    private MultiAutoCompleteTextView mIngredientsEditText;
 
     /** EditText field to enter the recipe instructions*/
     private EditText mInstructionsEditText;
@@ -105,15 +113,16 @@ public class EditorActivity extends AppCompatActivity implements
             // Initialize a loader to read the recipe data from the database
             // and display the current values in the editor
             getLoaderManager().initLoader(EXISTING_PET_LOADER, null, this);
+            getLoaderManager().initLoader(SIMILAR_LOADER, null, this);
         }
 
 
         // Find all relevant views that we will need to read user input from
         mNameEditText = (EditText) findViewById(R.id.edit_recipe_name);
-        mHashtagEditText = (EditText) findViewById(R.id.edit_recipe_hashtags);
+        mHashtagEditText = (MultiAutoCompleteTextView) findViewById(R.id.edit_recipe_hashtags);
         mTimeEditText = (EditText) findViewById(R.id.edit_recipe_time);
         mMealSpinner = (Spinner) findViewById(R.id.spinner_meal);
-        mIngredientsEditText = (EditText) findViewById(R.id.edit_ingredients);
+        mIngredientsEditText = (MultiAutoCompleteTextView) findViewById(R.id.edit_ingredients);
         mInstructionsEditText = (EditText) findViewById(R.id.edit_preparation);
 
         if (mCurrentFoodUri != null) {
@@ -127,6 +136,12 @@ public class EditorActivity extends AppCompatActivity implements
             mIngredientsEditText.setEnabled(false);
             mInstructionsEditText.setEnabled(false);
 
+        } else {
+            // Complete the hashtags and ingredients with the ones used by the other recipes
+            mHashtagEditText.setAdapter(new TermAdapter(this, TermCompleter.getTags(this)));
+            mHashtagEditText.setTokenizer(new TermAdapter.Tokenizer());
+            mIngredientsEditText.setAdapter(new TermAdapter(this, TermCompleter.getIngredients(this)));
+            mIngredientsEditText.setTokenizer(new TermAdapter.Tokenizer());
         }
         // Setup OnTouchListeners on all the input fields, so we can determine if the user
         // has touched or modified them. This will let us know if there are unsaved changes
@@ -248,39 +263,22 @@ public class EditorActivity extends AppCompatActivity implements
                 }
                 values.put(FoodContract.FoodEntry.COLUMN_FOOD_TIME, time);
 
-                // Determine if this is a new or existing pet by checking if mCurrentFoodUri is null or not
+                // Determine if this is a new or existing pet by checking if mCurrentFoodUri is null or not.
+                // The write runs on the background write queue, so the editor can close right away;
+                // the toast shows once the provider has answered.
+                RecipeWriteQueue writeQueue = RecipeWriteQueue.getInstance(this);
                 if (mCurrentFoodUri == null) {
-                    // This is a NEW pet, so insert a new pet into the provider,
-                    // returning the content URI for the new pet.
-                    Uri newUri = getContentResolver().insert(FoodContract.FoodEntry.CONTENT_URI, values);
-
-                    // Show a toast message depending on whether or not the insertion was successful.
-                    if (newUri == null) {
-                        // If the new content URI is null, then there was an error with insertion.
-                        Toast.makeText(this, getString(R.string.editor_insert_recipe_failed),
-                                Toast.LENGTH_SHORT).show();
-                    } else {
-                        // Otherwise, the insertion was successful and we can display a toast.
-                        Toast.makeText(this, getString(R.string.editor_insert_recipe_successful),
-                                Toast.LENGTH_SHORT).show();
-                    }
+                    // This is a NEW pet, so insert a new pet into the provider.
+                    writeQueue.insert(FoodContract.FoodEntry.CONTENT_URI, values,
+                            new ToastCallback(this, R.string.editor_insert_recipe_successful,
+                                    R.string.editor_insert_recipe_failed));
                 } else {
                     // Otherwise this is an EXISTING pet, so update the pet with content URI: mCurrentFoodUri
-                    // and pass in the new ContentValues. Pass in null for the selection and selection args
-                    // because mCurrentFoodUri will already identify the correct row in the database that
-                    // we want to modify.
-                    int rowsAffected = getContentResolver().update(mCurrentFoodUri, values, null, null);
-
-                    // Show a toast message depending on whether or not the update was successful.
-                    if (rowsAffected == 0) {
-                        // If no rows were affected, then there was an error with the update.
-                        Toast.makeText(this, getString(R.string.editor_update_recipe_failed),
-                                Toast.LENGTH_SHORT).show();
-                    } else {
-                        // Otherwise, the update was successful and we can display a toast.
-                        Toast.makeText(this, getString(R.string.editor_update_recipe_successful),
-                                Toast.LENGTH_SHORT).show();
-                    }
+                    // and pass in the new ContentValues. mCurrentFoodUri already identifies the correct
+                    // row in the database that we want to modify.
+                    writeQueue.update(mCurrentFoodUri, values,
+                            new ToastCallback(this, R.string.editor_update_recipe_successful,
+                                    R.string.editor_update_recipe_failed));
                 }
 
                 finish();
@@ -396,6 +394,14 @@ public class EditorActivity extends AppCompatActivity implements
 
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+        if (i == SIMILAR_LOADER) {
+            // The names of the recipes with the most similar ingredients, most similar first
+            return new CursorLoader(this,
+                    FoodEntry.buildSimilarUri(ContentUris.parseId(mCurrentFoodUri)),
+                    new String[] { FoodEntry._ID, FoodEntry.COLUMN_FOOD_NAME },
+                    null, null, null);
+        }
+
         // Since the editor shows all pet attributes, define a projection that contains
         // all columns from the pet table
         String[] projection = {
@@ -419,6 +425,11 @@ public class EditorActivity extends AppCompatActivity implements
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+        if (loader.getId() == SIMILAR_LOADER) {
+            showSimilarRecipes(cursor);
+            return;
+        }
+
         // Bail early if the cursor is null or there is less than 1 row in the cursor
         if (cursor == null || cursor.getCount() < 1) {
             return;
@@ -473,6 +484,11 @@ public class EditorActivity extends AppCompatActivity implements
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
+        if (loader.getId() == SIMILAR_LOADER) {
+            showSimilarRecipes(null);
+            return;
+        }
+
         // If the loader is invalidated, clear out all the data from the input fields.
         mNameEditText.setText("");
         mHashtagEditText.setText("");
@@ -482,6 +498,36 @@ public class EditorActivity extends AppCompatActivity implements
         mInstructionsEditText.setText("");
     }
 
+    /**
+     * Fill the strip of similar recipes with the recipes of the cursor, each opening the recipe
+     * when clicked. The strip is hidden when there are none.
+     */
+    private void showSimilarRecipes(Cursor cursor) {
+        ViewGroup similarRecipes = (ViewGroup) findViewById(R.id.similar_recipes);
+        similarRecipes.removeAllViews();
+        int count = 0;
+        if (cursor != null) {
+            cursor.moveToPosition(-1);
+            while (cursor.moveToNext()) {
+                final long id = cursor.getLong(cursor.getColumnIndex(FoodEntry._ID));
+                TextView item = (TextView) getLayoutInflater().inflate(
+                        R.layout.item_similar_recipe, similarRecipes, false);
+                item.setText(cursor.getString(cursor.getColumnIndex(FoodEntry.COLUMN_FOOD_NAME)));
+                item.setOnClickListener(new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        Intent intent = new Intent(EditorActivity.this, EditorActivity.class);
+                        intent.setData(ContentUris.withAppendedId(FoodEntry.CONTENT_URI, id));
+                        startActivity(intent);
+                    }
+                });
+                similarRecipes.addView(item);
+                count++;
+            }
+        }
+        findViewById(R.id.container_similar).setVisibility(count > 0 ? View.VISIBLE : View.GONE);
+    }
+
     /**
      * Show a dialog that warns the user there are unsaved changes that will be lost
      * if they continue leaving the editor.
@@ -546,25 +592,38 @@ public class EditorActivity extends AppCompatActivity implements
     private void deletePet() {
         // Only perform the delete if this is an existing pet.
         if (mCurrentFoodUri != null) {
-            // Call the ContentResolver to delete the pet at the given content URI.
-            // Pass in null for the selection and selection args because the mCurrentFoodUri
-            // content URI already identifies the pet that we want.
-            int rowsDeleted = getContentResolver().delete(mCurrentFoodUri, null, null);
-
-            // Show a toast message depending on whether or not the delete was successful.
-            if (rowsDeleted == 0) {
-                // If no rows were deleted, then there was an error with the delete.
-                Toast.makeText(this, getString(R.string.editor_delete_recipe_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the delete was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_delete_recipe_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // Queue the delete of the pet at the given content URI, which already identifies
+            // the pet that we want.
+            RecipeWriteQueue.getInstance(this).delete(mCurrentFoodUri,
+                    new ToastCallback(this, R.string.editor_delete_recipe_successful,
+                            R.string.editor_delete_recipe_failed));
         }
 
         // Close the activity
         finish();
     }
 
-}
\ No newline at end of file
+    /**
+     * Shows a toast message depending on whether or not a queued write was successful. It only
+     * holds the application context, since the editor has usually closed by the time the write
+     * finishes.
+     */
+    private static class ToastCallback implements RecipeWriteQueue.Callback {
+        private final Context mContext;
+        private final int mSuccessMessage;
+        private final int mFailureMessage;
+
+        ToastCallback(Context context, int successMessage, int failureMessage) {
+            mContext = context.getApplicationContext();
+            mSuccessMessage = successMessage;
+            mFailureMessage = failureMessage;
+        }
+
+        @Override
+        public void onWriteFinished(boolean success) {
+            Toast.makeText(mContext, success ? mSuccessMessage : mFailureMessage,
+                    Toast.LENGTH_SHORT).show();
+        }
+    }
+
+}
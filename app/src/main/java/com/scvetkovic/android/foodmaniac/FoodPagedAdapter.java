@@ -0,0 +1,906 @@
+package com.scvetkovic.android.foodmaniac;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.text.PrecomputedText;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link RecyclerView.Adapter} for the list of recipes that loads the catalog one page at a
+ * time. Pages are queried on a background thread with keyset pagination as the user scrolls
+ * towards the end of the loaded rows, so the first rows show up as soon as the first page is
+ * read, no matter how big the catalog is.
+ *
+ * Changes are applied to the loaded rows item by item. A change to a single recipe reads back
+ * only that recipe and moves it to its new place; any other change reads back the loaded rows
+ * and diffs them by _id. Both are computed on the background thread, and only the resulting
+ * item inserts, moves and removals are applied on the main thread.
+ *
+ * Binding a row doesn't allocate: the rows hold their texts as char arrays copied out of the
+ * cursor on the background thread, and on API 28 and up their text layout is measured there
+ * too, with {@link PrecomputedText}.
+ *
+ * To shorten a cold start, {@link #warmUp} opens the database and reads the first page before
+ * the list exists, and the rows saved by {@link CatalogSnapshot} can be read on the page thread
+ * and shown until that page replaces them (see {@link #showSnapshotOnLoad}).
+ */
+public class FoodPagedAdapter extends RecyclerView.Adapter<FoodPagedAdapter.ViewHolder> {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = FoodPagedAdapter.class.getSimpleName();
+
+    /** Number of recipes loaded per page */
+    private static final int PAGE_SIZE = 50;
+
+    /** Start loading the next page when the list is bound this close to its last loaded row */
+    private static final int PREFETCH_DISTANCE = 15;
+
+    /** A page that failed to load is read again after this delay, in milliseconds */
+    private static final long RETRY_DELAY_MS = 2000;
+
+    /** Background thread the pages are queried on, shared by all the adapters */
+    private static final Executor sPageExecutor = Executors.newSingleThreadExecutor();
+
+    /** A page read by {@link #warmUp} longer ago than this is read again, in milliseconds */
+    private static final long PRIMED_PAGE_MAX_AGE_MS = 5000;
+
+    /**
+     * First page of the list read by {@link #warmUp}, its URI and the time it was read, until an
+     * adapter loads that URI and takes it. Only touched on the page thread.
+     */
+    private static List<FoodRow> sPrimedPage;
+    private static Uri sPrimedUri;
+    private static long sPrimedMillis;
+
+    /**
+     * Listener for clicks on the recipes in the list.
+     */
+    public interface OnRecipeClickListener {
+        void onRecipeClick(long id);
+    }
+
+    /**
+     * Listener told whenever a page has been loaded, for instance to show the empty view.
+     */
+    public interface OnPageLoadedListener {
+        void onPageLoaded(int itemCount);
+    }
+
+    private final Context mContext;
+    private final ContentResolver mContentResolver;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Rows loaded so far, in list order. Only touched on the main thread. */
+    private List<FoodRow> mRows = new ArrayList<>();
+
+    /** Column the list is sorted on */
+    private String mSortColumn = FoodEntry._ID;
+
+    /** Meal category and maximum preparation time the list is restricted to, or -1 for any */
+    private int mMeal = -1;
+    private int mMaxTime = -1;
+
+    /** Search terms the list is restricted to, or an empty string for all recipes */
+    private String mSearchText = "";
+
+    /**
+     * Incremented whenever the order, the filters or the search terms change. Queries made for
+     * an older generation are skipped if they haven't started yet, and their results dropped.
+     */
+    private volatile int mQueryGeneration;
+
+    /**
+     * Cancels the queries of the current generation, so a superseded query stops in SQLite
+     * instead of running to completion. Null before API 16, where queries can't be cancelled.
+     */
+    private CancellationSignal mCancellationSignal;
+
+    private OnRecipeClickListener mClickListener;
+    private OnPageLoadedListener mPageLoadedListener;
+
+    /** Shown instead of the hashtags of recipes that have none */
+    private final char[] mNoHashtagText;
+
+    /**
+     * Text metrics of the name and hashtag views, taken from the first list item created. Pages
+     * loaded after that have their texts precomputed with them.
+     */
+    private volatile Object mNameTextParams;
+    private volatile Object mHashtagTextParams;
+
+    /** Counts the rows bound while measuring scrolling, if it is measured */
+    private ScrollBenchmark mScrollBenchmark;
+
+    /**
+     * Incremented whenever the loaded rows change. Work computed on the background thread
+     * against an older version of the rows is thrown away or redone.
+     */
+    private int mVersion;
+
+    /** Whether a page is being loaded */
+    private boolean mLoading;
+
+    /** Whether the last page of the list has been loaded */
+    private boolean mEndReached;
+
+    /** Whether the adapter has been closed and shouldn't load anything anymore */
+    private boolean mClosed;
+
+    /** Whether the next load of an empty list shows the rows of the snapshot first */
+    private boolean mShowSnapshotOnLoad;
+
+    /**
+     * Constructs a new {@link FoodPagedAdapter}. Nothing is loaded until {@link #reload()} is
+     * called.
+     *
+     * @param context The context
+     */
+    public FoodPagedAdapter(Context context) {
+        mContext = context;
+        mContentResolver = context.getContentResolver();
+        mNoHashtagText = context.getString(R.string.no_hashtag).toCharArray();
+        setHasStableIds(true);
+    }
+
+    public void setOnRecipeClickListener(OnRecipeClickListener listener) {
+        mClickListener = listener;
+    }
+
+    public void setOnPageLoadedListener(OnPageLoadedListener listener) {
+        mPageLoadedListener = listener;
+    }
+
+    public void setScrollBenchmark(ScrollBenchmark benchmark) {
+        mScrollBenchmark = benchmark;
+    }
+
+    /**
+     * Open the database and read the first page of the list the catalog opens with, on the
+     * page thread, so both are done by the time the first adapter asks for the page. Called as
+     * early as possible on a cold start, before the views of the catalog are inflated.
+     *
+     * @param context The context
+     */
+    public static void warmUp(Context context) {
+        final ContentResolver contentResolver =
+                context.getApplicationContext().getContentResolver();
+        final Uri uri = buildPageUri(FoodEntry._ID, -1, -1, "", PAGE_SIZE, null);
+        sPageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                StartupTrace.beginSection("FoodPagedAdapter.warmUp");
+                try {
+                    // A page that failed to load is left to the adapter to read again
+                    List<FoodRow> page = readPage(contentResolver, uri, null, null, null);
+                    if (page != null) {
+                        sPrimedPage = page;
+                        sPrimedUri = uri;
+                        sPrimedMillis = SystemClock.uptimeMillis();
+                    }
+                } finally {
+                    StartupTrace.endSection();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the page read by {@link #warmUp} if it is the one at the given URI and is still
+     * recent, or null. It can only be taken once. Runs on the page thread.
+     */
+    private List<FoodRow> takePrimedPage(Uri uri) {
+        List<FoodRow> page = sPrimedPage;
+        boolean fresh = page != null && uri.equals(sPrimedUri)
+                && SystemClock.uptimeMillis() - sPrimedMillis <= PRIMED_PAGE_MAX_AGE_MS;
+        sPrimedPage = null;
+        sPrimedUri = null;
+        if (!fresh) {
+            return null;
+        }
+        for (FoodRow row : page) {
+            precomputeText(row);
+        }
+        return page;
+    }
+
+    /**
+     * Read the {@link CatalogSnapshot} on the page thread when the list is first loaded, and
+     * show its rows until the first page is read. Only has an effect before the list is loaded
+     * for the first time, with the order and filters it opens with.
+     */
+    public void showSnapshotOnLoad() {
+        mShowSnapshotOnLoad = true;
+    }
+
+    /**
+     * Show the rows of a {@link CatalogSnapshot} until the first page is loaded. Only called
+     * before the list is loaded for the first time, with the order and filters it opens with;
+     * the first page is then diffed against these rows, like any reload.
+     *
+     * @return whether the rows are shown
+     */
+    public boolean showSnapshot(List<FoodRow> rows) {
+        if (mClosed || !mRows.isEmpty() || rows.isEmpty() || !isDefaultQuery()) {
+            return false;
+        }
+        mRows = new ArrayList<>(rows);
+        mVersion++;
+        notifyItemRangeInserted(0, rows.size());
+        return true;
+    }
+
+    /**
+     * Returns whether the list has the order and filters the catalog opens with, the only ones
+     * a snapshot is saved for.
+     */
+    private boolean isDefaultQuery() {
+        return FoodEntry._ID.equals(mSortColumn) && mMeal < 0 && mMaxTime < 0
+                && mSearchText.isEmpty();
+    }
+
+    /**
+     * Save the first rows of the list for the next cold start, if it has the order and filters
+     * the catalog opens with. Written on the page thread.
+     */
+    private void saveSnapshot() {
+        if (!isDefaultQuery()) {
+            return;
+        }
+        final Context context = mContext.getApplicationContext();
+        final List<FoodRow> rows = mRows;
+        sPageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                CatalogSnapshot.save(context, rows);
+            }
+        });
+    }
+
+    /**
+     * Stop loading pages. Work that is still running in the background is dropped.
+     */
+    public void close() {
+        mClosed = true;
+        cancelQueries();
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Change the order and the filters of the list, and load it again from the start.
+     *
+     * @param sortColumn one of {@link FoodEntry#_ID}, {@link FoodEntry#COLUMN_FOOD_NAME} or
+     *                   {@link FoodEntry#COLUMN_FOOD_TIME}
+     * @param meal       meal category to show, or -1 for all of them
+     * @param maxTime    maximum preparation time to show, or -1 for any
+     * @return whether the query changed and the list is being loaded again
+     */
+    public boolean setQuery(String sortColumn, int meal, int maxTime) {
+        if (sortColumn.equals(mSortColumn) && meal == mMeal && maxTime == mMaxTime) {
+            return false;
+        }
+        mSortColumn = sortColumn;
+        mMeal = meal;
+        mMaxTime = maxTime;
+
+        // The rows are in another order now, so start from an empty list
+        mRows = new ArrayList<>();
+        notifyDataSetChanged();
+        restart();
+        return true;
+    }
+
+    /**
+     * Restrict the list to the recipes matching the given search terms, keeping its order and
+     * filters, and load it again from the start. The rows shown so far stay until the first
+     * page of matches replaces them. Called on every keystroke, after a short debounce.
+     *
+     * @param text search terms typed by the user, or null or empty for all recipes
+     */
+    public void setSearchText(String text) {
+        text = text != null ? text.trim() : "";
+        if (text.equals(mSearchText)) {
+            return;
+        }
+        mSearchText = text;
+        restart();
+    }
+
+    /**
+     * Cancel the queries of the current query generation, and load the first page for a new
+     * one.
+     */
+    private void restart() {
+        cancelQueries();
+        mQueryGeneration++;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mCancellationSignal = new CancellationSignal();
+        }
+        mVersion++;
+        mLoading = false;
+        mEndReached = false;
+        reload(PAGE_SIZE);
+    }
+
+    private void cancelQueries() {
+        if (mCancellationSignal != null) {
+            mCancellationSignal.cancel();
+        }
+    }
+
+    /**
+     * Returns the URI of the page of the given size after the given row, or of the first page
+     * if there is no row, with the current order and filters.
+     */
+    private Uri buildPageUri(int limit, FoodRow after) {
+        return buildPageUri(mSortColumn, mMeal, mMaxTime, mSearchText, limit, after);
+    }
+
+    private static Uri buildPageUri(String sortColumn, int meal, int maxTime, String searchText,
+                                    int limit, FoodRow after) {
+        Uri uri = after != null
+                ? FoodEntry.buildPageUri(sortColumn, limit, after.getSortKey(sortColumn), after.id)
+                : FoodEntry.buildPageUri(sortColumn, limit, null, 0);
+        return FoodEntry.searchPageUri(FoodEntry.filterPageUri(uri, meal, maxTime), searchText);
+    }
+
+    /**
+     * Read the loaded rows again from the start, for instance after any number of recipes
+     * changed, and apply the differences to the list. As many rows as are loaded now are read
+     * back, so the scroll position is kept.
+     */
+    public void reload() {
+        reload(Math.max(PAGE_SIZE, mRows.size()));
+    }
+
+    /**
+     * Read the given number of rows from the start, and apply the differences to the list.
+     */
+    private void reload(final int limit) {
+        if (mClosed) {
+            return;
+        }
+        mLoading = true;
+        final List<FoodRow> oldRows = mRows;
+        final int version = mVersion;
+        final int generation = mQueryGeneration;
+        final CancellationSignal signal = mCancellationSignal;
+        final Uri uri = buildPageUri(limit, null);
+        final Context context = mContext.getApplicationContext();
+        final boolean readSnapshot = mShowSnapshotOnLoad && oldRows.isEmpty() && isDefaultQuery();
+        mShowSnapshotOnLoad = false;
+
+        sPageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mQueryGeneration) {
+                    // Superseded before it started, the newer query loads the list
+                    return;
+                }
+                // Show the snapshot while the page is read, and diff the page against it
+                final List<FoodRow> snapshot = readSnapshot
+                        ? CatalogSnapshot.read(context) : Collections.<FoodRow>emptyList();
+                final int[] shownVersion = { version };
+                if (!snapshot.isEmpty()) {
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (generation == mQueryGeneration && version == mVersion
+                                    && showSnapshot(snapshot)) {
+                                shownVersion[0] = mVersion;
+                                StartupTrace.mark("Catalog snapshot shown");
+                            }
+                        }
+                    });
+                }
+                final boolean diffedAgainstSnapshot = !snapshot.isEmpty();
+                final List<FoodRow> baseRows = diffedAgainstSnapshot ? snapshot : oldRows;
+
+                List<FoodRow> primedRows = takePrimedPage(uri);
+                final List<FoodRow> newRows = primedRows != null
+                        ? primedRows : queryPage(uri, null, null, signal);
+                final DiffUtil.DiffResult diff = newRows != null
+                        ? DiffUtil.calculateDiff(new RowDiff(baseRows, newRows)) : null;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mClosed || generation != mQueryGeneration) {
+                            return;
+                        }
+                        if (newRows == null) {
+                            // Keep the rows shown, and stay loading until the page is read
+                            retry(generation, new Runnable() {
+                                @Override
+                                public void run() {
+                                    reload(Math.max(limit, mRows.size()));
+                                }
+                            });
+                            return;
+                        }
+                        boolean snapshotShown = shownVersion[0] != version;
+                        if (shownVersion[0] != mVersion || snapshotShown != diffedAgainstSnapshot) {
+                            // The rows changed while diffing, or the snapshot the page was diffed
+                            // against isn't shown, so diff against the current ones
+                            reload();
+                            return;
+                        }
+                        mLoading = false;
+                        mEndReached = newRows.size() < limit;
+                        mRows = newRows;
+                        mVersion++;
+                        diff.dispatchUpdatesTo(FoodPagedAdapter.this);
+                        notifyPageLoaded();
+                        saveSnapshot();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Apply a change to a single recipe. The recipe is read back on the background thread and
+     * moved to the place its sort key gives it among the loaded rows, or removed if it was
+     * deleted or now sorts past the loaded rows.
+     *
+     * @param id     _id of the recipe that changed
+     * @param change one of {@link FoodEntry#CHANGE_INSERT}, {@link FoodEntry#CHANGE_UPDATE}
+     *               or {@link FoodEntry#CHANGE_DELETE}
+     */
+    public void onRecipeChanged(final long id, final String change) {
+        if (mClosed) {
+            return;
+        }
+        final List<FoodRow> rows = mRows;
+        final int version = mVersion;
+        final boolean endReached = mEndReached;
+        final String sortColumn = mSortColumn;
+        final int generation = mQueryGeneration;
+        final CancellationSignal signal = mCancellationSignal;
+        final Uri rowUri = buildPageUri(1, null);
+
+        sPageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mQueryGeneration) {
+                    // The list is being loaded again for a newer query, which has the change
+                    return;
+                }
+                final List<FoodRow> found = FoodEntry.CHANGE_DELETE.equals(change)
+                        ? Collections.<FoodRow>emptyList()
+                        : queryPage(rowUri, FoodEntry._ID + "=?",
+                                new String[] { String.valueOf(id) }, signal);
+                if (found == null) {
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            retry(generation, new Runnable() {
+                                @Override
+                                public void run() {
+                                    onRecipeChanged(id, change);
+                                }
+                            });
+                        }
+                    });
+                    return;
+                }
+                // Only found if it still passes the filters of the list
+                final FoodRow row = found.isEmpty() ? null : found.get(0);
+
+                int from = -1;
+                for (int i = 0; i < rows.size(); i++) {
+                    if (rows.get(i).id == id) {
+                        from = i;
+                        break;
+                    }
+                }
+
+                int to = -1;
+                if (row != null) {
+                    List<FoodRow> others = new ArrayList<>(rows);
+                    if (from >= 0) {
+                        others.remove(from);
+                    }
+                    to = Collections.binarySearch(others, row, getComparator(sortColumn));
+                    if (to < 0) {
+                        to = -(to + 1);
+                    }
+                    if (to == others.size() && !endReached) {
+                        // The recipe sorts after the loaded rows, so it will come with a later page
+                        to = -1;
+                    }
+                }
+
+                final int fromPosition = from;
+                final int toPosition = to;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mClosed || generation != mQueryGeneration) {
+                            return;
+                        }
+                        if (version != mVersion) {
+                            // The rows changed in the meantime, so place the recipe again
+                            onRecipeChanged(id, change);
+                            return;
+                        }
+                        moveRow(fromPosition, toPosition, row);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Move a row from one position to another, either of which may be -1 for a row that is
+     * removed from or added to the list.
+     */
+    private void moveRow(int from, int to, FoodRow row) {
+        if (from < 0 && to < 0) {
+            return;
+        }
+        List<FoodRow> rows = new ArrayList<>(mRows);
+        if (from >= 0) {
+            rows.remove(from);
+        }
+        if (to >= 0) {
+            rows.add(to, row);
+        }
+        mRows = rows;
+        mVersion++;
+
+        if (from < 0) {
+            notifyItemInserted(to);
+        } else if (to < 0) {
+            notifyItemRemoved(from);
+        } else {
+            if (from != to) {
+                notifyItemMoved(from, to);
+            }
+            notifyItemChanged(to);
+        }
+        notifyPageLoaded();
+        if ((from >= 0 && from < CatalogSnapshot.MAX_ROWS)
+                || (to >= 0 && to < CatalogSnapshot.MAX_ROWS)) {
+            saveSnapshot();
+        }
+    }
+
+    /**
+     * Load the page after the last loaded row, unless it is already being loaded.
+     */
+    private void loadNextPage() {
+        if (mClosed || mLoading || mEndReached || mRows.isEmpty()) {
+            return;
+        }
+        mLoading = true;
+        final int version = mVersion;
+        final int generation = mQueryGeneration;
+        final CancellationSignal signal = mCancellationSignal;
+        FoodRow last = mRows.get(mRows.size() - 1);
+        final Uri uri = buildPageUri(PAGE_SIZE, last);
+
+        sPageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mQueryGeneration) {
+                    return;
+                }
+                final List<FoodRow> page = queryPage(uri, null, null, signal);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mClosed || generation != mQueryGeneration) {
+                            return;
+                        }
+                        mLoading = false;
+                        if (page == null) {
+                            retry(generation, new Runnable() {
+                                @Override
+                                public void run() {
+                                    loadNextPage();
+                                }
+                            });
+                            return;
+                        }
+                        if (version != mVersion) {
+                            // The rows changed in the meantime, so the page may not follow on
+                            // from the last row anymore. Ask for it again after the new last row;
+                            // at the bottom of the list no other bind would.
+                            loadNextPage();
+                            return;
+                        }
+                        mEndReached = page.size() < PAGE_SIZE;
+                        int start = mRows.size();
+                        List<FoodRow> rows = new ArrayList<>(mRows);
+                        rows.addAll(page);
+                        mRows = rows;
+                        mVersion++;
+                        notifyItemRangeInserted(start, page.size());
+                        notifyPageLoaded();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Run the given load again after {@link #RETRY_DELAY_MS}, unless the adapter is closed or
+     * the query changed by then. Called on the main thread after a page failed to load.
+     */
+    private void retry(final int generation, final Runnable load) {
+        mMainHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (!mClosed && generation == mQueryGeneration) {
+                    load.run();
+                }
+            }
+        }, RETRY_DELAY_MS);
+    }
+
+    /**
+     * Read a page of rows from the provider. Runs on the background thread. Returns null if
+     * the query fails or is cancelled through the signal; only the queries of an older
+     * generation are cancelled, and their results are dropped anyway.
+     */
+    private List<FoodRow> queryPage(Uri uri, String selection, String[] selectionArgs,
+                                    CancellationSignal signal) {
+        List<FoodRow> page = readPage(mContentResolver, uri, selection, selectionArgs, signal);
+        if (page == null) {
+            return null;
+        }
+        for (FoodRow row : page) {
+            precomputeText(row);
+        }
+        return page;
+    }
+
+    /**
+     * Read a page of rows through the given resolver, without measuring their text. Returns
+     * null if the query fails, so a failure isn't taken for the end of the list.
+     */
+    private static List<FoodRow> readPage(ContentResolver contentResolver, Uri uri,
+                                          String selection, String[] selectionArgs,
+                                          CancellationSignal signal) {
+        List<FoodRow> page = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            String[] projection = FoodRow.getProjection(
+                    uri.getQueryParameter(FoodEntry.QUERY_PARAM_SORT));
+            if (signal != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                cursor = contentResolver.query(uri, projection, selection, selectionArgs, null,
+                        signal);
+            } else {
+                cursor = contentResolver.query(uri, projection, selection, selectionArgs, null);
+            }
+            if (cursor == null) {
+                // The provider couldn't be reached
+                Log.e(LOG_TAG, "No cursor for page " + uri);
+                return null;
+            }
+            FoodRow.Reader reader = new FoodRow.Reader(cursor);
+            while (cursor.moveToNext()) {
+                page.add(reader.read());
+            }
+        } catch (RuntimeException e) {
+            if (signal == null || !signal.isCanceled()) {
+                Log.e(LOG_TAG, "Failed to load page " + uri, e);
+            }
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Measure the text layout of the name and hashtags of a row, once the text metrics of the
+     * list items are known. Runs on the background thread.
+     */
+    private void precomputeText(FoodRow row) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+            return;
+        }
+        Object nameParams = mNameTextParams;
+        Object hashtagParams = mHashtagTextParams;
+        if (nameParams == null || hashtagParams == null) {
+            return;
+        }
+        row.precomputedName = PrecomputedText.create(new String(row.name),
+                (PrecomputedText.Params) nameParams);
+        char[] hashtags = row.hashtags.length > 0 ? row.hashtags : mNoHashtagText;
+        row.precomputedHashtags = PrecomputedText.create(new String(hashtags),
+                (PrecomputedText.Params) hashtagParams);
+    }
+
+    private void notifyPageLoaded() {
+        if (mPageLoadedListener != null) {
+            mPageLoadedListener.onPageLoaded(mRows.size());
+        }
+    }
+
+    /**
+     * Returns the comparator ordering rows the way the provider sorts a page on the given column.
+     */
+    private static Comparator<FoodRow> getComparator(final String sortColumn) {
+        return new Comparator<FoodRow>() {
+            @Override
+            public int compare(FoodRow a, FoodRow b) {
+                int result = 0;
+                if (FoodEntry.COLUMN_FOOD_NAME.equals(sortColumn)) {
+                    result = FoodRow.compareNames(a, b);
+                } else if (FoodEntry.COLUMN_FOOD_TIME.equals(sortColumn)) {
+                    result = a.time < b.time ? -1 : (a.time == b.time ? 0 : 1);
+                }
+                if (result == 0) {
+                    result = a.id < b.id ? -1 : (a.id == b.id ? 0 : 1);
+                }
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        // Inflate a list item view using the layout specified in list_item.xml
+        View view = LayoutInflater.from(mContext).inflate(R.layout.list_item, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+        if (mNameTextParams == null) {
+            mNameTextParams = holder.nameTextParams;
+            mHashtagTextParams = holder.summaryTextParams;
+        }
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        FoodRow row = mRows.get(position);
+
+        char[] recipeHashtags = row.hashtags;
+        if (recipeHashtags.length == 0) {
+            recipeHashtags = mNoHashtagText;
+        }
+
+        // Update the TextViews with the attributes for the current recipe. The char array
+        // setter reuses the TextView's wrapper around the array, so nothing is allocated.
+        if (isPrecomputedFor(row.precomputedName, holder.nameTextParams)) {
+            holder.nameTextView.setText(row.precomputedName);
+        } else {
+            holder.nameTextView.setText(row.name, 0, row.name.length);
+        }
+        if (isPrecomputedFor(row.precomputedHashtags, holder.summaryTextParams)) {
+            holder.summaryTextView.setText(row.precomputedHashtags);
+        } else {
+            holder.summaryTextView.setText(recipeHashtags, 0, recipeHashtags.length);
+        }
+        holder.minutesTextView.setText(row.timeText, 0, row.timeText.length);
+
+        if (mScrollBenchmark != null) {
+            mScrollBenchmark.onRowBound();
+        }
+
+        // Fetch the next page before the user reaches the end of the loaded rows
+        if (position >= mRows.size() - PREFETCH_DISTANCE) {
+            loadNextPage();
+        }
+    }
+
+    /**
+     * Returns whether the given text had its layout measured on the background thread with the
+     * given text metrics of a view, so the view can take it as it is. A TextView rejects text
+     * measured with other metrics than its own.
+     */
+    private static boolean isPrecomputedFor(CharSequence text, Object viewParams) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P || text == null || viewParams == null) {
+            return false;
+        }
+        return ((PrecomputedText) text).getParams().equals(viewParams);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mRows.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mRows.get(position).id;
+    }
+
+    /**
+     * Compares two versions of the loaded rows by _id, and then by the columns shown.
+     */
+    private static class RowDiff extends DiffUtil.Callback {
+
+        private final List<FoodRow> mOldRows;
+        private final List<FoodRow> mNewRows;
+
+        RowDiff(List<FoodRow> oldRows, List<FoodRow> newRows) {
+            mOldRows = oldRows;
+            mNewRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldRows.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewRows.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return mOldRows.get(oldPosition).id == mNewRows.get(newPosition).id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return mOldRows.get(oldPosition).hasSameContent(mNewRows.get(newPosition));
+        }
+    }
+
+    /**
+     * Holds the views of a list item, so they are looked up only once.
+     */
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        final TextView nameTextView;
+        final TextView summaryTextView;
+        final TextView minutesTextView;
+
+        /**
+         * Text metrics of the name and hashtag views, read once from the views since reading
+         * them allocates. Null before API 28.
+         */
+        final Object nameTextParams;
+        final Object summaryTextParams;
+
+        ViewHolder(View view) {
+            super(view);
+            nameTextView = (TextView) view.findViewById(R.id.name);
+            summaryTextView = (TextView) view.findViewById(R.id.summary);
+            minutesTextView = (TextView) view.findViewById(R.id.preparation_time);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                nameTextParams = nameTextView.getTextMetricsParams();
+                summaryTextParams = summaryTextView.getTextMetricsParams();
+            } else {
+                nameTextParams = null;
+                summaryTextParams = null;
+            }
+            view.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (mClickListener != null && position != RecyclerView.NO_POSITION) {
+                mClickListener.onRecipeClick(mRows.get(position).id);
+            }
+        }
+    }
+}
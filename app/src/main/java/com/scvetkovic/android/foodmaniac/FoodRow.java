@@ -0,0 +1,142 @@
+package com.scvetkovic.android.foodmaniac;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+
+import java.util.Arrays;
+
+/**
+ * One recipe of the catalog list, holding only the columns the list shows. The texts are kept
+ * as the char arrays the list item binds, so binding a row doesn't allocate.
+ */
+public class FoodRow {
+
+    /** Columns of the recipe table read into a {@link FoodRow} */
+    public static final String[] PROJECTION = {
+            FoodEntry._ID,
+            FoodEntry.COLUMN_FOOD_NAME,
+            FoodEntry.COLUMN_FOOD_HASHTAGS,
+            FoodEntry.COLUMN_FOOD_TIME};
+
+    /**
+     * {@link #PROJECTION} with the name key, for lists sorted by name. The other lists leave it
+     * out, since only the name indexes hold it.
+     */
+    public static final String[] NAME_KEY_PROJECTION = {
+            FoodEntry._ID,
+            FoodEntry.COLUMN_FOOD_NAME,
+            FoodEntry.COLUMN_FOOD_HASHTAGS,
+            FoodEntry.COLUMN_FOOD_TIME,
+            FoodEntry.COLUMN_FOOD_NAME_KEY};
+
+    public final long id;
+    public final char[] name;
+    public final char[] hashtags;
+    public final int time;
+
+    /** Collation key of the name, or null if it wasn't read */
+    public final String nameKey;
+
+    /** {@link #time} formatted for the list item */
+    public final char[] timeText;
+
+    /**
+     * Name and hashtags with their text layout measured ahead of time, or null where the
+     * platform can't precompute text. Set on the thread the row is read on.
+     */
+    CharSequence precomputedName;
+    CharSequence precomputedHashtags;
+
+    public FoodRow(long id, char[] name, char[] hashtags, int time, String nameKey) {
+        this.id = id;
+        this.name = name;
+        this.hashtags = hashtags;
+        this.time = time;
+        this.nameKey = nameKey;
+        this.timeText = Integer.toString(time).toCharArray();
+    }
+
+    /**
+     * Returns the columns to read into rows of a list sorted on the given column.
+     */
+    public static String[] getProjection(String sortColumn) {
+        return FoodEntry.COLUMN_FOOD_NAME.equals(sortColumn) ? NAME_KEY_PROJECTION : PROJECTION;
+    }
+
+    /**
+     * Returns the value of this row for the given sort column, as passed in the keyset
+     * parameters of {@link FoodEntry#buildPageUri}. Rows sorted by name are sorted on their
+     * name key.
+     */
+    public String getSortKey(String sortColumn) {
+        if (FoodEntry.COLUMN_FOOD_NAME.equals(sortColumn)) {
+            return nameKey;
+        } else if (FoodEntry.COLUMN_FOOD_TIME.equals(sortColumn)) {
+            return String.valueOf(time);
+        }
+        return String.valueOf(id);
+    }
+
+    /**
+     * Compares the name keys of two rows the way the provider sorts them. The keys are made of
+     * hex digits only, so comparing them as Strings matches SQLite's byte order.
+     */
+    public static int compareNames(FoodRow a, FoodRow b) {
+        if (a.nameKey == null || b.nameKey == null) {
+            return a.nameKey == null ? (b.nameKey == null ? 0 : -1) : 1;
+        }
+        return a.nameKey.compareTo(b.nameKey);
+    }
+
+    /**
+     * Returns whether the other row shows the same values as this one.
+     */
+    public boolean hasSameContent(FoodRow other) {
+        return id == other.id && time == other.time
+                && Arrays.equals(name, other.name)
+                && Arrays.equals(hashtags, other.hashtags);
+    }
+
+    /**
+     * Reads rows from a cursor queried with {@link #PROJECTION} or
+     * {@link #NAME_KEY_PROJECTION}. The column indices are looked up once per cursor, and the
+     * texts are copied out of the cursor window through a single buffer instead of going
+     * through a String per column.
+     */
+    public static class Reader {
+
+        private final Cursor mCursor;
+        private final int mIdColumn;
+        private final int mNameColumn;
+        private final int mHashtagsColumn;
+        private final int mTimeColumn;
+        private final int mNameKeyColumn;
+        private final CharArrayBuffer mBuffer = new CharArrayBuffer(128);
+
+        public Reader(Cursor cursor) {
+            mCursor = cursor;
+            mIdColumn = cursor.getColumnIndexOrThrow(FoodEntry._ID);
+            mNameColumn = cursor.getColumnIndexOrThrow(FoodEntry.COLUMN_FOOD_NAME);
+            mHashtagsColumn = cursor.getColumnIndexOrThrow(FoodEntry.COLUMN_FOOD_HASHTAGS);
+            mTimeColumn = cursor.getColumnIndexOrThrow(FoodEntry.COLUMN_FOOD_TIME);
+            mNameKeyColumn = cursor.getColumnIndex(FoodEntry.COLUMN_FOOD_NAME_KEY);
+        }
+
+        /**
+         * Reads the row the cursor is on.
+         */
+        public FoodRow read() {
+            return new FoodRow(mCursor.getLong(mIdColumn), copyText(mNameColumn),
+                    copyText(mHashtagsColumn), mCursor.getInt(mTimeColumn),
+                    mNameKeyColumn >= 0 ? mCursor.getString(mNameKeyColumn) : null);
+        }
+
+        private char[] copyText(int column) {
+            // copyStringToBuffer grows the buffer itself when the text doesn't fit
+            mCursor.copyStringToBuffer(column, mBuffer);
+            return Arrays.copyOf(mBuffer.data, mBuffer.sizeCopied);
+        }
+    }
+}
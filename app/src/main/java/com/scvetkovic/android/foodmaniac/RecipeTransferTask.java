@@ -0,0 +1,142 @@
+package com.scvetkovic.android.foodmaniac;
+
+import android.app.ProgressDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.AsyncTask;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.scvetkovic.android.foodmaniac.data.FoodJson;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Exports all recipes to, or imports recipes from, a JSON file on a background thread, showing
+ * the progress in a dialog that can be cancelled.
+ */
+public class RecipeTransferTask extends AsyncTask<Void, Integer, Integer> {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = RecipeTransferTask.class.getSimpleName();
+
+    /** Name of the file the recipes are exported to and imported from */
+    public static final String FILE_NAME = "recipes.json";
+
+    private final Context mContext;
+    private final File mFile;
+    private final boolean mExport;
+    private final ProgressDialog mProgressDialog;
+
+    /** Error that made the transfer fail, if any */
+    private IOException mError;
+
+    /**
+     * Constructs a new {@link RecipeTransferTask}.
+     *
+     * @param context activity context, used for the progress dialog
+     * @param file    file to export to or import from
+     * @param export  true to export the recipes, false to import them
+     */
+    public RecipeTransferTask(Context context, File file, boolean export) {
+        mContext = context.getApplicationContext();
+        mFile = file;
+        mExport = export;
+
+        mProgressDialog = new ProgressDialog(context);
+        mProgressDialog.setMessage(context.getString(export
+                ? R.string.export_progress : R.string.import_progress));
+        mProgressDialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        mProgressDialog.setMax(100);
+        mProgressDialog.setCancelable(true);
+        mProgressDialog.setOnCancelListener(new DialogInterface.OnCancelListener() {
+            @Override
+            public void onCancel(DialogInterface dialog) {
+                cancel(false);
+            }
+        });
+    }
+
+    @Override
+    protected void onPreExecute() {
+        mProgressDialog.show();
+    }
+
+    @Override
+    protected Integer doInBackground(Void... params) {
+        FoodJson.ProgressListener listener = new FoodJson.ProgressListener() {
+            @Override
+            public boolean onProgress(long done, long total) {
+                if (total > 0) {
+                    publishProgress((int) (done * 100 / total));
+                }
+                return !isCancelled();
+            }
+        };
+
+        try {
+            if (mExport) {
+                OutputStream out = new FileOutputStream(mFile);
+                try {
+                    return FoodJson.exportRecipes(mContext.getContentResolver(), out, listener);
+                } finally {
+                    out.close();
+                }
+            } else {
+                InputStream in = new FileInputStream(mFile);
+                try {
+                    return FoodJson.importRecipes(mContext.getContentResolver(), in,
+                            mFile.length(), listener);
+                } finally {
+                    in.close();
+                }
+            }
+        } catch (FoodJson.CancelledException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            Log.e(LOG_TAG, "Failed to transfer recipes with " + mFile, e);
+            mError = e instanceof IOException ? (IOException) e : new IOException(e);
+            return null;
+        }
+    }
+
+    @Override
+    protected void onProgressUpdate(Integer... values) {
+        mProgressDialog.setProgress(values[0]);
+    }
+
+    @Override
+    protected void onPostExecute(Integer count) {
+        dismissDialog();
+        String message;
+        if (mError != null) {
+            message = mContext.getString(mExport ? R.string.export_failed : R.string.import_failed);
+        } else if (mExport) {
+            message = mContext.getString(R.string.export_finished, count, mFile.getPath());
+        } else {
+            message = mContext.getString(R.string.import_finished, count);
+        }
+        Toast.makeText(mContext, message, Toast.LENGTH_LONG).show();
+    }
+
+    @Override
+    protected void onCancelled(Integer count) {
+        dismissDialog();
+        Toast.makeText(mContext, R.string.transfer_cancelled, Toast.LENGTH_SHORT).show();
+    }
+
+    private void dismissDialog() {
+        if (mProgressDialog.isShowing()) {
+            try {
+                mProgressDialog.dismiss();
+            } catch (IllegalArgumentException e) {
+                // The activity showing the dialog is already gone
+            }
+        }
+    }
+}
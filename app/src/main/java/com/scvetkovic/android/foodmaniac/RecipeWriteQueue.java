@@ -0,0 +1,231 @@
+package com.scvetkovic.android.foodmaniac;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes recipes to the provider on a single background thread, so saving a recipe never
+ * blocks the main thread on the disk.
+ *
+ * Writes queued within {@link #COALESCE_DELAY_MS} of each other are applied together in one
+ * transaction, and updates of the same recipe URI still waiting in the queue are merged into
+ * one, the later values winning. The outcome of every write is reported on the main thread.
+ */
+final class RecipeWriteQueue {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = RecipeWriteQueue.class.getSimpleName();
+
+    /** Time a write waits in the queue for others to apply together with it, in milliseconds */
+    private static final long COALESCE_DELAY_MS = 50;
+
+    /**
+     * Receives the outcome of a write, on the main thread.
+     */
+    interface Callback {
+        /**
+         * Called when the write was applied, or failed. An insert succeeds when the provider
+         * returns the URI of the new recipe, an update or delete when it changes any row.
+         */
+        void onWriteFinished(boolean success);
+    }
+
+    /** The single thread the writes are applied on */
+    private static final ScheduledExecutorService sWriteExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+
+    private static RecipeWriteQueue sInstance;
+
+    private final ContentResolver mResolver;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The writes waiting to be applied, in the order they were queued. Updates are keyed by
+     * their URI so the next update of the same recipe merges into them; guarded by this.
+     */
+    private final Map<Object, Write> mPending = new LinkedHashMap<>();
+
+    private RecipeWriteQueue(Context context) {
+        mResolver = context.getApplicationContext().getContentResolver();
+    }
+
+    /**
+     * Returns the write queue of the app.
+     */
+    static synchronized RecipeWriteQueue getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new RecipeWriteQueue(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Queue the insert of a new row.
+     */
+    void insert(Uri uri, ContentValues values, Callback callback) {
+        enqueue(new Object(), new Write(Write.INSERT, uri, new ContentValues(values)), callback);
+    }
+
+    /**
+     * Queue an update of the row at the given URI, merging it into an update of the same URI
+     * that is still waiting.
+     */
+    void update(Uri uri, ContentValues values, Callback callback) {
+        enqueue(uri, new Write(Write.UPDATE, uri, new ContentValues(values)), callback);
+    }
+
+    /**
+     * Queue the delete of the row at the given URI.
+     */
+    void delete(Uri uri, Callback callback) {
+        enqueue(new Object(), new Write(Write.DELETE, uri, null), callback);
+    }
+
+    private void enqueue(Object key, Write write, Callback callback) {
+        synchronized (this) {
+            Write pending = mPending.get(key);
+            if (pending != null) {
+                pending.values.putAll(write.values);
+                write = pending;
+            } else {
+                mPending.put(key, write);
+            }
+            if (callback != null) {
+                write.callbacks.add(callback);
+            }
+            if (mPending.size() > 1 || pending != null) {
+                // A drain is already scheduled for the writes waiting
+                return;
+            }
+        }
+        sWriteExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, COALESCE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Apply all the writes waiting, in one transaction when there are several of them.
+     */
+    private void drain() {
+        List<Write> writes;
+        synchronized (this) {
+            writes = new ArrayList<>(mPending.values());
+            mPending.clear();
+        }
+        if (writes.size() == 1) {
+            // A single write keeps the precise change notification of the recipe
+            applyOne(writes.get(0));
+        } else if (!writes.isEmpty()) {
+            applyBatch(writes);
+        }
+    }
+
+    private void applyBatch(List<Write> writes) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(writes.size());
+        for (Write write : writes) {
+            operations.add(write.toOperation());
+        }
+        ContentProviderResult[] results;
+        try {
+            results = mResolver.applyBatch(FoodContract.CONTENT_AUTHORITY, operations);
+        } catch (Exception e) {
+            // The whole transaction was rolled back, so find out which writes can be applied
+            Log.e(LOG_TAG, "Failed to apply " + writes.size() + " writes together", e);
+            for (Write write : writes) {
+                applyOne(write);
+            }
+            return;
+        }
+        for (int i = 0; i < writes.size(); i++) {
+            Write write = writes.get(i);
+            report(write, write.type == Write.INSERT ? results[i].uri != null : results[i].count > 0);
+        }
+    }
+
+    private void applyOne(Write write) {
+        boolean success;
+        try {
+            switch (write.type) {
+                case Write.INSERT:
+                    success = mResolver.insert(write.uri, write.values) != null;
+                    break;
+                case Write.UPDATE:
+                    success = mResolver.update(write.uri, write.values, null, null) > 0;
+                    break;
+                default:
+                    success = mResolver.delete(write.uri, null, null) > 0;
+                    break;
+            }
+        } catch (Exception e) {
+            Log.e(LOG_TAG, "Failed to write " + write.uri, e);
+            success = false;
+        }
+        report(write, success);
+    }
+
+    private void report(final Write write, final boolean success) {
+        if (write.callbacks.isEmpty()) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Callback callback : write.callbacks) {
+                    callback.onWriteFinished(success);
+                }
+            }
+        });
+    }
+
+    /**
+     * A write waiting in the queue, with the callbacks of all the writes merged into it.
+     */
+    private static class Write {
+        static final int INSERT = 0;
+        static final int UPDATE = 1;
+        static final int DELETE = 2;
+
+        final int type;
+        final Uri uri;
+        final ContentValues values;
+        final List<Callback> callbacks = new ArrayList<>();
+
+        Write(int type, Uri uri, ContentValues values) {
+            this.type = type;
+            this.uri = uri;
+            this.values = values;
+        }
+
+        ContentProviderOperation toOperation() {
+            switch (type) {
+                case INSERT:
+                    return ContentProviderOperation.newInsert(uri).withValues(values).build();
+                case UPDATE:
+                    return ContentProviderOperation.newUpdate(uri).withValues(values).build();
+                default:
+                    return ContentProviderOperation.newDelete(uri).build();
+            }
+        }
+    }
+}
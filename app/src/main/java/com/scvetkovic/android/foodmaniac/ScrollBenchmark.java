@@ -0,0 +1,114 @@
+package com.scvetkovic.android.foodmaniac;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Debug;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+
+/**
+ * Measures how smoothly the catalog list scrolls, for comparing changes to the list item
+ * binding. Every fling or drag, from the moment the list starts moving until it is idle again,
+ * is logged with the number of rows bound, the frames drawn and dropped, and the bytes
+ * allocated per bound row.
+ *
+ * Only attached in debug builds. Frames are counted with {@link Choreographer}, so nothing is
+ * measured before API 16. The allocations are read from the runtime's statistics, which count
+ * all threads and only exist from API 23; while the list scrolls, nearly all of them are made
+ * by the main thread.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class ScrollBenchmark extends RecyclerView.OnScrollListener
+        implements Choreographer.FrameCallback {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = ScrollBenchmark.class.getSimpleName();
+
+    /** Nominal duration of a frame at 60 fps, in nanoseconds */
+    private static final long FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+    private boolean mScrolling;
+    private long mLastFrameNanos;
+    private int mFrames;
+    private int mDroppedFrames;
+    private int mRowsBound;
+    private long mBytesAllocatedAtStart;
+
+    /**
+     * Attach a benchmark to the list and the adapter binding its rows.
+     */
+    public static void attach(RecyclerView recyclerView, FoodPagedAdapter adapter) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return;
+        }
+        ScrollBenchmark benchmark = new ScrollBenchmark();
+        recyclerView.addOnScrollListener(benchmark);
+        adapter.setScrollBenchmark(benchmark);
+    }
+
+    /**
+     * Called by the adapter for every row bound.
+     */
+    void onRowBound() {
+        if (mScrolling) {
+            mRowsBound++;
+        }
+    }
+
+    /**
+     * Returns the number of bytes the runtime allocated so far, on all threads, or -1 before
+     * API 23.
+     */
+    public static long getBytesAllocated() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return -1;
+        }
+        String bytes = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        try {
+            return bytes != null ? Long.parseLong(bytes) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        boolean scrolling = newState != RecyclerView.SCROLL_STATE_IDLE;
+        if (scrolling == mScrolling) {
+            return;
+        }
+        mScrolling = scrolling;
+        if (scrolling) {
+            mFrames = 0;
+            mDroppedFrames = 0;
+            mRowsBound = 0;
+            mLastFrameNanos = 0;
+            mBytesAllocatedAtStart = getBytesAllocated();
+            Choreographer.getInstance().postFrameCallback(this);
+        } else {
+            long bytes = getBytesAllocated() - mBytesAllocatedAtStart;
+            Log.i(LOG_TAG, "Scrolled " + mFrames + " frames, " + mDroppedFrames + " dropped, "
+                    + mRowsBound + " rows bound, " + (mBytesAllocatedAtStart < 0 ? "unknown"
+                    : String.valueOf(mRowsBound > 0 ? bytes / mRowsBound : 0))
+                    + " bytes allocated per row");
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mScrolling) {
+            return;
+        }
+        if (mLastFrameNanos != 0) {
+            // A frame that took more than one interval means the ones in between were dropped
+            long skipped = (frameTimeNanos - mLastFrameNanos) / FRAME_INTERVAL_NANOS - 1;
+            if (skipped > 0) {
+                mDroppedFrames += skipped;
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        mFrames++;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
@@ -0,0 +1,58 @@
+package com.scvetkovic.android.foodmaniac;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+/**
+ * Marks the steps of a cold start of the catalog, so the time until the first recipes show up
+ * can be measured and compared between changes.
+ *
+ * The steps are trace sections, shown by systrace and Perfetto on API 18 and up; they cost
+ * nothing while no trace is recorded. The milestones are also logged in debug builds, with the
+ * time since the process started.
+ */
+final class StartupTrace {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = StartupTrace.class.getSimpleName();
+
+    /**
+     * Time the process started, from {@link SystemClock#elapsedRealtime}. Before API 24 it
+     * isn't known, and the time this class was first used is taken instead.
+     */
+    private static final long sStartMillis = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+            ? Process.getStartElapsedRealtime() : SystemClock.elapsedRealtime();
+
+    private StartupTrace() {}
+
+    /**
+     * Begin a section of the trace. Must be ended by {@link #endSection} on the same thread.
+     */
+    static void beginSection(String name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(name);
+        }
+    }
+
+    /**
+     * End the section begun last on this thread.
+     */
+    static void endSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Log that a milestone of the start was reached, in debug builds.
+     */
+    static void mark(String milestone) {
+        if (BuildConfig.DEBUG) {
+            Log.i(LOG_TAG, milestone + " " + (SystemClock.elapsedRealtime() - sStartMillis)
+                    + " ms after start");
+        }
+    }
+}
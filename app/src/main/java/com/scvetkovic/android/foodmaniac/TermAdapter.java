@@ -0,0 +1,99 @@
+package com.scvetkovic.android.foodmaniac;
+
+import android.content.Context;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.widget.ArrayAdapter;
+import android.widget.Filter;
+import android.widget.MultiAutoCompleteTextView;
+
+import java.util.List;
+
+/**
+ * Suggests the hashtags or ingredient terms of a {@link TermCompleter} in a
+ * {@link MultiAutoCompleteTextView}. The completions are looked up on the filter's background
+ * thread, so the index never loads on the main thread.
+ */
+class TermAdapter extends ArrayAdapter<String> {
+
+    /** Maximum number of completions shown */
+    private static final int MAX_COMPLETIONS = 8;
+
+    private final TermCompleter mCompleter;
+
+    private final Filter mFilter = new Filter() {
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            List<String> completions = mCompleter.complete(constraint, MAX_COMPLETIONS);
+            FilterResults results = new FilterResults();
+            results.values = completions;
+            results.count = completions.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            setNotifyOnChange(false);
+            clear();
+            if (results.values != null) {
+                addAll((List<String>) results.values);
+            }
+            notifyDataSetChanged();
+        }
+    };
+
+    TermAdapter(Context context, TermCompleter completer) {
+        super(context, android.R.layout.simple_dropdown_item_1line);
+        mCompleter = completer;
+        // Start reading the terms while the user is still looking at the form
+        completer.prepare();
+    }
+
+    @Override
+    public Filter getFilter() {
+        return mFilter;
+    }
+
+    /**
+     * Splits the text of the field into terms the same way the provider does: anything that
+     * isn't a letter, digit or underscore separates two terms. A completed term is followed by
+     * a space.
+     */
+    static class Tokenizer implements MultiAutoCompleteTextView.Tokenizer {
+
+        private static boolean isTermChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_';
+        }
+
+        @Override
+        public int findTokenStart(CharSequence text, int cursor) {
+            int start = cursor;
+            while (start > 0 && isTermChar(text.charAt(start - 1))) {
+                start--;
+            }
+            return start;
+        }
+
+        @Override
+        public int findTokenEnd(CharSequence text, int cursor) {
+            int end = cursor;
+            while (end < text.length() && isTermChar(text.charAt(end))) {
+                end++;
+            }
+            return end;
+        }
+
+        @Override
+        public CharSequence terminateToken(CharSequence text) {
+            if (text instanceof Spanned) {
+                SpannableString terminated = new SpannableString(text + " ");
+                TextUtils.copySpansFrom((Spanned) text, 0, text.length(), Object.class,
+                        terminated, 0);
+                return terminated;
+            }
+            return text + " ";
+        }
+    }
+}
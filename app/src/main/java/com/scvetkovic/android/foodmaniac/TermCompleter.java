@@ -0,0 +1,242 @@
+package com.scvetkovic.android.foodmaniac;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+import com.scvetkovic.android.foodmaniac.data.FoodContract.IngredientEntry;
+import com.scvetkovic.android.foodmaniac.data.FoodContract.TagEntry;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Completes hashtags or ingredient terms from a {@link TermIndex} held in memory, most used
+ * first. The index is read from the provider the first time it is needed, on a background
+ * thread, and kept for the life of the process: the provider notifies which terms changed
+ * after every save, and only their counts are read again.
+ */
+final class TermCompleter {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = TermCompleter.class.getSimpleName();
+
+    /** Memory the terms of one index may take, in bytes. The least used terms are dropped. */
+    private static final int MAX_INDEX_BYTES = 128 * 1024;
+
+    /** Background thread the indexes are loaded and updated on, shared by the completers */
+    private static final Executor sIndexExecutor = Executors.newSingleThreadExecutor();
+
+    private static TermCompleter sTags;
+    private static TermCompleter sIngredients;
+
+    private final ContentResolver mResolver;
+
+    /** URI of the term counts, and the names of its columns */
+    private final Uri mUri;
+    private final String mTermColumn;
+    private final String mCountColumn;
+
+    /** The loaded index, or null until it has been read from the provider */
+    private volatile TermIndex mIndex;
+
+    /** Whether a load has been posted to {@link #sIndexExecutor} */
+    private boolean mLoadPosted;
+
+    private final ContentObserver mObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(boolean selfChange) {
+            // Only called without the uri before API 16
+            onChange(selfChange, null);
+        }
+
+        @Override
+        public void onChange(boolean selfChange, final Uri uri) {
+            sIndexExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    update(uri);
+                }
+            });
+        }
+    };
+
+    private TermCompleter(Context context, Uri uri, String termColumn, String countColumn) {
+        mResolver = context.getApplicationContext().getContentResolver();
+        mUri = uri;
+        mTermColumn = termColumn;
+        mCountColumn = countColumn;
+    }
+
+    /**
+     * Returns the completer of the hashtags.
+     */
+    static synchronized TermCompleter getTags(Context context) {
+        if (sTags == null) {
+            sTags = new TermCompleter(context, TagEntry.CONTENT_URI,
+                    TagEntry.COLUMN_TAG_NAME, TagEntry.COLUMN_TAG_COUNT);
+        }
+        return sTags;
+    }
+
+    /**
+     * Returns the completer of the ingredient terms.
+     */
+    static synchronized TermCompleter getIngredients(Context context) {
+        if (sIngredients == null) {
+            sIngredients = new TermCompleter(context, IngredientEntry.CONTENT_URI,
+                    IngredientEntry.COLUMN_INGREDIENT_TERM, IngredientEntry.COLUMN_INGREDIENT_COUNT);
+        }
+        return sIngredients;
+    }
+
+    /**
+     * Start loading the index in the background, if it isn't loaded yet, so the first
+     * completion doesn't have to wait for it.
+     */
+    synchronized void prepare() {
+        if (mIndex != null || mLoadPosted) {
+            return;
+        }
+        mLoadPosted = true;
+        sIndexExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                getIndex();
+            }
+        });
+    }
+
+    /**
+     * Returns up to limit terms starting with the given text, the most used first. Loads the
+     * index if needed, so it must not be called on the main thread.
+     */
+    List<String> complete(CharSequence prefix, int limit) {
+        if (TextUtils.isEmpty(prefix)) {
+            return Collections.emptyList();
+        }
+        return getIndex().complete(prefix.toString().toLowerCase(Locale.ROOT), limit);
+    }
+
+    private TermIndex getIndex() {
+        TermIndex index = mIndex;
+        if (index != null) {
+            return index;
+        }
+        synchronized (this) {
+            if (mIndex == null) {
+                // Listen before reading, so no change falls in between
+                mResolver.registerContentObserver(mUri, true, mObserver);
+                mIndex = load();
+            }
+            return mIndex;
+        }
+    }
+
+    /**
+     * Read the most used terms from the provider, as many as fit in {@link #MAX_INDEX_BYTES}.
+     */
+    private TermIndex load() {
+        long start = System.nanoTime();
+        Cursor cursor = mResolver.query(mUri, new String[] { mTermColumn, mCountColumn },
+                null, null, mCountColumn + " DESC");
+        if (cursor == null) {
+            return TermIndex.EMPTY;
+        }
+        TermIndex index;
+        try {
+            String[] terms = new String[cursor.getCount()];
+            int[] counts = new int[terms.length];
+            long bytes = 0;
+            int n = 0;
+            // The rows come most used first, so stop reading once they can't fit any more
+            while (bytes < MAX_INDEX_BYTES && cursor.moveToNext()) {
+                terms[n] = cursor.getString(0);
+                counts[n] = cursor.getInt(1);
+                bytes += 2 * terms[n].length() + 8;
+                n++;
+            }
+            index = TermIndex.build(Arrays.copyOf(terms, n), Arrays.copyOf(counts, n),
+                    MAX_INDEX_BYTES);
+        } finally {
+            cursor.close();
+        }
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, "Loaded " + index.size() + " terms of " + mUri + " in "
+                    + (System.nanoTime() - start) / 1000000 + " ms, " + index.estimateBytes()
+                    + " bytes");
+        }
+        return index;
+    }
+
+    /**
+     * Apply a change notified by the provider: read the counts of the changed terms again, or
+     * the whole index if the notification doesn't tell which terms changed.
+     */
+    private void update(Uri uri) {
+        synchronized (this) {
+            if (mIndex == null) {
+                // Not loaded yet, the load will see the change
+                return;
+            }
+        }
+        String changed = null;
+        if (uri != null && mUri.getPath().equals(uri.getPath())) {
+            changed = uri.getQueryParameter(FoodEntry.QUERY_PARAM_CHANGED_TERMS);
+        }
+        TermIndex index;
+        if (TextUtils.isEmpty(changed)) {
+            index = load();
+        } else {
+            String[] terms = changed.split(",");
+            int[] counts = queryCounts(terms);
+            if (counts == null) {
+                return;
+            }
+            index = mIndex.withCounts(terms, counts, MAX_INDEX_BYTES);
+        }
+        synchronized (this) {
+            mIndex = index;
+        }
+    }
+
+    /**
+     * Returns the current usage counts of the given terms, 0 for the terms no longer used, or
+     * null if the provider couldn't be queried.
+     */
+    private int[] queryCounts(String[] terms) {
+        StringBuilder selection = new StringBuilder(mTermColumn).append(" IN (");
+        for (int i = 0; i < terms.length; i++) {
+            selection.append(i == 0 ? "?" : ",?");
+        }
+        selection.append(')');
+        Cursor cursor = mResolver.query(mUri, new String[] { mTermColumn, mCountColumn },
+                selection.toString(), terms, null);
+        if (cursor == null) {
+            return null;
+        }
+        int[] counts = new int[terms.length];
+        try {
+            while (cursor.moveToNext()) {
+                String term = cursor.getString(0);
+                for (int i = 0; i < terms.length; i++) {
+                    if (terms[i].equals(term)) {
+                        counts[i] = cursor.getInt(1);
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,216 @@
+package com.scvetkovic.android.foodmaniac;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable set of terms with their usage counts, answering prefix completions. The terms are
+ * kept sorted in a single char array, with the start of every term and its count in two int
+ * arrays, so a few thousand terms take a few tens of kilobytes and no object per term. The
+ * terms starting with a prefix are a contiguous range found by binary search, and the most used
+ * ones of the range are returned.
+ *
+ * An index is never modified: {@link #withCounts} returns a new one, so readers can keep using
+ * the old one while it is built.
+ */
+final class TermIndex {
+
+    /** Estimated size of an object header, and of an array header, in bytes */
+    private static final int OBJECT_OVERHEAD = 16;
+
+    /** An index without terms */
+    static final TermIndex EMPTY = new TermIndex(new char[0], new int[] { 0 }, new int[0]);
+
+    /** The terms, sorted and concatenated */
+    private final char[] mChars;
+
+    /** Start of every term in {@link #mChars}, followed by the length of mChars */
+    private final int[] mOffsets;
+
+    /** Usage count of every term */
+    private final int[] mCounts;
+
+    private TermIndex(char[] chars, int[] offsets, int[] counts) {
+        mChars = chars;
+        mOffsets = offsets;
+        mCounts = counts;
+    }
+
+    /**
+     * Build an index of the given terms and counts, keeping the most used terms that fit in
+     * maxBytes. Terms with a count of 0 are left out.
+     */
+    static TermIndex build(String[] terms, int[] counts, int maxBytes) {
+        // Take the terms most used first, until the index is full
+        Integer[] byCount = new Integer[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            byCount[i] = i;
+        }
+        final int[] sortCounts = counts;
+        Arrays.sort(byCount, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return sortCounts[b] - sortCounts[a];
+            }
+        });
+        List<String> kept = new ArrayList<>();
+        Map<String, Integer> keptCounts = new HashMap<>();
+        long bytes = estimateBytes(0, 0);
+        for (int i : byCount) {
+            if (counts[i] <= 0 || keptCounts.containsKey(terms[i])) {
+                continue;
+            }
+            long termBytes = 2L * terms[i].length() + 8;
+            if (bytes + termBytes > maxBytes) {
+                break;
+            }
+            bytes += termBytes;
+            kept.add(terms[i]);
+            keptCounts.put(terms[i], counts[i]);
+        }
+
+        // And store them in the order of their text
+        String[] sorted = kept.toArray(new String[kept.size()]);
+        Arrays.sort(sorted);
+        int length = 0;
+        for (String term : sorted) {
+            length += term.length();
+        }
+        char[] chars = new char[length];
+        int[] offsets = new int[sorted.length + 1];
+        int[] sortedCounts = new int[sorted.length];
+        int offset = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            offsets[i] = offset;
+            sorted[i].getChars(0, sorted[i].length(), chars, offset);
+            offset += sorted[i].length();
+            sortedCounts[i] = keptCounts.get(sorted[i]);
+        }
+        offsets[sorted.length] = offset;
+        return new TermIndex(chars, offsets, sortedCounts);
+    }
+
+    /**
+     * Returns a new index with the counts of the given terms replaced, terms with a count of 0
+     * removed and new terms added. When the index outgrows maxBytes, the least used terms are
+     * dropped.
+     */
+    TermIndex withCounts(String[] terms, int[] counts, int maxBytes) {
+        Map<String, Integer> changed = new HashMap<>();
+        for (int i = 0; i < terms.length; i++) {
+            changed.put(terms[i], counts[i]);
+        }
+        int size = size();
+        String[] mergedTerms = new String[size + terms.length];
+        int[] mergedCounts = new int[size + terms.length];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            String term = getTerm(i);
+            if (!changed.containsKey(term)) {
+                mergedTerms[n] = term;
+                mergedCounts[n++] = mCounts[i];
+            }
+        }
+        for (Map.Entry<String, Integer> entry : changed.entrySet()) {
+            mergedTerms[n] = entry.getKey();
+            mergedCounts[n++] = entry.getValue();
+        }
+        return build(Arrays.copyOf(mergedTerms, n), Arrays.copyOf(mergedCounts, n), maxBytes);
+    }
+
+    /**
+     * Returns the number of terms in the index.
+     */
+    int size() {
+        return mCounts.length;
+    }
+
+    /**
+     * Returns the estimated memory used by the index, in bytes.
+     */
+    long estimateBytes() {
+        return estimateBytes(mChars.length, mCounts.length);
+    }
+
+    private static long estimateBytes(int chars, int terms) {
+        // The index object and its three arrays
+        return 4 * OBJECT_OVERHEAD + 2L * chars + 4L * (terms + 1) + 4L * terms;
+    }
+
+    private String getTerm(int index) {
+        return new String(mChars, mOffsets[index], mOffsets[index + 1] - mOffsets[index]);
+    }
+
+    /**
+     * Returns up to limit terms starting with the prefix, the most used first, and in the order
+     * of their text for the same count. The prefix is expected in the case of the terms.
+     */
+    List<String> complete(String prefix, int limit) {
+        int start = lowerBound(prefix, false);
+        int end = lowerBound(prefix, true);
+
+        // Pick the top counts of the range, kept sorted in best
+        int[] best = new int[Math.min(limit, end - start)];
+        int found = 0;
+        for (int i = start; i < end; i++) {
+            int position = found;
+            while (position > 0 && mCounts[best[position - 1]] < mCounts[i]) {
+                position--;
+            }
+            if (position >= best.length) {
+                continue;
+            }
+            int last = Math.min(found, best.length - 1);
+            System.arraycopy(best, position, best, position + 1, last - position);
+            best[position] = i;
+            found = Math.min(found + 1, best.length);
+        }
+
+        List<String> completions = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            completions.add(getTerm(best[i]));
+        }
+        return completions;
+    }
+
+    /**
+     * Returns the index of the first term not less than the prefix, or with afterPrefix, of the
+     * first term after all the terms starting with the prefix.
+     */
+    private int lowerBound(String prefix, boolean afterPrefix) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int compared = comparePrefix(middle, prefix);
+            if (compared < 0 || (afterPrefix && compared == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compare the start of a term with the prefix: 0 if the term starts with it, or the order
+     * of the term relative to the prefix otherwise.
+     */
+    private int comparePrefix(int index, String prefix) {
+        int offset = mOffsets[index];
+        int length = mOffsets[index + 1] - offset;
+        int common = Math.min(length, prefix.length());
+        for (int i = 0; i < common; i++) {
+            char c = mChars[offset + i];
+            char p = prefix.charAt(i);
+            if (c != p) {
+                return c - p;
+            }
+        }
+        return length < prefix.length() ? -1 : 0;
+    }
+}
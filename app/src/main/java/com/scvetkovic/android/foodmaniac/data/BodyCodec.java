@@ -0,0 +1,325 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the long text columns of the body table ({@link FoodEntry#COLUMN_FOOD_INGREDIENTS}
+ * and {@link FoodEntry#COLUMN_FOOD_INSTRUCIONS}) with Deflate and a preset dictionary.
+ *
+ * Compressed values are stored as BLOBs starting with {@link #MAGIC} and the id of the
+ * dictionary they were compressed with, so plain TEXT values written before compression (or
+ * with it turned off) are still read as they are. Short values are not worth compressing and
+ * stay TEXT. Compressed values can't be compared in SQL, so the provider rejects selections
+ * on these columns; they are searched through the FTS table, which indexes their folded text.
+ */
+final class BodyCodec {
+
+    /** First byte of every compressed value */
+    private static final byte MAGIC = (byte) 0xDF;
+
+    /** Id of {@link #DICTIONARY}, stored after {@link #MAGIC} */
+    private static final byte DICTIONARY_ID = 1;
+
+    /** Length of the header in front of the Deflate stream */
+    private static final int HEADER_LENGTH = 2;
+
+    /** Values shorter than this, in chars, are stored as plain text */
+    private static final int MIN_COMPRESSED_LENGTH = 96;
+
+    /** Number of recipes compressed per transaction by {@link #compressStoredBodies} */
+    private static final int COMPRESSION_BATCH_SIZE = 100;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Preset dictionary, made of the words and phrases that come up the most in ingredient
+     * lists and instructions, in English and Serbian. Deflate refers back into it from the
+     * first byte of a value, which is what makes short texts compress at all. Strings used the
+     * most go last, closest to the data. Never change it; add a new one with a new id instead.
+     */
+    private static final byte[] DICTIONARY = (
+            "Prijatno! Enjoy! serve warm with a side of salad. servirati toplo uz salatu. "
+            + "garnish with fresh parsley ukrasiti svežim peršunom "
+            + "preheat the oven to 180°C zagrejati rernu na 180°C i peći "
+            + "line a baking tray with baking paper obložiti pleh papirom za pečenje "
+            + "bake for 30 minutes until golden brown peći 30 minuta dok ne porumeni "
+            + "bring to a boil, then reduce the heat and simmer "
+            + "kuvati na laganoj vatri, povremeno mešati "
+            + "cover and let it rest poklopiti i ostaviti da odstoji "
+            + "stir occasionally until thickened mešati dok se ne zgusne "
+            + "fry the onion in oil until soft propržiti luk na ulju dok ne omekša "
+            + "add the garlic and cook for 1 minute dodati beli luk "
+            + "season with salt and pepper to taste posoliti i pobiberiti po ukusu "
+            + "whisk the eggs with the sugar umutiti jaja sa šećerom "
+            + "sift the flour with the baking powder prosejati brašno sa praškom za pecivo "
+            + "mix well until smooth dobro izmešati dok ne postane glatko "
+            + "pour into a greased pan sipati u podmazan kalup "
+            + "cut into pieces iseći na komade "
+            + "teaspoon tablespoon cup grams ml kašičica kašika šolja grama "
+            + "olive oil butter milk water salt pepper sugar flour eggs onion garlic "
+            + "maslinovo ulje puter mleko voda so biber šećer brašno jaja crni luk beli luk "
+            + "chicken beef pork potatoes carrots tomatoes cheese cream rice pasta "
+            + "piletina junetina svinjetina krompir šargarepa paradajz sir pavlaka pirinač "
+            + "minutes minuta add the dodati the and a to of in with i u sa na da ")
+            .getBytes(UTF_8);
+
+    private BodyCodec() {}
+
+    /**
+     * Returns whether the given column holds values that may be compressed.
+     */
+    static boolean isBodyColumn(String column) {
+        return FoodEntry.COLUMN_FOOD_INGREDIENTS.equals(column)
+                || FoodEntry.COLUMN_FOOD_INSTRUCIONS.equals(column);
+    }
+
+    /**
+     * Returns a copy of the body values with every value long enough compressed.
+     */
+    static ContentValues compressValues(ContentValues body) {
+        ContentValues compressed = new ContentValues(body);
+        for (String column : new String[] {
+                FoodEntry.COLUMN_FOOD_INGREDIENTS, FoodEntry.COLUMN_FOOD_INSTRUCIONS }) {
+            String text = body.getAsString(column);
+            byte[] value = compress(text);
+            if (value != null) {
+                compressed.put(column, value);
+            }
+        }
+        return compressed;
+    }
+
+    /**
+     * Compress the given text, or return null if it is too short to gain anything.
+     */
+    static byte[] compress(String text) {
+        if (text == null || text.length() < MIN_COMPRESSED_LENGTH) {
+            return null;
+        }
+        byte[] input = text.getBytes(UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(input);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + HEADER_LENGTH);
+            out.write(MAGIC);
+            out.write(DICTIONARY_ID);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.size() < input.length ? out.toByteArray() : null;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns whether the given BLOB was written by {@link #compress}.
+     */
+    static boolean isCompressed(byte[] value) {
+        return value != null && value.length >= HEADER_LENGTH && value[0] == MAGIC;
+    }
+
+    /**
+     * Decompress a value written by {@link #compress}.
+     *
+     * @throws IllegalArgumentException if the value is corrupt or uses an unknown dictionary
+     */
+    static String decompress(byte[] value) {
+        if (!isCompressed(value) || value[1] != DICTIONARY_ID) {
+            throw new IllegalArgumentException("Not a compressed recipe value");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(value, HEADER_LENGTH, value.length - HEADER_LENGTH);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(value.length * 3);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY);
+                    } else if (inflater.needsInput()) {
+                        throw new IllegalArgumentException("Truncated recipe value");
+                    }
+                }
+                out.write(buffer, 0, inflated);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt recipe value", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Space saved by {@link #compressStoredBodies}, and the time it takes to read a value back.
+     */
+    static class Report {
+        /** Number of recipes whose body was compressed */
+        int recipes;
+        /** Size of the values that were compressed, before and after */
+        long bytesBefore;
+        long bytesAfter;
+        /** Number of compressed values, and the time it took to decompress them all */
+        int values;
+        long decompressNanos;
+
+        /** Average time added to reading a compressed value, in microseconds */
+        long getDecompressMicros() {
+            return values > 0 ? decompressNanos / values / 1000 : 0;
+        }
+
+        @Override
+        public String toString() {
+            return recipes + " recipes, " + bytesBefore + " bytes -> " + bytesAfter + " bytes, "
+                    + getDecompressMicros() + " us to decompress a value";
+        }
+    }
+
+    /**
+     * Compress the body values stored as plain text that are long enough, a batch of recipes
+     * per transaction. Every compressed value is decompressed once to check it and to time the
+     * latency it adds to reading it. Values that don't get smaller are left as they are.
+     */
+    static Report compressStoredBodies(SQLiteDatabase db) {
+        Report report = new Report();
+        String[] columns = { FoodEntry.COLUMN_FOOD_INGREDIENTS, FoodEntry.COLUMN_FOOD_INSTRUCIONS };
+        String selection = FoodEntry.COLUMN_BODY_FOOD_ID + " > ? AND ("
+                + "(typeof(" + columns[0] + ") = 'text' AND length(" + columns[0] + ") >= "
+                + MIN_COMPRESSED_LENGTH + ") OR "
+                + "(typeof(" + columns[1] + ") = 'text' AND length(" + columns[1] + ") >= "
+                + MIN_COMPRESSED_LENGTH + "))";
+
+        long lastId = 0;
+        boolean more = true;
+        while (more) {
+            db.beginTransaction();
+            try {
+                Cursor cursor = db.query(FoodEntry.BODY_TABLE_NAME, new String[] {
+                                FoodEntry.COLUMN_BODY_FOOD_ID, columns[0], columns[1] },
+                        selection, new String[] { String.valueOf(lastId) }, null, null,
+                        FoodEntry.COLUMN_BODY_FOOD_ID, String.valueOf(COMPRESSION_BATCH_SIZE));
+                try {
+                    more = cursor.getCount() == COMPRESSION_BATCH_SIZE;
+                    while (cursor.moveToNext()) {
+                        lastId = cursor.getLong(0);
+                        ContentValues values = new ContentValues();
+                        for (int i = 0; i < columns.length; i++) {
+                            if (cursor.getType(i + 1) != Cursor.FIELD_TYPE_STRING) {
+                                continue;
+                            }
+                            String text = cursor.getString(i + 1);
+                            byte[] compressed = compress(text);
+                            if (compressed == null) {
+                                continue;
+                            }
+                            long start = System.nanoTime();
+                            if (!text.equals(decompress(compressed))) {
+                                throw new IllegalStateException("Compression failed for " + lastId);
+                            }
+                            report.decompressNanos += System.nanoTime() - start;
+                            report.values++;
+                            report.bytesBefore += text.getBytes(UTF_8).length;
+                            report.bytesAfter += compressed.length;
+                            values.put(columns[i], compressed);
+                        }
+                        if (values.size() > 0) {
+                            db.update(FoodEntry.BODY_TABLE_NAME, values,
+                                    FoodEntry.COLUMN_BODY_FOOD_ID + "=?",
+                                    new String[] { String.valueOf(lastId) });
+                            report.recipes++;
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Wraps a cursor so compressed body columns read as their text. A value is only
+     * decompressed when it is read, and then kept until the cursor moves to another row.
+     */
+    static Cursor wrap(Cursor cursor) {
+        for (String column : cursor.getColumnNames()) {
+            if (isBodyColumn(column)) {
+                return new DecompressingCursor(cursor);
+            }
+        }
+        return cursor;
+    }
+
+    private static class DecompressingCursor extends CursorWrapper {
+
+        /** Whether each column is a body column */
+        private final boolean[] mBodyColumns;
+
+        /** Decompressed values of the current row, by column */
+        private final String[] mValues;
+        private int mValuesPosition = -1;
+
+        DecompressingCursor(Cursor cursor) {
+            super(cursor);
+            String[] columns = cursor.getColumnNames();
+            mBodyColumns = new boolean[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                mBodyColumns[i] = isBodyColumn(columns[i]);
+            }
+            mValues = new String[columns.length];
+        }
+
+        /**
+         * Body values are only ever stored as BLOBs when they are compressed.
+         */
+        private boolean isCompressedColumn(int column) {
+            return mBodyColumns[column] && super.getType(column) == Cursor.FIELD_TYPE_BLOB;
+        }
+
+        @Override
+        public String getString(int column) {
+            if (!isCompressedColumn(column)) {
+                return super.getString(column);
+            }
+            if (mValuesPosition != getPosition()) {
+                Arrays.fill(mValues, null);
+                mValuesPosition = getPosition();
+            }
+            if (mValues[column] == null) {
+                mValues[column] = decompress(super.getBlob(column));
+            }
+            return mValues[column];
+        }
+
+        @Override
+        public int getType(int column) {
+            return isCompressedColumn(column) ? Cursor.FIELD_TYPE_STRING : super.getType(column);
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            return isCompressedColumn(column) ? getString(column).getBytes(UTF_8) : super.getBlob(column);
+        }
+    }
+}
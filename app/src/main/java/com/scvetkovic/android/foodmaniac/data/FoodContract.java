@@ -17,7 +17,11 @@ package com.scvetkovic.android.foodmaniac.data;
 
 import android.net.Uri;
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.provider.BaseColumns;
+import android.text.TextUtils;
+
+import java.util.List;
 
 /**
  * API Contract for the Recipe app.
@@ -50,6 +54,108 @@ public final class FoodContract {
      */
     public static final String PATH_FOOD = "foodmaniac";
 
+    /**
+     * Path (appended to the recipe content URI) for full-text search over recipes.
+     * For instance, content://com.scvetkovic.android.foodmaniac/foodmaniac/search?q=pancake
+     */
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Path (appended to the recipe content URI) for recipe names matching search terms that may
+     * be misspelled. For instance,
+     * content://com.scvetkovic.android.foodmaniac/foodmaniac/fuzzy?q=palachinke
+     */
+    public static final String PATH_FUZZY = "fuzzy";
+
+    /**
+     * Path (appended to the recipe content URI) for the recipes with ingredients similar to the
+     * recipe whose ID follows. For instance,
+     * content://com.scvetkovic.android.foodmaniac/foodmaniac/similar/3
+     */
+    public static final String PATH_SIMILAR = "similar";
+
+    /**
+     * Path (appended to the recipe content URI) for recipes filtered by their hashtags.
+     * For instance, content://com.scvetkovic.android.foodmaniac/foodmaniac/tagged?all=cake,vegan
+     */
+    public static final String PATH_TAGGED = "tagged";
+
+    /**
+     * Path (appended to the recipe content URI) for the list of hashtags and how many recipes
+     * use each of them.
+     */
+    public static final String PATH_TAGS = "tags";
+
+    /**
+     * Path (appended to the recipe content URI) for recipes that can be cooked from a list of
+     * pantry items. For instance,
+     * content://com.scvetkovic.android.foodmaniac/foodmaniac/pantry?items=eggs,flour,milk&missing=1
+     */
+    public static final String PATH_PANTRY = "pantry";
+
+    /**
+     * Path (appended to the recipe content URI) for the list of ingredient terms and how many
+     * recipes use each of them.
+     */
+    public static final String PATH_INGREDIENTS = "ingredients";
+
+    /**
+     * Path (appended to the recipe content URI) for the read-only performance counters of the
+     * provider, see {@link StatsEntry}.
+     */
+    public static final String PATH_STATS = "stats";
+
+    /**
+     * Method for {@link ContentResolver#call} returning the counters of the provider's recipe
+     * cache in a Bundle, under the CACHE_* keys below. They count since the process started.
+     */
+    public static final String METHOD_GET_CACHE_STATS = "get_cache_stats";
+
+    /** Number of single recipe queries answered from the cache */
+    public static final String CACHE_HITS = "hits";
+
+    /** Number of single recipe queries that had to read the database */
+    public static final String CACHE_MISSES = "misses";
+
+    /** Number of recipes dropped from the cache to make room for others */
+    public static final String CACHE_EVICTIONS = "evictions";
+
+    /** Estimated size of the cached recipes, and the size the cache is bounded to, in bytes */
+    public static final String CACHE_SIZE = "size";
+    public static final String CACHE_MAX_SIZE = "max_size";
+
+    /**
+     * Method for {@link ContentResolver#call} compressing the recipe bodies still stored as
+     * plain text, and returning a Bundle with the COMPRESSION_* keys below. It runs on the
+     * calling thread, so call it from a background thread.
+     */
+    public static final String METHOD_COMPRESS_BODIES = "compress_bodies";
+
+    /** Number of recipes whose body was compressed */
+    public static final String COMPRESSION_RECIPES = "recipes";
+
+    /** Size of the compressed values before and after compression, in bytes */
+    public static final String COMPRESSION_BYTES_BEFORE = "bytes_before";
+    public static final String COMPRESSION_BYTES_AFTER = "bytes_after";
+
+    /** Average time decompressing adds to reading one of the values, in microseconds */
+    public static final String COMPRESSION_DECOMPRESS_MICROS = "decompress_micros";
+
+    /**
+     * Method for {@link ContentResolver#call} setting the counters of {@link StatsEntry} back to
+     * zero and dropping the slow queries, for instance between two measurements. Returns null.
+     */
+    public static final String METHOD_RESET_STATS = "reset_stats";
+
+    /**
+     * Method for {@link ContentResolver#call} changing the time, in milliseconds passed as the
+     * argument, over which recipe queries are logged with their query plan, 0 to stop logging
+     * them. The slow queries are written to logcat and printed by
+     * "adb shell dumpsys activity provider FoodProvider". Returns null, and throws an
+     * IllegalArgumentException for a missing, non-numeric or negative argument.
+     */
+    public static final String METHOD_SET_SLOW_QUERY_THRESHOLD = "set_slow_query_threshold";
+
     /**
      * Inner class that defines constant values for the foodmaniac database table.
      * Each entry in the table represents a single pet.
@@ -59,6 +165,107 @@ public final class FoodContract {
         /** The content URI to access the pet data in the provider */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_FOOD);
 
+        /**
+         * The content URI for full-text search over recipe name, hashtags, ingredients and
+         * instructions. The search terms are passed in the {@link #QUERY_PARAM_SEARCH} parameter,
+         * and the rows come back best match first, each with a {@link #COLUMN_SEARCH_SNIPPET}.
+         */
+        public static final Uri CONTENT_SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        /**
+         * The content URI for recipes whose name matches the search terms passed in
+         * {@link #QUERY_PARAM_SEARCH} despite a few typing mistakes. The terms match the start of
+         * the name from any of its words on, so the URI can be queried as the user types. The rows
+         * come back closest first, each with its {@link #COLUMN_EDIT_DISTANCE}.
+         */
+        public static final Uri CONTENT_FUZZY_URI = Uri.withAppendedPath(CONTENT_URI, PATH_FUZZY);
+
+        /**
+         * The content URI for the recipes with ingredients similar to a recipe, see
+         * {@link #buildSimilarUri}.
+         */
+        public static final Uri CONTENT_SIMILAR_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SIMILAR);
+
+        /**
+         * Builds the URI of the recipes whose ingredients are most similar to the ones of the
+         * given recipe, most similar first, each with its {@link #COLUMN_SIMILARITY}. The number
+         * of recipes returned can be set with {@link #QUERY_PARAM_LIMIT}.
+         */
+        public static Uri buildSimilarUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_SIMILAR_URI, id);
+        }
+
+        /**
+         * Query parameter holding the search terms for {@link #CONTENT_SEARCH_URI} and
+         * {@link #CONTENT_FUZZY_URI}. On the
+         * {@link #CONTENT_URI} pages, it restricts the rows to the recipes matching all of the
+         * terms, keeping the order of the pages.
+         */
+        public static final String QUERY_PARAM_SEARCH = "q";
+
+        /**
+         * The content URI for recipes filtered by hashtag. The tags are passed comma separated in
+         * either {@link #QUERY_PARAM_ALL_TAGS} (recipes having every tag) or
+         * {@link #QUERY_PARAM_ANY_TAGS} (recipes having at least one of them). Tags are matched
+         * as whole words, ignoring case and the leading '#'.
+         */
+        public static final Uri CONTENT_TAGGED_URI = Uri.withAppendedPath(CONTENT_URI, PATH_TAGGED);
+
+        /** Query parameter with the tags that must all be present on the recipe */
+        public static final String QUERY_PARAM_ALL_TAGS = "all";
+
+        /** Query parameter with the tags of which at least one must be present on the recipe */
+        public static final String QUERY_PARAM_ANY_TAGS = "any";
+
+        /**
+         * The content URI for recipes ranked by how much of their ingredients are covered by the
+         * pantry items passed in {@link #QUERY_PARAM_PANTRY_ITEMS}. Recipes missing more than
+         * {@link #QUERY_PARAM_MAX_MISSING} ingredients are left out. Every row also has the
+         * {@link #COLUMN_MATCHED_INGREDIENTS} and {@link #COLUMN_MISSING_INGREDIENTS} counts.
+         */
+        public static final Uri CONTENT_PANTRY_URI = Uri.withAppendedPath(CONTENT_URI, PATH_PANTRY);
+
+        /** Query parameter with the pantry items, separated by commas or new lines */
+        public static final String QUERY_PARAM_PANTRY_ITEMS = "items";
+
+        /** Query parameter with the maximum number of missing ingredients (no limit by default) */
+        public static final String QUERY_PARAM_MAX_MISSING = "missing";
+
+        /** Query parameter limiting the number of rows returned */
+        public static final String QUERY_PARAM_LIMIT = "limit";
+
+        /**
+         * Query parameter with the column the {@link #CONTENT_URI} pages are sorted on, one of
+         * {@link #_ID}, {@link #COLUMN_FOOD_NAME} or {@link #COLUMN_FOOD_TIME}. Rows with the same
+         * sort key are ordered by {@link #_ID}. Defaults to {@link #_ID}. Sorting on the name
+         * orders the rows on {@link #COLUMN_FOOD_NAME_KEY}, which is their sort key.
+         */
+        public static final String QUERY_PARAM_SORT = "sort";
+
+        /**
+         * Query parameter with the sort key of the last row of the previous page. Only the rows
+         * after it are returned.
+         */
+        public static final String QUERY_PARAM_AFTER = "after";
+
+        /**
+         * Query parameter with the {@link #_ID} of the last row of the previous page, used to
+         * break ties between rows with the same sort key.
+         */
+        public static final String QUERY_PARAM_AFTER_ID = "after_id";
+
+        /**
+         * Query parameter restricting the {@link #CONTENT_URI} pages to a single
+         * {@link #COLUMN_FOOD_MEAL} category.
+         */
+        public static final String QUERY_PARAM_MEAL = "meal";
+
+        /**
+         * Query parameter restricting the {@link #CONTENT_URI} pages to recipes that take at
+         * most the given {@link #COLUMN_FOOD_TIME}.
+         */
+        public static final String QUERY_PARAM_MAX_TIME = "max_time";
+
         /**
          * The MIME type of the {@link #CONTENT_URI} for a list of recipes.
          */
@@ -74,6 +281,21 @@ public final class FoodContract {
         /** Name of database table for recipes */
         public final static String TABLE_NAME = "food";
 
+        /**
+         * Name of database table holding the long text columns of the recipes,
+         * {@link #COLUMN_FOOD_INGREDIENTS} and {@link #COLUMN_FOOD_INSTRUCIONS}, one row per
+         * recipe. Callers see them as columns of the recipe; the provider joins the table in when
+         * they are asked for.
+         */
+        public final static String BODY_TABLE_NAME = "food_body";
+
+        /**
+         * Recipe ID in the {@link #BODY_TABLE_NAME} table, which is also its primary key.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_BODY_FOOD_ID = "food_id";
+
         /**
          * Unique ID number for the recipe (only for use in the database table).
          *
@@ -126,6 +348,71 @@ public final class FoodContract {
          */
         public final static String COLUMN_FOOD_INSTRUCIONS = "instructions";
 
+        /**
+         * Number of distinct ingredient terms found in {@link #COLUMN_FOOD_INGREDIENTS}. It is
+         * maintained by the provider and can't be written by callers.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_FOOD_INGREDIENT_COUNT = "ingredient_count";
+
+        /**
+         * Collation key of {@link #COLUMN_FOOD_NAME} in the order of the device language, as
+         * hex digits that sort the same way as plain text. Catalog pages sorted by name are
+         * ordered on this column. It is maintained by the provider and can't be written by
+         * callers.
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_FOOD_NAME_KEY = "name_key";
+
+        /**
+         * Number of the recipe's ingredients found among the pantry items. Only returned for
+         * {@link #CONTENT_PANTRY_URI}.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_MATCHED_INGREDIENTS = "matched";
+
+        /**
+         * Number of the recipe's ingredients missing from the pantry items. Only returned for
+         * {@link #CONTENT_PANTRY_URI}.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_MISSING_INGREDIENTS = "missing";
+
+        /**
+         * Excerpt of the recipe text around the search terms, with the matches wrapped in
+         * {@link #SNIPPET_MATCH_START} and {@link #SNIPPET_MATCH_END}. Only returned for
+         * {@link #CONTENT_SEARCH_URI}.
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_SEARCH_SNIPPET = "snippet";
+
+        /**
+         * Number of typing mistakes between the search terms and the recipe name. Only returned
+         * for {@link #CONTENT_FUZZY_URI}.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_EDIT_DISTANCE = "distance";
+
+        /**
+         * Estimated share of the ingredients two recipes have in common, from 0 to 1. Only
+         * returned for the {@link #CONTENT_SIMILAR_URI} URIs.
+         *
+         * Type: REAL
+         */
+        public final static String COLUMN_SIMILARITY = "similarity";
+
+        /**
+         * Markers wrapped around the matched terms in {@link #COLUMN_SEARCH_SNIPPET}.
+         */
+        public static final String SNIPPET_MATCH_START = "<b>";
+        public static final String SNIPPET_MATCH_END = "</b>";
+
         /**
          * Possible values for meal.
          */
@@ -135,6 +422,97 @@ public final class FoodContract {
         public static final int MEAL_DINNER= 3;
 
 
+        /**
+         * Query parameter carried by the URIs the provider notifies on, telling what kind of
+         * change happened: {@link #CHANGE_INSERT}, {@link #CHANGE_UPDATE} or
+         * {@link #CHANGE_DELETE} on a single recipe URI ({@link #CONTENT_URI}/#), or
+         * {@link #CHANGE_BULK} on {@link #CONTENT_URI} when any number of recipes may have changed.
+         */
+        public static final String QUERY_PARAM_CHANGE = "change";
+
+        /**
+         * Possible values for the {@link #QUERY_PARAM_CHANGE} parameter.
+         */
+        public static final String CHANGE_INSERT = "insert";
+        public static final String CHANGE_UPDATE = "update";
+        public static final String CHANGE_DELETE = "delete";
+        public static final String CHANGE_BULK = "bulk";
+
+        /**
+         * Query parameter carried by the {@link TagEntry#CONTENT_URI} and
+         * {@link IngredientEntry#CONTENT_URI} URIs the provider notifies on, holding the comma
+         * separated terms whose usage counts changed. Without it, any term may have changed.
+         */
+        public static final String QUERY_PARAM_CHANGED_TERMS = "terms";
+
+        /**
+         * Returns whether a notified URI is about the recipes themselves: {@link #CONTENT_URI} or
+         * a single recipe URI, rather than the hashtags or ingredient terms under it.
+         */
+        public static boolean isRecipeUri(Uri uri) {
+            List<String> segments = uri.getPathSegments();
+            if (segments.isEmpty() || !PATH_FOOD.equals(segments.get(0))) {
+                return false;
+            }
+            return segments.size() == 1
+                    || (segments.size() == 2 && TextUtils.isDigitsOnly(segments.get(1)));
+        }
+
+        /**
+         * Builds the URI the provider notifies on when a single recipe changed.
+         */
+        public static Uri buildChangeUri(long id, String change) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon()
+                    .appendQueryParameter(QUERY_PARAM_CHANGE, change)
+                    .build();
+        }
+
+        /**
+         * Builds the URI for one page of the recipe list, sorted on the given column.
+         *
+         * @param sortColumn column the list is sorted on, see {@link #QUERY_PARAM_SORT}
+         * @param limit      maximum number of rows in the page
+         * @param afterKey   sort key of the last row of the previous page, or null for the
+         *                   first page
+         * @param afterId    {@link #_ID} of the last row of the previous page
+         */
+        public static Uri buildPageUri(String sortColumn, int limit, String afterKey, long afterId) {
+            Uri.Builder builder = CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAM_SORT, sortColumn)
+                    .appendQueryParameter(QUERY_PARAM_LIMIT, String.valueOf(limit));
+            if (afterKey != null) {
+                builder.appendQueryParameter(QUERY_PARAM_AFTER, afterKey)
+                        .appendQueryParameter(QUERY_PARAM_AFTER_ID, String.valueOf(afterId));
+            }
+            return builder.build();
+        }
+
+        /**
+         * Returns the given page URI restricted to a meal category and a maximum preparation
+         * time. Either can be -1 for no restriction.
+         */
+        public static Uri filterPageUri(Uri pageUri, int meal, int maxTime) {
+            Uri.Builder builder = pageUri.buildUpon();
+            if (meal >= 0) {
+                builder.appendQueryParameter(QUERY_PARAM_MEAL, String.valueOf(meal));
+            }
+            if (maxTime >= 0) {
+                builder.appendQueryParameter(QUERY_PARAM_MAX_TIME, String.valueOf(maxTime));
+            }
+            return builder.build();
+        }
+
+        /**
+         * Returns the given page URI restricted to the recipes matching the search terms, or the
+         * URI itself if there are none.
+         */
+        public static Uri searchPageUri(Uri pageUri, String text) {
+            if (text == null || text.trim().isEmpty()) {
+                return pageUri;
+            }
+            return pageUri.buildUpon().appendQueryParameter(QUERY_PARAM_SEARCH, text).build();
+        }
+
         /**
          * Returns whether or not the given meal is {@link #MEAL_DESSERT}, {@link #MEAL_BREAKFAST},
          * {@link #MEAL_LUNCH}, or {@link #MEAL_DINNER}.
@@ -147,5 +525,191 @@ public final class FoodContract {
         }
     }
 
-}
+    /**
+     * Inner class that defines constant values for the hashtags used by the recipes. The tags
+     * are extracted from {@link FoodEntry#COLUMN_FOOD_HASHTAGS} whenever a recipe is saved.
+     */
+    public static final class TagEntry implements BaseColumns {
+
+        /** The content URI to access the hashtags and their usage counts */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(FoodEntry.CONTENT_URI, PATH_TAGS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of hashtags.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_TAGS;
+
+        /** Name of database table for hashtags */
+        public final static String TABLE_NAME = "tag";
+
+        /** Name of database table linking recipes to their hashtags */
+        public final static String LINK_TABLE_NAME = "food_tag";
+
+        /**
+         * Unique ID number for the hashtag (only for use in the database table).
+         *
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Name of the hashtag, lowercase and without the leading '#'.
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_TAG_NAME = "name";
+
+        /**
+         * Number of recipes using the hashtag. Only available through {@link #CONTENT_URI}.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_TAG_COUNT = "count";
+
+        /**
+         * Recipe ID in the {@link #LINK_TABLE_NAME} table.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_FOOD_ID = "food_id";
+
+        /**
+         * Hashtag ID in the {@link #LINK_TABLE_NAME} table.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_TAG_ID = "tag_id";
+    }
+
+    /**
+     * Inner class that defines constant values for the inverted ingredient index. The ingredient
+     * terms are extracted from {@link FoodEntry#COLUMN_FOOD_INGREDIENTS} whenever a recipe is saved.
+     */
+    public static final class IngredientEntry implements BaseColumns {
+
+        /** The content URI to access the ingredient terms and their usage counts */
+        public static final Uri CONTENT_URI =
+                Uri.withAppendedPath(FoodEntry.CONTENT_URI, PATH_INGREDIENTS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of ingredient terms.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_INGREDIENTS;
+
+        /** Name of database table for ingredient terms */
+        public final static String TABLE_NAME = "ingredient";
+
+        /** Name of database table linking ingredient terms to the recipes using them */
+        public final static String LINK_TABLE_NAME = "food_ingredient";
 
+        /**
+         * Unique ID number for the ingredient term (only for use in the database table).
+         *
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Normalized ingredient term, for instance "egg" for "3 Eggs".
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_INGREDIENT_TERM = "term";
+
+        /**
+         * Number of recipes using the ingredient term. Only available through {@link #CONTENT_URI}.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_INGREDIENT_COUNT = "count";
+
+        /**
+         * Recipe ID in the {@link #LINK_TABLE_NAME} table.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_FOOD_ID = "food_id";
+
+        /**
+         * Ingredient term ID in the {@link #LINK_TABLE_NAME} table.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_INGREDIENT_ID = "ingredient_id";
+    }
+
+    /**
+     * Inner class that defines the columns of the provider's performance counters. There is a
+     * row for every operation and URI called since the process started or the counters were
+     * reset with {@link #METHOD_RESET_STATS}, and one for every kind of change notification sent.
+     * The same counters are printed by "adb shell dumpsys activity provider FoodProvider".
+     */
+    public static final class StatsEntry implements BaseColumns {
+
+        /** The content URI to read the counters */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(FoodEntry.CONTENT_URI, PATH_STATS);
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for the list of counters.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        /**
+         * Operation counted: "query", "insert", "update", "delete", "batch" for a bulk insert
+         * or a batch of operations, or "notify" for the change notifications.
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_OPERATION = "operation";
+
+        /**
+         * URI the operation was called on, for instance "foodmaniac/#" or "search", or the kind
+         * of notification: "recipe", "terms" or "bulk".
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_URI = "uri";
+
+        /**
+         * Number of calls, or of notifications sent.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_CALLS = "calls";
+
+        /**
+         * Number of calls that threw an exception or failed to write.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_ERRORS = "errors";
+
+        /**
+         * Number of rows returned by the queries, or changed by the writes.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_ROWS = "rows";
+
+        /**
+         * Time spent in all the calls, and in the slowest one, in microseconds.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_TOTAL_MICROS = "total_micros";
+        public final static String COLUMN_MAX_MICROS = "max_micros";
+
+        /**
+         * Times under which half, 90% and 99% of the calls took, in microseconds. They are read
+         * from a histogram, so they may be up to 25% over the exact value.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_P50_MICROS = "p50_micros";
+        public final static String COLUMN_P90_MICROS = "p90_micros";
+        public final static String COLUMN_P99_MICROS = "p99_micros";
+    }
+}
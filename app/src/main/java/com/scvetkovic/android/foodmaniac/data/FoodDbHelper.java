@@ -1,9 +1,20 @@
 package com.scvetkovic.android.foodmaniac.data;
 
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.util.Log;
 import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+import com.scvetkovic.android.foodmaniac.data.FoodContract.IngredientEntry;
+import com.scvetkovic.android.foodmaniac.data.FoodContract.TagEntry;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Database helper for Pets app. Manages database creation and version management.
@@ -13,12 +24,44 @@ public class FoodDbHelper extends SQLiteOpenHelper {
     public static final String LOG_TAG = FoodDbHelper.class.getSimpleName();
 
     /** Name of the database file */
-    private static final String DATABASE_NAME = "recepti.db";
+    static final String DATABASE_NAME = "recepti.db";
 
     /**
      * Database version. If you change the database schema, you must increment the database version.
      */
-    private static final int DATABASE_VERSION = 5;
+    private static final int DATABASE_VERSION = 15;
+
+    /** Name of the full-text search table that shadows the recipe table */
+    static final String SEARCH_TABLE_NAME = "food_fts";
+
+    /**
+     * Page cache size of the database connection, in pages. With the default 4 KB pages this
+     * keeps about 8 MB of the database in memory.
+     */
+    private static final int CACHE_SIZE_PAGES = 2048;
+
+    /**
+     * Background thread the maintenance of the database runs on: the WAL checkpoints, the
+     * compression of old bodies and the rebuilds of the name keys
+     */
+    private static final Executor sMaintenanceExecutor = Executors.newSingleThreadExecutor();
+
+    /** Whether a checkpoint is already waiting to run */
+    private final AtomicBoolean mCheckpointPending = new AtomicBoolean();
+
+    /** Name of the preferences holding the state of the database kept outside of it */
+    private static final String PREFERENCES_NAME = "food_db";
+
+    /** Preference with the locale the stored name keys were built for */
+    private static final String PREF_NAME_KEY_LOCALE = "name_key_locale";
+
+    /**
+     * Preference set when the database is upgraded from a version storing all bodies as plain
+     * text, and only cleared once they are compressed, so a pass that didn't finish runs again
+     */
+    private static final String PREF_BODIES_NEED_COMPRESSION = "bodies_need_compression";
+
+    private final SharedPreferences mPreferences;
 
     /**
      * Constructs a new instance of {@link FoodDbHelper}.
@@ -27,6 +70,122 @@ public class FoodDbHelper extends SQLiteOpenHelper {
      */
     public FoodDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+
+        // With write-ahead logging, readers work from the last committed snapshot and are not
+        // blocked while a recipe is being written. Before Jelly Bean it is enabled in onOpen().
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    /**
+     * This is called every time the database is opened, after it has been created or upgraded.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            db.enableWriteAheadLogging();
+        }
+
+        // In WAL mode, NORMAL only syncs at checkpoints. A crash can lose the last commits but
+        // never corrupts the database, and commits no longer wait for an fsync each.
+        runPragma(db, "PRAGMA synchronous = NORMAL");
+        runPragma(db, "PRAGMA cache_size = " + CACHE_SIZE_PAGES);
+    }
+
+    /**
+     * Copy the pages from the write-ahead log back into the database on a background thread,
+     * without waiting for readers. SQLite already checkpoints automatically once the log grows
+     * past 1000 pages, but that happens on the thread committing the write, so
+     * {@link FoodProvider} calls this after large batches to keep the log short instead.
+     * Requests made while a checkpoint is pending are merged into it.
+     */
+    void checkpointInBackground() {
+        if (!mCheckpointPending.compareAndSet(false, true)) {
+            return;
+        }
+        sMaintenanceExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mCheckpointPending.set(false);
+                try {
+                    runPragma(getWritableDatabase(), "PRAGMA wal_checkpoint(PASSIVE)");
+                } catch (RuntimeException e) {
+                    Log.w(LOG_TAG, "Failed to checkpoint the write-ahead log", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Open the database on a background thread, and if it was upgraded from a version that
+     * stored the recipe bodies as plain text, compress them there. New bodies are compressed
+     * as they are written, so this only does any work until a pass completes.
+     */
+    void compressBodiesInBackground() {
+        sMaintenanceExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SQLiteDatabase db = getWritableDatabase();
+                    if (mPreferences.getBoolean(PREF_BODIES_NEED_COMPRESSION, false)) {
+                        BodyCodec.Report report = BodyCodec.compressStoredBodies(db);
+                        mPreferences.edit().remove(PREF_BODIES_NEED_COMPRESSION).apply();
+                        Log.i(LOG_TAG, "Compressed recipe bodies: " + report);
+                    }
+                } catch (RuntimeException e) {
+                    Log.w(LOG_TAG, "Failed to compress the recipe bodies", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Rebuild the name keys of all recipes with the given collator on a background thread, if
+     * they were built for another locale, and run the callback once they are rebuilt. New names
+     * are keyed by {@link FoodProvider} with the same collator while this runs.
+     */
+    void updateNameKeysInBackground(final NameCollator collator, final Runnable onUpdated) {
+        sMaintenanceExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SQLiteDatabase db = getWritableDatabase();
+                    if (collator.getLocaleName().equals(
+                            mPreferences.getString(PREF_NAME_KEY_LOCALE, null))) {
+                        return;
+                    }
+                    int count = NameCollator.updateStoredKeys(db, collator);
+                    setNameKeyLocale(collator);
+                    Log.i(LOG_TAG, "Rebuilt " + count + " name keys for " + collator.getLocaleName());
+                    onUpdated.run();
+                } catch (RuntimeException e) {
+                    Log.w(LOG_TAG, "Failed to rebuild the name keys", e);
+                }
+            }
+        });
+    }
+
+    private void setNameKeyLocale(NameCollator collator) {
+        mPreferences.edit().putString(PREF_NAME_KEY_LOCALE, collator.getLocaleName()).apply();
+    }
+
+    /**
+     * Run a PRAGMA statement. PRAGMAs that return a row have to be stepped through a cursor,
+     * since {@link SQLiteDatabase#execSQL} rejects them on some platform versions.
+     */
+    private static void runPragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery(pragma, null);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
     }
 
     /**
@@ -34,25 +193,362 @@ public class FoodDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
+        // Create the foodmaniac table and the table holding the long texts of every recipe
+        createRecipeTable(db, FoodEntry.TABLE_NAME);
+        createBodyTable(db);
+
+        createSearchTable(db);
+        createTagTables(db);
+        createIngredientTables(db);
+        TrigramIndex.createTable(db);
+        MinHashIndex.createTables(db);
+        createRecipeTriggers(db);
+        createCatalogIndexes(db);
+
+        // The table is empty, so there are no keys of another locale to rebuild
+        setNameKeyLocale(new NameCollator(Locale.getDefault()));
+    }
+
+    /**
+     * Creates the recipe table with the given name. It only holds the short columns the
+     * catalog reads, so a scan of the catalog stays within a few rows per page.
+     */
+    private static void createRecipeTable(SQLiteDatabase db, String tableName) {
         // Create a String that contains the SQL statement to create the foodmaniac table
-        String SQL_CREATE_PETS_TABLE =  "CREATE TABLE " + FoodEntry.TABLE_NAME + " ("
+        String SQL_CREATE_PETS_TABLE =  "CREATE TABLE " + tableName + " ("
                 + FoodContract.FoodEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
                 + FoodEntry.COLUMN_FOOD_NAME + " TEXT NOT NULL, "
+                + FoodEntry.COLUMN_FOOD_NAME_KEY + " TEXT, "
                 + FoodEntry.COLUMN_FOOD_HASHTAGS + " TEXT, "
                 + FoodEntry.COLUMN_FOOD_MEAL + " INTEGER NOT NULL, "
                 + FoodContract.FoodEntry.COLUMN_FOOD_TIME + " INTEGER NOT NULL DEFAULT 0,"
-                + FoodEntry.COLUMN_FOOD_INGREDIENTS + " TEXT,"
-                + FoodEntry.COLUMN_FOOD_INSTRUCIONS + ");";
+                + FoodEntry.COLUMN_FOOD_INGREDIENT_COUNT + " INTEGER NOT NULL DEFAULT 0);";
 
         // Execute the SQL statement
         db.execSQL(SQL_CREATE_PETS_TABLE);
     }
 
+    /**
+     * Creates the table holding the ingredients and instructions of the recipes, keyed by the
+     * recipe _id. Long recipes spill into overflow pages here instead of in the recipe table.
+     */
+    private static void createBodyTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + FoodEntry.BODY_TABLE_NAME + " ("
+                + FoodEntry.COLUMN_BODY_FOOD_ID + " INTEGER PRIMARY KEY, "
+                + FoodEntry.COLUMN_FOOD_INGREDIENTS + " TEXT, "
+                + FoodEntry.COLUMN_FOOD_INSTRUCIONS + " TEXT);");
+    }
+
     /**
      * This is called when the database needs to be upgraded.
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // The database is still at version 1, so there's nothing to do be done here.
+        if (oldVersion < 6) {
+            // Version 6 adds the full-text search table, so build it from the existing recipes.
+            // Its triggers are created with the version 9 tables below.
+            createSearchTable(db);
+            db.execSQL("INSERT INTO " + SEARCH_TABLE_NAME + " (docid, "
+                    + FoodEntry.COLUMN_FOOD_NAME + ", "
+                    + FoodEntry.COLUMN_FOOD_HASHTAGS + ", "
+                    + FoodEntry.COLUMN_FOOD_INGREDIENTS + ", "
+                    + FoodEntry.COLUMN_FOOD_INSTRUCIONS + ") SELECT "
+                    + FoodEntry._ID + ", "
+                    + FoodEntry.COLUMN_FOOD_NAME + ", "
+                    + FoodEntry.COLUMN_FOOD_HASHTAGS + ", "
+                    + FoodEntry.COLUMN_FOOD_INGREDIENTS + ", "
+                    + FoodEntry.COLUMN_FOOD_INSTRUCIONS + " FROM " + FoodEntry.TABLE_NAME);
+        }
+        if (oldVersion < 7) {
+            // Version 7 adds the normalized hashtag tables, so parse the hashtags of every recipe.
+            createTagTables(db);
+            Cursor cursor = db.query(FoodEntry.TABLE_NAME,
+                    new String[] { FoodEntry._ID, FoodEntry.COLUMN_FOOD_HASHTAGS },
+                    null, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    TagIndex.update(db, cursor.getLong(0), cursor.getString(1));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        if (oldVersion < 8) {
+            // Version 8 adds the inverted ingredient index, so tokenize every ingredient list.
+            db.execSQL("ALTER TABLE " + FoodEntry.TABLE_NAME + " ADD COLUMN "
+                    + FoodEntry.COLUMN_FOOD_INGREDIENT_COUNT + " INTEGER NOT NULL DEFAULT 0;");
+            createIngredientTables(db);
+            Cursor cursor = db.query(FoodEntry.TABLE_NAME,
+                    new String[] { FoodEntry._ID, FoodEntry.COLUMN_FOOD_INGREDIENTS },
+                    null, null, null, null, null);
+            try {
+                while (cursor.moveToNext()) {
+                    IngredientIndex.update(db, cursor.getLong(0), cursor.getString(1));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        if (oldVersion < 9) {
+            // Version 9 moves the ingredients and instructions into their own table. SQLite
+            // can't drop columns, so the recipe table is rebuilt without them, keeping the ids
+            // and the AUTOINCREMENT sequence. Dropping the old table drops its triggers too.
+            String newTable = FoodEntry.TABLE_NAME + "_new";
+            createBodyTable(db);
+            db.execSQL("INSERT INTO " + FoodEntry.BODY_TABLE_NAME + " ("
+                    + FoodEntry.COLUMN_BODY_FOOD_ID + ", "
+                    + FoodEntry.COLUMN_FOOD_INGREDIENTS + ", "
+                    + FoodEntry.COLUMN_FOOD_INSTRUCIONS + ") SELECT "
+                    + FoodEntry._ID + ", "
+                    + FoodEntry.COLUMN_FOOD_INGREDIENTS + ", "
+                    + FoodEntry.COLUMN_FOOD_INSTRUCIONS + " FROM " + FoodEntry.TABLE_NAME);
+
+            String recipeColumns = FoodEntry._ID + ", "
+                    + FoodEntry.COLUMN_FOOD_NAME + ", "
+                    + FoodEntry.COLUMN_FOOD_HASHTAGS + ", "
+                    + FoodEntry.COLUMN_FOOD_MEAL + ", "
+                    + FoodEntry.COLUMN_FOOD_TIME + ", "
+                    + FoodEntry.COLUMN_FOOD_INGREDIENT_COUNT;
+            // The recipe table of version 9; the name key is added by version 12
+            db.execSQL("CREATE TABLE " + newTable + " ("
+                    + FoodEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + FoodEntry.COLUMN_FOOD_NAME + " TEXT NOT NULL, "
+                    + FoodEntry.COLUMN_FOOD_HASHTAGS + " TEXT, "
+                    + FoodEntry.COLUMN_FOOD_MEAL + " INTEGER NOT NULL, "
+                    + FoodEntry.COLUMN_FOOD_TIME + " INTEGER NOT NULL DEFAULT 0,"
+                    + FoodEntry.COLUMN_FOOD_INGREDIENT_COUNT + " INTEGER NOT NULL DEFAULT 0);");
+            db.execSQL("INSERT INTO " + newTable + " (" + recipeColumns + ") SELECT "
+                    + recipeColumns + " FROM " + FoodEntry.TABLE_NAME);
+            db.execSQL("UPDATE sqlite_sequence SET seq = (SELECT seq FROM sqlite_sequence"
+                    + " WHERE name = '" + FoodEntry.TABLE_NAME + "') WHERE name = '" + newTable + "'");
+            db.execSQL("DROP TABLE " + FoodEntry.TABLE_NAME);
+            db.execSQL("ALTER TABLE " + newTable + " RENAME TO " + FoodEntry.TABLE_NAME);
+
+            createVersion9Triggers(db);
+        }
+        if (oldVersion < 10) {
+            // Version 10 may store the body columns compressed, so the search table can't copy
+            // them from the body table anymore. The existing bodies are compressed afterwards,
+            // see compressBodiesInBackground().
+            db.execSQL("DROP TRIGGER IF EXISTS " + SEARCH_TABLE_NAME + "_body_ai;");
+            db.execSQL("DROP TRIGGER IF EXISTS " + SEARCH_TABLE_NAME + "_body_au;");
+            // Written at once, so the pass runs even if the app dies before it starts
+            mPreferences.edit().putBoolean(PREF_BODIES_NEED_COMPRESSION, true).commit();
+        }
+        if (oldVersion < 11) {
+            // Version 11 adds the indexes for the filtered and sorted catalog. The ones sorting
+            // on the name are created with version 12.
+            createTimeIndexes(db);
+        }
+        if (oldVersion < 12) {
+            // Version 12 sorts names on their collation key
+            db.execSQL("ALTER TABLE " + FoodEntry.TABLE_NAME + " ADD COLUMN "
+                    + FoodEntry.COLUMN_FOOD_NAME_KEY + " TEXT;");
+            NameCollator collator = new NameCollator(Locale.getDefault());
+            NameCollator.updateStoredKeys(db, collator);
+            setNameKeyLocale(collator);
+
+            db.execSQL("DROP INDEX IF EXISTS " + FoodEntry.TABLE_NAME + "_name;");
+            db.execSQL("DROP INDEX IF EXISTS " + FoodEntry.TABLE_NAME + "_meal_name;");
+            createNameIndexes(db);
+
+            // ANALYZE gives the query planner the statistics to choose between the indexes
+            db.execSQL("ANALYZE;");
+        }
+        if (oldVersion < 13) {
+            // Version 13 stores the search table folded, see SearchIndex. The triggers copying
+            // the name and hashtags can't fold them, so the provider writes the whole row.
+            db.execSQL("DROP TRIGGER IF EXISTS " + SEARCH_TABLE_NAME + "_ai;");
+            db.execSQL("DROP TRIGGER IF EXISTS " + SEARCH_TABLE_NAME + "_au;");
+            SearchIndex.rebuild(db);
+        }
+        if (oldVersion < 14) {
+            // Version 14 adds the trigram index of the names, whose rows are deleted together
+            // with the recipe by the delete trigger
+            TrigramIndex.createTable(db);
+            TrigramIndex.rebuild(db);
+            db.execSQL("DROP TRIGGER IF EXISTS " + FoodEntry.TABLE_NAME + "_ad;");
+            createRecipeTriggers(db);
+        }
+        if (oldVersion < 15) {
+            // Version 15 adds the ingredient signatures of the similar recipes, also deleted by
+            // the delete trigger
+            MinHashIndex.createTables(db);
+            MinHashIndex.rebuild(db);
+            db.execSQL("DROP TRIGGER IF EXISTS " + FoodEntry.TABLE_NAME + "_ad;");
+            createRecipeTriggers(db);
+        }
+    }
+
+    /**
+     * Creates the covering indexes of the catalog pages, one per sort column with and without
+     * the meal filter. Each holds the sort column and _id in page order, followed by the other
+     * columns of a catalog row, so a page is read from the index alone: the maximum time is
+     * checked on the index entries and no rows are sorted. The plain meal index keeps rowid
+     * order, which serves the meal filter when sorting on _id.
+     */
+    private static void createCatalogIndexes(SQLiteDatabase db) {
+        createTimeIndexes(db);
+        createNameIndexes(db);
+    }
+
+    private static void createTimeIndexes(SQLiteDatabase db) {
+        createIndex(db, "time", FoodEntry.COLUMN_FOOD_TIME, FoodEntry._ID,
+                FoodEntry.COLUMN_FOOD_NAME, FoodEntry.COLUMN_FOOD_HASHTAGS);
+        createIndex(db, "meal_time", FoodEntry.COLUMN_FOOD_MEAL, FoodEntry.COLUMN_FOOD_TIME,
+                FoodEntry._ID, FoodEntry.COLUMN_FOOD_NAME, FoodEntry.COLUMN_FOOD_HASHTAGS);
+        createIndex(db, "meal", FoodEntry.COLUMN_FOOD_MEAL);
+    }
+
+    /**
+     * Creates the indexes of the catalog sorted by name. They are ordered on the collation key
+     * of the name, see {@link NameCollator}, and also hold the name itself for the list.
+     */
+    private static void createNameIndexes(SQLiteDatabase db) {
+        createIndex(db, "name", FoodEntry.COLUMN_FOOD_NAME_KEY, FoodEntry._ID,
+                FoodEntry.COLUMN_FOOD_NAME, FoodEntry.COLUMN_FOOD_TIME,
+                FoodEntry.COLUMN_FOOD_HASHTAGS);
+        createIndex(db, "meal_name", FoodEntry.COLUMN_FOOD_MEAL, FoodEntry.COLUMN_FOOD_NAME_KEY,
+                FoodEntry._ID, FoodEntry.COLUMN_FOOD_NAME, FoodEntry.COLUMN_FOOD_TIME,
+                FoodEntry.COLUMN_FOOD_HASHTAGS);
+    }
+
+    private static void createIndex(SQLiteDatabase db, String name, String... columns) {
+        StringBuilder sql = new StringBuilder("CREATE INDEX ")
+                .append(FoodEntry.TABLE_NAME).append('_').append(name)
+                .append(" ON ").append(FoodEntry.TABLE_NAME).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columns[i]);
+        }
+        db.execSQL(sql.append(");").toString());
+    }
+
+    /**
+     * Creates the hashtag table and the table linking recipes to hashtags. The link table's
+     * primary key (tag_id, food_id) serves the tag filters, the extra index on food_id serves
+     * the updates of a single recipe.
+     */
+    private static void createTagTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TagEntry.TABLE_NAME + " ("
+                + TagEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + TagEntry.COLUMN_TAG_NAME + " TEXT NOT NULL UNIQUE);");
+
+        db.execSQL("CREATE TABLE " + TagEntry.LINK_TABLE_NAME + " ("
+                + TagEntry.COLUMN_TAG_ID + " INTEGER NOT NULL, "
+                + TagEntry.COLUMN_FOOD_ID + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + TagEntry.COLUMN_TAG_ID + ", " + TagEntry.COLUMN_FOOD_ID + "));");
+
+        db.execSQL("CREATE INDEX " + TagEntry.LINK_TABLE_NAME + "_" + TagEntry.COLUMN_FOOD_ID
+                + " ON " + TagEntry.LINK_TABLE_NAME + " (" + TagEntry.COLUMN_FOOD_ID + ");");
+    }
+
+    /**
+     * Creates the FTS4 table over the searchable recipe columns. The FTS row id (docid) is the
+     * recipe _id. Its rows are written by {@link SearchIndex} and deleted by the triggers of
+     * {@link #createRecipeTriggers}.
+     */
+    private static void createSearchTable(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + SEARCH_TABLE_NAME + " USING fts4("
+                + FoodEntry.COLUMN_FOOD_NAME + ", "
+                + FoodEntry.COLUMN_FOOD_HASHTAGS + ", "
+                + FoodEntry.COLUMN_FOOD_INGREDIENTS + ", "
+                + FoodEntry.COLUMN_FOOD_INSTRUCIONS + ");");
+    }
+
+    /**
+     * Creates the trigger on the recipe table that drops everything belonging to a recipe
+     * together with the recipe. The search row is written by {@link SearchIndex}, since the
+     * search table holds the text folded.
+     */
+    private static void createRecipeTriggers(SQLiteDatabase db) {
+        String deleteSearchRow = "DELETE FROM " + SEARCH_TABLE_NAME
+                + " WHERE docid = old." + FoodEntry._ID + ";";
+
+        // Drop the search row, the body, the index links, the name trigrams and the ingredient
+        // signature of a recipe together with the recipe
+        db.execSQL("CREATE TRIGGER " + FoodEntry.TABLE_NAME + "_ad AFTER DELETE ON "
+                + FoodEntry.TABLE_NAME + " BEGIN "
+                + deleteSearchRow
+                + " DELETE FROM " + FoodEntry.BODY_TABLE_NAME + " WHERE "
+                + FoodEntry.COLUMN_BODY_FOOD_ID + " = old." + FoodEntry._ID + ";"
+                + " DELETE FROM " + TagEntry.LINK_TABLE_NAME + " WHERE "
+                + TagEntry.COLUMN_FOOD_ID + " = old." + FoodEntry._ID + ";"
+                + " DELETE FROM " + IngredientEntry.LINK_TABLE_NAME + " WHERE "
+                + IngredientEntry.COLUMN_FOOD_ID + " = old." + FoodEntry._ID + ";"
+                + " DELETE FROM " + TrigramIndex.TABLE_NAME + " WHERE "
+                + TrigramIndex.COLUMN_FOOD_ID + " = old." + FoodEntry._ID + ";"
+                + " DELETE FROM " + MinHashIndex.SIGNATURE_TABLE_NAME + " WHERE "
+                + MinHashIndex.COLUMN_FOOD_ID + " = old." + FoodEntry._ID + ";"
+                + " DELETE FROM " + MinHashIndex.BUCKET_TABLE_NAME + " WHERE "
+                + MinHashIndex.COLUMN_FOOD_ID + " = old." + FoodEntry._ID + "; END;");
+    }
+
+    /**
+     * Creates the triggers of version 9 of the schema, as they were then. Later versions drop
+     * and replace them, and {@link #createRecipeTriggers} refers to tables that don't exist yet
+     * at this step of an upgrade, so it must not be used here.
+     */
+    private static void createVersion9Triggers(SQLiteDatabase db) {
+        // Copy the name and hashtags of new and changed recipes into the search table
+        db.execSQL("CREATE TRIGGER " + SEARCH_TABLE_NAME + "_ai AFTER INSERT ON "
+                + FoodEntry.TABLE_NAME + " BEGIN INSERT INTO " + SEARCH_TABLE_NAME + " (docid, "
+                + FoodEntry.COLUMN_FOOD_NAME + ", "
+                + FoodEntry.COLUMN_FOOD_HASHTAGS + ") VALUES (new." + FoodEntry._ID + ", "
+                + "new." + FoodEntry.COLUMN_FOOD_NAME + ", "
+                + "new." + FoodEntry.COLUMN_FOOD_HASHTAGS + "); END;");
+        db.execSQL("CREATE TRIGGER " + SEARCH_TABLE_NAME + "_au AFTER UPDATE OF "
+                + FoodEntry.COLUMN_FOOD_NAME + ", "
+                + FoodEntry.COLUMN_FOOD_HASHTAGS + " ON " + FoodEntry.TABLE_NAME
+                + " BEGIN UPDATE " + SEARCH_TABLE_NAME + " SET "
+                + FoodEntry.COLUMN_FOOD_NAME + " = new." + FoodEntry.COLUMN_FOOD_NAME + ", "
+                + FoodEntry.COLUMN_FOOD_HASHTAGS + " = new." + FoodEntry.COLUMN_FOOD_HASHTAGS
+                + " WHERE docid = new." + FoodEntry._ID + "; END;");
+
+        // Copy the ingredients and instructions from the body table
+        String updateSearchBody = "UPDATE " + SEARCH_TABLE_NAME + " SET "
+                + FoodEntry.COLUMN_FOOD_INGREDIENTS + " = new." + FoodEntry.COLUMN_FOOD_INGREDIENTS + ", "
+                + FoodEntry.COLUMN_FOOD_INSTRUCIONS + " = new." + FoodEntry.COLUMN_FOOD_INSTRUCIONS
+                + " WHERE docid = new." + FoodEntry.COLUMN_BODY_FOOD_ID + ";";
+        db.execSQL("CREATE TRIGGER " + SEARCH_TABLE_NAME + "_body_ai AFTER INSERT ON "
+                + FoodEntry.BODY_TABLE_NAME + " BEGIN " + updateSearchBody + " END;");
+        db.execSQL("CREATE TRIGGER " + SEARCH_TABLE_NAME + "_body_au AFTER UPDATE OF "
+                + FoodEntry.COLUMN_FOOD_INGREDIENTS + ", "
+                + FoodEntry.COLUMN_FOOD_INSTRUCIONS + " ON " + FoodEntry.BODY_TABLE_NAME
+                + " BEGIN " + updateSearchBody + " END;");
+
+        // Drop the search row, the body and the index links of a recipe together with the recipe
+        db.execSQL("CREATE TRIGGER " + FoodEntry.TABLE_NAME + "_ad AFTER DELETE ON "
+                + FoodEntry.TABLE_NAME + " BEGIN "
+                + "DELETE FROM " + SEARCH_TABLE_NAME + " WHERE docid = old." + FoodEntry._ID + ";"
+                + " DELETE FROM " + FoodEntry.BODY_TABLE_NAME + " WHERE "
+                + FoodEntry.COLUMN_BODY_FOOD_ID + " = old." + FoodEntry._ID + ";"
+                + " DELETE FROM " + TagEntry.LINK_TABLE_NAME + " WHERE "
+                + TagEntry.COLUMN_FOOD_ID + " = old." + FoodEntry._ID + ";"
+                + " DELETE FROM " + IngredientEntry.LINK_TABLE_NAME + " WHERE "
+                + IngredientEntry.COLUMN_FOOD_ID + " = old." + FoodEntry._ID + "; END;");
+    }
+
+    /**
+     * Creates the ingredient term table and the table linking terms to recipes. The link
+     * table's primary key (ingredient_id, food_id) holds the posting list of every term, the
+     * extra index on food_id serves the updates of a single recipe.
+     */
+    private static void createIngredientTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + IngredientEntry.TABLE_NAME + " ("
+                + IngredientEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + IngredientEntry.COLUMN_INGREDIENT_TERM + " TEXT NOT NULL UNIQUE);");
+
+        db.execSQL("CREATE TABLE " + IngredientEntry.LINK_TABLE_NAME + " ("
+                + IngredientEntry.COLUMN_INGREDIENT_ID + " INTEGER NOT NULL, "
+                + IngredientEntry.COLUMN_FOOD_ID + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + IngredientEntry.COLUMN_INGREDIENT_ID + ", "
+                + IngredientEntry.COLUMN_FOOD_ID + "));");
+
+        db.execSQL("CREATE INDEX " + IngredientEntry.LINK_TABLE_NAME + "_"
+                + IngredientEntry.COLUMN_FOOD_ID + " ON " + IngredientEntry.LINK_TABLE_NAME
+                + " (" + IngredientEntry.COLUMN_FOOD_ID + ");");
     }
 }
\ No newline at end of file
@@ -0,0 +1,258 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams the recipe collection to and from JSON, for moving recipes between devices.
+ *
+ * The file is a single object of the form {"version": 1, "recipes": [{...}, ...]}, where every
+ * recipe holds the columns of {@link #COLUMNS}. Both directions work on one recipe at a time:
+ * the export walks the provider cursor straight into a {@link JsonWriter}, and the import
+ * parses with a {@link JsonReader} and inserts every {@link #IMPORT_BATCH_SIZE} recipes with a
+ * single {@link ContentResolver#bulkInsert}. Memory use doesn't depend on the size of the file.
+ */
+public final class FoodJson {
+
+    /** Version of the file format written by {@link #exportRecipes} */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String FIELD_VERSION = "version";
+    private static final String FIELD_RECIPES = "recipes";
+
+    /** Number of recipes inserted per transaction when importing */
+    private static final int IMPORT_BATCH_SIZE = 500;
+
+    /** Recipe columns written to and read from the file */
+    private static final String[] COLUMNS = {
+            FoodEntry.COLUMN_FOOD_NAME,
+            FoodEntry.COLUMN_FOOD_HASHTAGS,
+            FoodEntry.COLUMN_FOOD_MEAL,
+            FoodEntry.COLUMN_FOOD_TIME,
+            FoodEntry.COLUMN_FOOD_INGREDIENTS,
+            FoodEntry.COLUMN_FOOD_INSTRUCIONS
+    };
+
+    /**
+     * Listener told about the progress of an import or export.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called after every recipe on export, and after every batch on import.
+         *
+         * @param done  recipes (export) or bytes (import) processed so far
+         * @param total total number of recipes (export) or bytes (import), or -1 if unknown
+         * @return false to cancel the transfer
+         */
+        boolean onProgress(long done, long total);
+    }
+
+    /**
+     * Thrown when a transfer is cancelled through its {@link ProgressListener}.
+     */
+    public static class CancelledException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CancelledException() {
+            super("Transfer cancelled");
+        }
+    }
+
+    private FoodJson() {}
+
+    /**
+     * Write all recipes to the given stream. The stream is not closed.
+     *
+     * @return the number of recipes written
+     * @throws CancelledException if the listener cancelled the export
+     */
+    public static int exportRecipes(ContentResolver resolver, OutputStream out,
+                                    ProgressListener listener) throws IOException {
+        Cursor cursor = resolver.query(FoodEntry.CONTENT_URI, COLUMNS, null, null, FoodEntry._ID);
+        if (cursor == null) {
+            throw new IOException("Failed to query " + FoodEntry.CONTENT_URI);
+        }
+
+        int count = 0;
+        try {
+            JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+            writer.beginObject();
+            writer.name(FIELD_VERSION).value(FORMAT_VERSION);
+            writer.name(FIELD_RECIPES).beginArray();
+
+            int total = cursor.getCount();
+            while (cursor.moveToNext()) {
+                writer.beginObject();
+                for (int i = 0; i < COLUMNS.length; i++) {
+                    if (cursor.isNull(i)) {
+                        continue;
+                    }
+                    writer.name(COLUMNS[i]);
+                    if (COLUMNS[i].equals(FoodEntry.COLUMN_FOOD_MEAL)
+                            || COLUMNS[i].equals(FoodEntry.COLUMN_FOOD_TIME)) {
+                        writer.value(cursor.getLong(i));
+                    } else {
+                        writer.value(cursor.getString(i));
+                    }
+                }
+                writer.endObject();
+                count++;
+
+                if (listener != null && !listener.onProgress(count, total)) {
+                    throw new CancelledException();
+                }
+            }
+
+            writer.endArray();
+            writer.endObject();
+            writer.flush();
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+
+    /**
+     * Read recipes from the given stream and insert them through the provider, a batch at a
+     * time. Every batch is validated and committed on its own, so a cancelled or failed import
+     * keeps the batches committed before it. The stream is not closed.
+     *
+     * @param length length of the stream in bytes for the progress, or -1 if unknown
+     * @return the number of recipes imported
+     * @throws CancelledException if the listener cancelled the import
+     */
+    public static int importRecipes(ContentResolver resolver, InputStream in, long length,
+                                    ProgressListener listener) throws IOException {
+        CountingInputStream counter = new CountingInputStream(new BufferedInputStream(in));
+        JsonReader reader = new JsonReader(new InputStreamReader(counter, "UTF-8"));
+        List<ContentValues> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        int count = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (field.equals(FIELD_VERSION)) {
+                int version = reader.nextInt();
+                if (version > FORMAT_VERSION) {
+                    throw new IOException("Unsupported recipe file version " + version);
+                }
+            } else if (field.equals(FIELD_RECIPES)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    batch.add(readRecipe(reader));
+                    if (batch.size() == IMPORT_BATCH_SIZE) {
+                        count += insertBatch(resolver, batch);
+                        if (listener != null && !listener.onProgress(counter.getCount(), length)) {
+                            throw new CancelledException();
+                        }
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        count += insertBatch(resolver, batch);
+        if (listener != null) {
+            listener.onProgress(counter.getCount(), length);
+        }
+        return count;
+    }
+
+    /**
+     * Read one recipe object, skipping the fields that aren't recipe columns.
+     */
+    private static ContentValues readRecipe(JsonReader reader) throws IOException {
+        ContentValues values = new ContentValues();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (name.equals(FoodEntry.COLUMN_FOOD_MEAL)
+                    || name.equals(FoodEntry.COLUMN_FOOD_TIME)) {
+                values.put(name, reader.nextInt());
+            } else if (name.equals(FoodEntry.COLUMN_FOOD_NAME)
+                    || name.equals(FoodEntry.COLUMN_FOOD_HASHTAGS)
+                    || name.equals(FoodEntry.COLUMN_FOOD_INGREDIENTS)
+                    || name.equals(FoodEntry.COLUMN_FOOD_INSTRUCIONS)) {
+                values.put(name, reader.nextString());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return values;
+    }
+
+    private static int insertBatch(ContentResolver resolver, List<ContentValues> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int inserted = resolver.bulkInsert(FoodEntry.CONTENT_URI,
+                batch.toArray(new ContentValues[batch.size()]));
+        batch.clear();
+        return inserted;
+    }
+
+    /**
+     * Counts the bytes read through it, for the import progress.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+    }
+}
@@ -1,15 +1,58 @@
 package com.scvetkovic.android.foodmaniac.data;
 
+import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.content.res.Configuration;
 import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.text.TextUtils;
 import android.util.Log;
+import com.scvetkovic.android.foodmaniac.R;
 import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+import com.scvetkovic.android.foodmaniac.data.FoodContract.IngredientEntry;
+import com.scvetkovic.android.foodmaniac.data.FoodContract.TagEntry;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * {@link ContentProvider} for the recipes.
+ *
+ * Concurrency: the database runs in write-ahead logging mode (see {@link FoodDbHelper}), so
+ * queries can run on any number of threads at the same time as a write. Each query sees the
+ * last committed state, and it doesn't wait for a transaction in progress. Writes are
+ * serialized on the single primary connection: an insert, update or delete waits for the write
+ * before it, and a {@link #bulkInsert} or {@link #applyBatch} holds the connection for its whole
+ * transaction. A recipe row and its secondary indexes are always written in one transaction,
+ * so readers never see one without the other.
+ */
 public class FoodProvider extends ContentProvider {
 
     /** Tag for the log messages */
@@ -21,6 +64,194 @@ public class FoodProvider extends ContentProvider {
     /** URI matcher code for the content URI for a single recipe in the recipe table */
     private static final int RECIPE_ID = 101;
 
+    /** URI matcher code for the content URI for a full-text search over the recipe table */
+    private static final int SEARCH = 102;
+
+    /** URI matcher code for the content URI for recipes filtered by hashtag */
+    private static final int TAGGED = 103;
+
+    /** URI matcher code for the content URI for the hashtags and their usage counts */
+    private static final int TAGS = 104;
+
+    /** URI matcher code for the content URI for recipes that can be cooked from pantry items */
+    private static final int PANTRY = 105;
+
+    /** URI matcher code for the content URI for the ingredient terms and their usage counts */
+    private static final int INGREDIENTS = 106;
+
+    /** URI matcher code for the content URI for the typo tolerant search of recipe names */
+    private static final int FUZZY = 107;
+
+    /** URI matcher code for the content URI for the recipes similar to a single recipe */
+    private static final int SIMILAR = 108;
+
+    /** URI matcher code for the content URI for the performance counters of the provider */
+    private static final int STATS = 109;
+
+    /**
+     * Names the calls of each URI are counted under in the {@link ProviderMetrics}, by URI
+     * matcher code from {@link #RECIPES} on
+     */
+    private static final String[] URI_NAMES = {
+            FoodContract.PATH_FOOD,
+            FoodContract.PATH_FOOD + "/#",
+            FoodContract.PATH_SEARCH,
+            FoodContract.PATH_TAGGED,
+            FoodContract.PATH_TAGS,
+            FoodContract.PATH_PANTRY,
+            FoodContract.PATH_INGREDIENTS,
+            FoodContract.PATH_FUZZY,
+            FoodContract.PATH_SIMILAR + "/#",
+            FoodContract.PATH_STATS
+    };
+
+    /**
+     * URIs of the lists derived from the recipes, notified when a single recipe changes. The
+     * hashtag and ingredient term counts are notified with the terms that changed instead.
+     */
+    private static final Uri[] RECIPE_LIST_URIS = {
+            FoodEntry.CONTENT_SEARCH_URI,
+            FoodEntry.CONTENT_FUZZY_URI,
+            FoodEntry.CONTENT_SIMILAR_URI,
+            FoodEntry.CONTENT_TAGGED_URI,
+            FoodEntry.CONTENT_PANTRY_URI
+    };
+
+    /** Columns of a recipe returned when a query doesn't ask for specific columns */
+    private static final String[] RECIPE_COLUMNS = {
+            FoodEntry._ID,
+            FoodEntry.COLUMN_FOOD_NAME,
+            FoodEntry.COLUMN_FOOD_HASHTAGS,
+            FoodEntry.COLUMN_FOOD_MEAL,
+            FoodEntry.COLUMN_FOOD_TIME,
+            FoodEntry.COLUMN_FOOD_INGREDIENTS,
+            FoodEntry.COLUMN_FOOD_INSTRUCIONS,
+            FoodEntry.COLUMN_FOOD_INGREDIENT_COUNT
+    };
+
+    /** Recipe table with the body table joined in, for queries that need the long texts */
+    private static final String RECIPE_BODY_TABLES = FoodEntry.TABLE_NAME + " LEFT JOIN "
+            + FoodEntry.BODY_TABLE_NAME + " ON " + FoodEntry.BODY_TABLE_NAME + "."
+            + FoodEntry.COLUMN_BODY_FOOD_ID + " = " + FoodEntry.TABLE_NAME + "." + FoodEntry._ID;
+
+    /** Matches a reference to one of the columns stored in the body table */
+    private static final Pattern BODY_COLUMN_PATTERN = Pattern.compile("\\b("
+            + FoodEntry.COLUMN_FOOD_INGREDIENTS + "|" + FoodEntry.COLUMN_FOOD_INSTRUCIONS + ")\\b");
+
+    /** Columns that can be requested from the pantry URI, in their default order */
+    private static final String[] PANTRY_COLUMNS = {
+            FoodEntry._ID,
+            FoodEntry.COLUMN_FOOD_NAME,
+            FoodEntry.COLUMN_FOOD_HASHTAGS,
+            FoodEntry.COLUMN_FOOD_MEAL,
+            FoodEntry.COLUMN_FOOD_TIME,
+            FoodEntry.COLUMN_MATCHED_INGREDIENTS,
+            FoodEntry.COLUMN_MISSING_INGREDIENTS
+    };
+
+    /** Number of pantry results returned when the URI doesn't ask for a limit */
+    private static final int DEFAULT_PANTRY_LIMIT = 50;
+
+    /** Tables joined to count how many recipes use each hashtag */
+    private static final String TAG_COUNT_TABLES = TagEntry.TABLE_NAME + " JOIN "
+            + TagEntry.LINK_TABLE_NAME + " ON " + TagEntry.LINK_TABLE_NAME + "."
+            + TagEntry.COLUMN_TAG_ID + " = " + TagEntry.TABLE_NAME + "." + TagEntry._ID;
+
+    /** Maps the columns of the hashtags URI to the expressions computing them */
+    private static final Map<String, String> sTagCountProjectionMap = new HashMap<>();
+    static {
+        sTagCountProjectionMap.put(TagEntry._ID,
+                TagEntry.TABLE_NAME + "." + TagEntry._ID + " AS " + TagEntry._ID);
+        sTagCountProjectionMap.put(TagEntry.COLUMN_TAG_NAME,
+                TagEntry.TABLE_NAME + "." + TagEntry.COLUMN_TAG_NAME + " AS " + TagEntry.COLUMN_TAG_NAME);
+        sTagCountProjectionMap.put(TagEntry.COLUMN_TAG_COUNT,
+                "COUNT(" + TagEntry.LINK_TABLE_NAME + "." + TagEntry.COLUMN_FOOD_ID + ") AS "
+                        + TagEntry.COLUMN_TAG_COUNT);
+    }
+
+    /** Tables joined to count the recipes using each ingredient term */
+    private static final String INGREDIENT_COUNT_TABLES = IngredientEntry.TABLE_NAME + " JOIN "
+            + IngredientEntry.LINK_TABLE_NAME + " ON " + IngredientEntry.LINK_TABLE_NAME + "."
+            + IngredientEntry.COLUMN_INGREDIENT_ID + " = " + IngredientEntry.TABLE_NAME + "."
+            + IngredientEntry._ID;
+
+    /** Columns of the ingredient term counts, see {@link #sTagCountProjectionMap} */
+    private static final Map<String, String> sIngredientCountProjectionMap = new HashMap<>();
+    static {
+        sIngredientCountProjectionMap.put(IngredientEntry._ID,
+                IngredientEntry.TABLE_NAME + "." + IngredientEntry._ID + " AS " + IngredientEntry._ID);
+        sIngredientCountProjectionMap.put(IngredientEntry.COLUMN_INGREDIENT_TERM,
+                IngredientEntry.TABLE_NAME + "." + IngredientEntry.COLUMN_INGREDIENT_TERM + " AS "
+                        + IngredientEntry.COLUMN_INGREDIENT_TERM);
+        sIngredientCountProjectionMap.put(IngredientEntry.COLUMN_INGREDIENT_COUNT,
+                "COUNT(" + IngredientEntry.LINK_TABLE_NAME + "." + IngredientEntry.COLUMN_FOOD_ID
+                        + ") AS " + IngredientEntry.COLUMN_INGREDIENT_COUNT);
+    }
+
+    /** Columns that can be requested from the search URI, in their default order */
+    private static final String[] SEARCH_COLUMNS = {
+            FoodEntry._ID,
+            FoodEntry.COLUMN_FOOD_NAME,
+            FoodEntry.COLUMN_FOOD_HASHTAGS,
+            FoodEntry.COLUMN_FOOD_MEAL,
+            FoodEntry.COLUMN_FOOD_TIME,
+            FoodEntry.COLUMN_SEARCH_SNIPPET
+    };
+
+    /**
+     * Weight of a hit in each column of the search table when ranking results, in the order
+     * the columns are declared: name, hashtags, ingredients, instructions.
+     */
+    private static final double[] SEARCH_COLUMN_WEIGHTS = { 10.0, 5.0, 2.0, 1.0 };
+
+    /** Number of search results returned when the URI doesn't ask for a limit */
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+
+    /**
+     * Number of the most recent matches of a search that are ranked. It bounds the work of a
+     * search however many recipes a short prefix matches.
+     */
+    private static final int SEARCH_CANDIDATE_LIMIT = 200;
+
+    /** Columns that can be requested from the fuzzy search URI, in their default order */
+    private static final String[] FUZZY_COLUMNS = {
+            FoodEntry._ID,
+            FoodEntry.COLUMN_FOOD_NAME,
+            FoodEntry.COLUMN_FOOD_HASHTAGS,
+            FoodEntry.COLUMN_FOOD_MEAL,
+            FoodEntry.COLUMN_FOOD_TIME,
+            FoodEntry.COLUMN_EDIT_DISTANCE
+    };
+
+    /** Number of fuzzy search results returned when the URI doesn't ask for a limit */
+    private static final int DEFAULT_FUZZY_LIMIT = 20;
+
+    /** Columns that can be requested from the similar recipes URI, in their default order */
+    private static final String[] SIMILAR_COLUMNS = {
+            FoodEntry._ID,
+            FoodEntry.COLUMN_FOOD_NAME,
+            FoodEntry.COLUMN_FOOD_HASHTAGS,
+            FoodEntry.COLUMN_FOOD_MEAL,
+            FoodEntry.COLUMN_FOOD_TIME,
+            FoodEntry.COLUMN_SIMILARITY
+    };
+
+    /** Number of similar recipes returned when the URI doesn't ask for a limit */
+    private static final int DEFAULT_SIMILAR_LIMIT = 10;
+
+    /**
+     * Number of recipes sharing the most trigrams with the search terms whose edit distance is
+     * computed. It bounds the work of a search however many recipes share a common trigram.
+     */
+    private static final int FUZZY_CANDIDATE_LIMIT = 200;
+
+    /**
+     * Temporary table holding the ids of the recipes an update or delete with a selection
+     * applies to. It lives on the connection of the write's transaction, and is emptied by
+     * every write using it.
+     */
+    private static final String WRITE_ID_TABLE_NAME = "temp.write_ids";
+
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return for the root URI.
@@ -47,20 +278,169 @@ public class FoodProvider extends ContentProvider {
         // For scvetkovic, "content://com.scvetkovic.android.foodmaniac/foodmaniac/3" matches, but
         // "content://com.scvetkovic.android.foodmaniac/foodmaniac" (without a number at the end) doesn't match.
         sUriMatcher.addURI(FoodContract.CONTENT_AUTHORITY, FoodContract.PATH_FOOD + "/#", RECIPE_ID);
+
+        // The content URI of the form "content://com.scvetkovic.android.foodmaniac/foodmaniac/search"
+        // will map to the integer code {@link #SEARCH}. The search terms are passed in the
+        // "q" query parameter.
+        sUriMatcher.addURI(FoodContract.CONTENT_AUTHORITY,
+                FoodContract.PATH_FOOD + "/" + FoodContract.PATH_SEARCH, SEARCH);
+
+        // The content URI of the form "content://com.scvetkovic.android.foodmaniac/foodmaniac/fuzzy"
+        // will map to the integer code {@link #FUZZY}, with the terms in the "q" parameter too.
+        sUriMatcher.addURI(FoodContract.CONTENT_AUTHORITY,
+                FoodContract.PATH_FOOD + "/" + FoodContract.PATH_FUZZY, FUZZY);
+
+        // The content URI of the form "content://com.scvetkovic.android.foodmaniac/foodmaniac/similar/3"
+        // will map to the integer code {@link #SIMILAR}.
+        sUriMatcher.addURI(FoodContract.CONTENT_AUTHORITY,
+                FoodContract.PATH_FOOD + "/" + FoodContract.PATH_SIMILAR + "/#", SIMILAR);
+
+        // The content URI of the form "content://com.scvetkovic.android.foodmaniac/foodmaniac/tagged"
+        // will map to the integer code {@link #TAGGED}, and ".../foodmaniac/tags" to {@link #TAGS}.
+        sUriMatcher.addURI(FoodContract.CONTENT_AUTHORITY,
+                FoodContract.PATH_FOOD + "/" + FoodContract.PATH_TAGGED, TAGGED);
+        sUriMatcher.addURI(FoodContract.CONTENT_AUTHORITY,
+                FoodContract.PATH_FOOD + "/" + FoodContract.PATH_TAGS, TAGS);
+
+        // The content URI of the form "content://com.scvetkovic.android.foodmaniac/foodmaniac/pantry"
+        // will map to the integer code {@link #PANTRY}.
+        sUriMatcher.addURI(FoodContract.CONTENT_AUTHORITY,
+                FoodContract.PATH_FOOD + "/" + FoodContract.PATH_PANTRY, PANTRY);
+
+        // The content URI of the form "content://com.scvetkovic.android.foodmaniac/foodmaniac/ingredients"
+        // will map to the integer code {@link #INGREDIENTS}.
+        sUriMatcher.addURI(FoodContract.CONTENT_AUTHORITY,
+                FoodContract.PATH_FOOD + "/" + FoodContract.PATH_INGREDIENTS, INGREDIENTS);
+
+        // The content URI of the form "content://com.scvetkovic.android.foodmaniac/foodmaniac/stats"
+        // will map to the integer code {@link #STATS}.
+        sUriMatcher.addURI(FoodContract.CONTENT_AUTHORITY,
+                FoodContract.PATH_FOOD + "/" + FoodContract.PATH_STATS, STATS);
     }
 
     /** Database helper object */
     private FoodDbHelper mDbHelper;
 
+    /** Recently read recipes, answering the queries for a single recipe */
+    private final RecipeCache mRecipeCache = new RecipeCache();
+
+    /** Latencies and counts of the calls of the provider */
+    private final ProviderMetrics mMetrics = new ProviderMetrics(URI_NAMES);
+
+    /** Recipe queries that took longer than the threshold, with their query plans */
+    private SlowQueryLog mSlowQueryLog;
+
+    /** Whether the ingredients and instructions are written compressed, see {@link BodyCodec} */
+    private boolean mCompressBodies;
+
+    /** Builds the name keys of the recipes for the current locale */
+    private volatile NameCollator mNameCollator;
+
+    /**
+     * State of the batch applied on the current thread by {@link #bulkInsert} or
+     * {@link #applyBatch}, or null outside of a batch. While a batch is applied, the writes
+     * don't notify the listeners one by one.
+     */
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<>();
+
+    /**
+     * Signal of the query running on the current thread, when the caller can cancel it. The
+     * page and search queries run with it, so SQLite stops as soon as they are cancelled.
+     */
+    private final ThreadLocal<CancellationSignal> mCancellationSignal = new ThreadLocal<>();
+
+    /**
+     * Tracks whether the writes of a batch changed anything, and whether they all succeeded.
+     */
+    private static class Batch {
+        boolean changed;
+        boolean successful;
+
+        /** Recipes invalidated in the batch, to be invalidated again once it has committed */
+        final Set<Long> invalidatedIds = new HashSet<>();
+        boolean invalidatedAll;
+    }
+
     @Override
     public boolean onCreate() {
         mDbHelper = new FoodDbHelper(getContext());
+        mCompressBodies = getContext().getResources().getBoolean(R.bool.compress_recipe_bodies);
+        mSlowQueryLog = new SlowQueryLog(
+                getContext().getResources().getInteger(R.integer.slow_query_log_size),
+                getContext().getResources().getInteger(R.integer.slow_query_threshold_ms));
+        if (mCompressBodies) {
+            mDbHelper.compressBodiesInBackground();
+        }
+        updateNameKeys();
         return true;
     }
 
+    /**
+     * Close the database. Only called by the tests on their own providers; the system never
+     * shuts the app's provider down.
+     */
+    @Override
+    public void shutdown() {
+        mDbHelper.close();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        if (!new NameCollator(Locale.getDefault()).getLocaleName()
+                .equals(mNameCollator.getLocaleName())) {
+            updateNameKeys();
+        }
+    }
+
+    /**
+     * Key new names for the current locale, and rebuild the stored name keys in the background
+     * if they were built for another one. The list is reloaded once they are rebuilt.
+     */
+    private void updateNameKeys() {
+        mNameCollator = new NameCollator(Locale.getDefault());
+        mDbHelper.updateNameKeysInBackground(mNameCollator, new Runnable() {
+            @Override
+            public void run() {
+                notifyBulkChange();
+            }
+        });
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder, CancellationSignal cancellationSignal) {
+        mCancellationSignal.set(cancellationSignal);
+        try {
+            return query(uri, projection, selection, selectionArgs, sortOrder);
+        } finally {
+            mCancellationSignal.remove();
+        }
+    }
+
+    /**
+     * Run the query and count it in the {@link ProviderMetrics}. The rows are counted with
+     * {@link Cursor#getCount}, which runs a database query to the end; the loaders call it right
+     * away anyway, so the measured time includes reading the rows rather than just preparing
+     * the statement.
+     */
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        long start = System.nanoTime();
+        Cursor cursor = null;
+        try {
+            cursor = queryUri(uri, projection, selection, selectionArgs, sortOrder);
+            return cursor;
+        } finally {
+            mMetrics.record(ProviderMetrics.OP_QUERY, sUriMatcher.match(uri) - RECIPES, start,
+                    cursor != null ? cursor.getCount() : 0, cursor == null);
+        }
+    }
+
+    private Cursor queryUri(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                            String sortOrder) {
         // Get readable database
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
 
@@ -74,8 +454,14 @@ public class FoodProvider extends ContentProvider {
                 // For the RECIPES code, query the recipe table directly with the given
                 // projection, selection, selection arguments, and sort order. The cursor
                 // could contain multiple rows of the recipe table.
-                cursor = database.query(FoodEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                if (uri.getQueryParameter(FoodEntry.QUERY_PARAM_LIMIT) != null) {
+                    // A limit asks for a single page of the list, starting after the row
+                    // given in the keyset parameters
+                    cursor = queryPage(database, uri, projection, selection, selectionArgs, sortOrder);
+                } else {
+                    cursor = queryRecipes(database, projection, selection, selectionArgs,
+                            sortOrder, null);
+                }
                 break;
             case RECIPE_ID:
                 // For the RECIPE_ID code, extract out the ID from the URI.
@@ -89,10 +475,72 @@ public class FoodProvider extends ContentProvider {
                 selection = FoodContract.FoodEntry._ID + "=?";
                 selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
 
-                // This will perform a query on the recipe table where the _id equals 3 to return a
-                // Cursor containing that row of the table.
-                cursor = database.query(FoodContract.FoodEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                // The recipe opened a moment ago is usually still in the cache. Otherwise, this
+                // will perform a query on the recipe table where the _id equals 3 and cache the
+                // row it returns.
+                cursor = queryCachedRecipe(database, ContentUris.parseId(uri), projection);
+                if (cursor == null) {
+                    cursor = queryRecipes(database, projection, selection, selectionArgs, sortOrder, null);
+                }
+                break;
+            case SEARCH:
+                // For the SEARCH code, look the terms up in the full-text index and return the
+                // matching recipes ranked by relevance. Selection and sort order don't apply here.
+                cursor = searchRecipes(database, uri, projection);
+                break;
+            case FUZZY:
+                // For the FUZZY code, find the names close to the terms through the trigram
+                // index and return them closest first. Selection and sort order don't apply here.
+                cursor = searchNames(database, uri, projection);
+                break;
+            case SIMILAR:
+                // For the SIMILAR code, look the recipes with the closest ingredient signatures
+                // up in the signature buckets. Selection and sort order don't apply here.
+                cursor = querySimilar(database, uri, projection);
+                break;
+            case TAGGED:
+                // For the TAGGED code, restrict the recipes to the ids found through the hashtag
+                // index, on top of any selection the caller passed in.
+                String tagFilter = buildTagFilter(uri);
+                if (TextUtils.isEmpty(selection)) {
+                    selection = tagFilter;
+                } else {
+                    selection = tagFilter + " AND (" + selection + ")";
+                }
+                cursor = queryRecipes(database, projection, selection, selectionArgs, sortOrder, null);
+                break;
+            case TAGS:
+                // For the TAGS code, count the recipes linked to each hashtag. Hashtags that are
+                // no longer used by any recipe are left out by the join.
+                if (sortOrder == null) {
+                    sortOrder = TagEntry.COLUMN_TAG_COUNT + " DESC";
+                }
+                SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+                builder.setTables(TAG_COUNT_TABLES);
+                builder.setProjectionMap(sTagCountProjectionMap);
+                cursor = builder.query(database, projection, selection, selectionArgs,
+                        TagEntry.TABLE_NAME + "." + TagEntry._ID, null, sortOrder);
+                break;
+            case PANTRY:
+                // For the PANTRY code, rank the recipes by how much of their ingredients are
+                // covered by the pantry items, using the inverted ingredient index.
+                cursor = queryPantry(database, uri, projection);
+                break;
+            case INGREDIENTS:
+                // For the INGREDIENTS code, count the recipes using each ingredient term, like
+                // the hashtags above.
+                if (sortOrder == null) {
+                    sortOrder = IngredientEntry.COLUMN_INGREDIENT_COUNT + " DESC";
+                }
+                SQLiteQueryBuilder ingredientBuilder = new SQLiteQueryBuilder();
+                ingredientBuilder.setTables(INGREDIENT_COUNT_TABLES);
+                ingredientBuilder.setProjectionMap(sIngredientCountProjectionMap);
+                cursor = ingredientBuilder.query(database, projection, selection, selectionArgs,
+                        IngredientEntry.TABLE_NAME + "." + IngredientEntry._ID, null, sortOrder);
+                break;
+            case STATS:
+                // For the STATS code, return the counters of the provider itself
+                cursor = queryStats(projection);
                 break;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
@@ -107,14 +555,746 @@ public class FoodProvider extends ContentProvider {
         return cursor;
     }
 
+    /**
+     * Query the recipe table. The body table is only joined in when the projection refers to
+     * one of its columns, so the catalog never reads the long texts. Without a projection, all
+     * the {@link #RECIPE_COLUMNS} are returned. The selection and sort order can't refer to the
+     * body columns, see {@link #checkNoBodyClause}.
+     */
+    private Cursor queryRecipes(SQLiteDatabase database, String[] projection,
+                                String selection, String[] selectionArgs,
+                                String sortOrder, String limit) {
+        checkNoBodyClause(selection, sortOrder);
+        if (projection == null) {
+            projection = RECIPE_COLUMNS;
+        }
+        boolean body = referencesBody(projection);
+        String tables = body ? RECIPE_BODY_TABLES : FoodEntry.TABLE_NAME;
+        long start = System.nanoTime();
+        Cursor cursor = database.query(tables, projection, selection, selectionArgs,
+                null, null, sortOrder, limit);
+        // The selection and sort order come from the caller, so they may not be served by an
+        // index. The SQL is only built again when the query turns out to be slow. Counting the
+        // rows runs the query to the end, so it is only timed while the log is on.
+        if (mSlowQueryLog.isEnabled()) {
+            int rows = cursor.getCount();
+            long micros = (System.nanoTime() - start) / 1000;
+            if (mSlowQueryLog.isSlow(micros)) {
+                mSlowQueryLog.record(database, SQLiteQueryBuilder.buildQueryString(false, tables,
+                        projection, selection, null, null, sortOrder, limit), selectionArgs,
+                        rows, micros);
+            }
+        }
+        // The body columns are only decompressed when they are read from the cursor
+        return body ? BodyCodec.wrap(cursor) : cursor;
+    }
+
+    /**
+     * Answer the query for a single recipe from the recipe cache, reading the whole row into the
+     * cache first if it isn't there. Returns null if the projection asks for anything else than
+     * the {@link #RECIPE_COLUMNS}, which the caller then queries from the database.
+     */
+    private Cursor queryCachedRecipe(SQLiteDatabase database, long id, String[] projection) {
+        if (projection == null) {
+            projection = RECIPE_COLUMNS;
+        }
+        int[] columnMap = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columnMap[i] = Arrays.asList(RECIPE_COLUMNS).indexOf(projection[i]);
+            if (columnMap[i] < 0) {
+                return null;
+            }
+        }
+
+        Object[] row = mRecipeCache.get(id);
+        if (row == null) {
+            long generation = mRecipeCache.getGeneration();
+            row = readRecipe(database, id);
+            if (row == null) {
+                return new MatrixCursor(projection, 0);
+            }
+            // A row read inside a transaction may still be rolled back, so it isn't cached
+            if (!database.inTransaction()) {
+                mRecipeCache.put(id, row, generation);
+            }
+        }
+
+        Object[] values = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            values[i] = row[columnMap[i]];
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(values);
+        return cursor;
+    }
+
+    /**
+     * Read all the {@link #RECIPE_COLUMNS} of a recipe, or return null if it doesn't exist.
+     */
+    private Object[] readRecipe(SQLiteDatabase database, long id) {
+        Cursor cursor = queryRecipes(database, RECIPE_COLUMNS, FoodEntry._ID + "=?",
+                new String[] { String.valueOf(id) }, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            Object[] row = new Object[RECIPE_COLUMNS.length];
+            for (int i = 0; i < row.length; i++) {
+                switch (cursor.getType(i)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[i] = cursor.getLong(i);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[i] = cursor.getDouble(i);
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        row[i] = cursor.getString(i);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row[i] = cursor.getBlob(i);
+                        break;
+                    default:
+                        row[i] = null;
+                }
+            }
+            return row;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns whether any of the given columns or SQL clauses refers to a body column.
+     */
+    private static boolean referencesBody(String... clauses) {
+        for (String clause : clauses) {
+            if (clause != null && BODY_COLUMN_PATTERN.matcher(clause).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reject a selection or sort order on the body columns. Their long values are stored
+     * compressed (see {@link BodyCodec}), which SQL can't compare, so such a clause would skip
+     * those recipes without a word. The bodies are searched through
+     * {@link FoodEntry#CONTENT_SEARCH_URI} instead.
+     */
+    private static void checkNoBodyClause(String... clauses) {
+        if (referencesBody(clauses)) {
+            throw new IllegalArgumentException("Cannot select or sort on the ingredients or "
+                    + "instructions, search them through " + FoodEntry.CONTENT_SEARCH_URI);
+        }
+    }
+
+    /**
+     * Query one page of the recipe list. The rows are sorted on the column given in the "sort"
+     * parameter and then on _id, and only the rows after the ("after", "after_id") key of the
+     * previous page are returned. Since the position is given by a key rather than an offset,
+     * every page costs the same no matter how far into the list it is.
+     */
+    private Cursor queryPage(SQLiteDatabase database, Uri uri, String[] projection,
+                             String selection, String[] selectionArgs, String sortOrder) {
+        if (sortOrder != null) {
+            throw new IllegalArgumentException("Paged query can't take a sort order for " + uri);
+        }
+        if (projection == null) {
+            projection = RECIPE_COLUMNS;
+        }
+        List<String> args = new ArrayList<>();
+        String sql = buildPageQuery(uri, projection, selection, selectionArgs, args);
+        String[] argArray = args.toArray(new String[args.size()]);
+        long start = System.nanoTime();
+        Cursor cursor = rawQuery(database, sql, argArray);
+        if (mSlowQueryLog.isEnabled()) {
+            int rows = cursor.getCount();
+            long micros = (System.nanoTime() - start) / 1000;
+            if (mSlowQueryLog.isSlow(micros)) {
+                mSlowQueryLog.record(database, sql, argArray, rows, micros);
+            }
+        }
+        return referencesBody(projection) ? BodyCodec.wrap(cursor) : cursor;
+    }
+
+    /**
+     * Run a query that is aborted when the caller cancels it, if it can.
+     */
+    private Cursor rawQuery(SQLiteDatabase database, String sql, String[] selectionArgs) {
+        CancellationSignal signal = mCancellationSignal.get();
+        if (signal != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return database.rawQuery(sql, selectionArgs, signal);
+        }
+        return database.rawQuery(sql, selectionArgs);
+    }
+
+    /**
+     * Build the SQL of a page query, see {@link #queryPage}, adding its arguments to the given
+     * list. The "meal", "max_time" and "q" parameters restrict the rows further. Every combination
+     * of filter and sort column is served by one of the catalog indexes of
+     * {@link FoodDbHelper}. With "q", the matches are looked up by _id from the full-text index
+     * instead, and sorted unless a meal index gives their order; the query plan tests verify
+     * both.
+     */
+    static String buildPageQuery(Uri uri, String[] projection, String selection,
+                                 String[] selectionArgs, List<String> args) {
+        String sortColumn = uri.getQueryParameter(FoodEntry.QUERY_PARAM_SORT);
+        if (sortColumn == null) {
+            sortColumn = FoodEntry._ID;
+        } else if (!sortColumn.equals(FoodEntry._ID)
+                && !sortColumn.equals(FoodEntry.COLUMN_FOOD_NAME)
+                && !sortColumn.equals(FoodEntry.COLUMN_FOOD_TIME)) {
+            throw new IllegalArgumentException("Cannot sort on " + sortColumn + " for " + uri);
+        } else if (sortColumn.equals(FoodEntry.COLUMN_FOOD_NAME)) {
+            // Names are ordered by their collation key, which the name indexes are sorted on
+            sortColumn = FoodEntry.COLUMN_FOOD_NAME_KEY;
+        }
+        checkNoBodyClause(selection);
+
+        List<String> where = new ArrayList<>();
+        if (!TextUtils.isEmpty(selection)) {
+            where.add("(" + selection + ")");
+            if (selectionArgs != null) {
+                args.addAll(Arrays.asList(selectionArgs));
+            }
+        }
+
+        String meal = uri.getQueryParameter(FoodEntry.QUERY_PARAM_MEAL);
+        if (meal != null) {
+            where.add(FoodEntry.COLUMN_FOOD_MEAL + " = ?");
+            args.add(String.valueOf(parseInt(uri, meal)));
+        }
+        String maxTime = uri.getQueryParameter(FoodEntry.QUERY_PARAM_MAX_TIME);
+        if (maxTime != null) {
+            where.add(FoodEntry.COLUMN_FOOD_TIME + " <= ?");
+            args.add(String.valueOf(parseInt(uri, maxTime)));
+        }
+
+        String text = uri.getQueryParameter(FoodEntry.QUERY_PARAM_SEARCH);
+        if (text != null) {
+            // The matching ids come from the FTS index, the page is still read in index order
+            String match = buildMatchQuery(text);
+            if (match == null) {
+                where.add("0");
+            } else {
+                where.add(FoodEntry._ID + " IN (SELECT docid FROM " + FoodDbHelper.SEARCH_TABLE_NAME
+                        + " WHERE " + FoodDbHelper.SEARCH_TABLE_NAME + " MATCH ?)");
+                args.add(match);
+            }
+        }
+
+        String afterId = uri.getQueryParameter(FoodEntry.QUERY_PARAM_AFTER_ID);
+        if (sortColumn.equals(FoodEntry._ID)) {
+            // The first page starts after _id 0, so the query always has a range on _id. That
+            // lets SQLite walk the meal index in _id order rather than sort the whole category.
+            where.add(FoodEntry._ID + " > ?");
+            args.add(afterId != null ? afterId : "0");
+        } else if (afterId != null) {
+            String afterKey = uri.getQueryParameter(FoodEntry.QUERY_PARAM_AFTER);
+            if (afterKey == null) {
+                throw new IllegalArgumentException("Paged query requires a sort key for " + uri);
+            }
+            // The redundant "c >= ?" gives SQLite a range to seek to in the index, which it
+            // can't take from the OR alone
+            where.add(sortColumn + " >= ? AND (" + sortColumn + " > ? OR ("
+                    + sortColumn + " = ? AND " + FoodEntry._ID + " > ?))");
+            args.add(afterKey);
+            args.add(afterKey);
+            args.add(afterKey);
+            args.add(afterId);
+        }
+
+        String orderBy = sortColumn.equals(FoodEntry._ID)
+                ? FoodEntry._ID : sortColumn + ", " + FoodEntry._ID;
+        String tables = referencesBody(projection) ? RECIPE_BODY_TABLES : FoodEntry.TABLE_NAME;
+        return SQLiteQueryBuilder.buildQueryString(false, tables, projection,
+                TextUtils.join(" AND ", where), null, null, orderBy,
+                String.valueOf(getLimit(uri, 0)));
+    }
+
+    /**
+     * Parse an integer query parameter of the given URI.
+     */
+    private static int parseInt(Uri uri, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number " + value + " for " + uri);
+        }
+    }
+
+    /**
+     * Run a full-text search for the terms in the "q" parameter of the given URI. Every term is
+     * matched as a prefix, and all of them have to appear in the recipe.
+     *
+     * The work is bounded however many recipes match, for instance a single letter: only the
+     * {@link #SEARCH_CANDIDATE_LIMIT} most recent matches are read from the FTS index, in its
+     * docid order so SQLite stops after them, and ranked by their matchinfo. The recipe columns
+     * and the match offsets for the snippets are then read for the returned rows only.
+     */
+    private Cursor searchRecipes(SQLiteDatabase database, Uri uri, String[] projection) {
+        if (projection == null) {
+            projection = SEARCH_COLUMNS;
+        }
+        int[] columnMap = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columnMap[i] = Arrays.asList(SEARCH_COLUMNS).indexOf(projection[i]);
+            if (columnMap[i] < 0) {
+                throw new IllegalArgumentException("Search does not support column " + projection[i]);
+            }
+        }
+
+        int limit = getLimit(uri, DEFAULT_SEARCH_LIMIT);
+        MatrixCursor result = new MatrixCursor(projection);
+
+        String match = buildMatchQuery(uri.getQueryParameter(FoodEntry.QUERY_PARAM_SEARCH));
+        if (match == null) {
+            return result;
+        }
+
+        // Rank the candidates, best match first
+        final Map<Long, Double> scores = new HashMap<>();
+        Cursor cursor = rawQuery(database, "SELECT docid, "
+                + "matchinfo(" + FoodDbHelper.SEARCH_TABLE_NAME + ", 'pcx')"
+                + " FROM " + FoodDbHelper.SEARCH_TABLE_NAME
+                + " WHERE " + FoodDbHelper.SEARCH_TABLE_NAME + " MATCH ?"
+                + " ORDER BY docid DESC LIMIT " + Math.max(limit, SEARCH_CANDIDATE_LIMIT),
+                new String[] { match });
+        try {
+            while (cursor.moveToNext()) {
+                scores.put(cursor.getLong(0), rankMatch(cursor.getBlob(1)));
+            }
+        } finally {
+            cursor.close();
+        }
+        if (scores.isEmpty()) {
+            return result;
+        }
+        List<Long> rankedIds = new ArrayList<>(scores.keySet());
+        Collections.sort(rankedIds, new Comparator<Long>() {
+            @Override
+            public int compare(Long a, Long b) {
+                return Double.compare(scores.get(b), scores.get(a));
+            }
+        });
+        if (rankedIds.size() > limit) {
+            rankedIds = rankedIds.subList(0, limit);
+        }
+
+        // Read the returned rows, with their match offsets only if snippets are asked for
+        boolean withSnippets = Arrays.asList(projection).contains(FoodEntry.COLUMN_SEARCH_SNIPPET);
+        long[] ids = new long[rankedIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = rankedIds.get(i);
+        }
+        String sql = "SELECT "
+                + "f." + FoodEntry._ID + ", "
+                + "f." + FoodEntry.COLUMN_FOOD_NAME + ", "
+                + "f." + FoodEntry.COLUMN_FOOD_HASHTAGS + ", "
+                + "f." + FoodEntry.COLUMN_FOOD_MEAL + ", "
+                + "f." + FoodEntry.COLUMN_FOOD_TIME + ", "
+                + (withSnippets ? "offsets(" + FoodDbHelper.SEARCH_TABLE_NAME + ")" : "NULL")
+                + " FROM " + FoodDbHelper.SEARCH_TABLE_NAME
+                + " JOIN " + FoodEntry.TABLE_NAME + " f ON f." + FoodEntry._ID + " = "
+                + FoodDbHelper.SEARCH_TABLE_NAME + ".docid"
+                + " WHERE " + FoodDbHelper.SEARCH_TABLE_NAME + " MATCH ? AND "
+                + buildIdSelection(FoodDbHelper.SEARCH_TABLE_NAME + ".docid", ids);
+
+        Map<Long, Object[]> rowsById = new HashMap<>();
+        cursor = rawQuery(database, sql, new String[] { match });
+        try {
+            while (cursor.moveToNext()) {
+                // The snippet column holds the match offsets until the snippet is built
+                Object[] row = new Object[SEARCH_COLUMNS.length];
+                row[0] = cursor.getLong(0);
+                row[1] = cursor.getString(1);
+                row[2] = cursor.getString(2);
+                row[3] = cursor.getInt(3);
+                row[4] = cursor.getInt(4);
+                row[5] = cursor.getString(5);
+                rowsById.put((Long) row[0], row);
+            }
+        } finally {
+            cursor.close();
+        }
+        List<Object[]> rows = new ArrayList<>();
+        for (long id : rankedIds) {
+            Object[] row = rowsById.get(id);
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+
+        if (withSnippets) {
+            buildSnippets(database, rows);
+        }
+
+        for (Object[] row : rows) {
+            Object[] values = new Object[projection.length];
+            for (int j = 0; j < projection.length; j++) {
+                values[j] = row[columnMap[j]];
+            }
+            result.addRow(values);
+        }
+        return result;
+    }
+
+    /**
+     * Find the recipes whose name is within a few typing mistakes of the search terms. The
+     * candidates sharing enough trigrams with the terms are read from the trigram index, and
+     * their names ranked by edit distance, see {@link TrigramIndex}.
+     */
+    private Cursor searchNames(SQLiteDatabase database, Uri uri, String[] projection) {
+        if (projection == null) {
+            projection = FUZZY_COLUMNS;
+        }
+        int[] columnMap = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columnMap[i] = Arrays.asList(FUZZY_COLUMNS).indexOf(projection[i]);
+            if (columnMap[i] < 0) {
+                throw new IllegalArgumentException("Fuzzy search does not support column " + projection[i]);
+            }
+        }
+        MatrixCursor result = new MatrixCursor(projection);
+
+        List<String> words = TrigramIndex.words(uri.getQueryParameter(FoodEntry.QUERY_PARAM_SEARCH));
+        if (words.isEmpty()) {
+            return result;
+        }
+        String query = TextUtils.join(" ", words);
+        int maxDistance = TrigramIndex.getMaxDistance(query.length());
+        Set<Long> trigrams = TrigramIndex.trigrams(words, false);
+        int minShared = Math.max(1, trigrams.size() - TrigramIndex.TRIGRAMS_PER_MISTAKE * maxDistance);
+
+        // The candidates, with the number of trigrams they share
+        final Map<Long, Integer> shared = new HashMap<>();
+        Cursor cursor = rawQuery(database,
+                TrigramIndex.buildCandidateQuery(trigrams, minShared, FUZZY_CANDIDATE_LIMIT), null);
+        try {
+            while (cursor.moveToNext()) {
+                shared.put(cursor.getLong(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        if (shared.isEmpty()) {
+            return result;
+        }
+
+        long[] ids = new long[shared.size()];
+        int n = 0;
+        for (long id : shared.keySet()) {
+            ids[n++] = id;
+        }
+        List<Object[]> rows = new ArrayList<>();
+        cursor = database.query(FoodEntry.TABLE_NAME, new String[] { FoodEntry._ID,
+                        FoodEntry.COLUMN_FOOD_NAME, FoodEntry.COLUMN_FOOD_HASHTAGS,
+                        FoodEntry.COLUMN_FOOD_MEAL, FoodEntry.COLUMN_FOOD_TIME },
+                buildIdSelection(FoodEntry._ID, ids), null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(1);
+                int distance = TrigramIndex.distance(query, TrigramIndex.words(name), maxDistance);
+                if (distance > maxDistance) {
+                    continue;
+                }
+                rows.add(new Object[] { cursor.getLong(0), name, cursor.getString(2),
+                        cursor.getInt(3), cursor.getInt(4), distance });
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // Closest first, then the names sharing more of the trigrams, then the shorter ones
+        Collections.sort(rows, new Comparator<Object[]>() {
+            @Override
+            public int compare(Object[] a, Object[] b) {
+                int compared = (Integer) a[5] - (Integer) b[5];
+                if (compared == 0) {
+                    compared = shared.get((Long) b[0]) - shared.get((Long) a[0]);
+                }
+                if (compared == 0) {
+                    compared = ((String) a[1]).length() - ((String) b[1]).length();
+                }
+                return compared;
+            }
+        });
+
+        int limit = getLimit(uri, DEFAULT_FUZZY_LIMIT);
+        for (int i = 0; i < rows.size() && i < limit; i++) {
+            Object[] values = new Object[projection.length];
+            for (int j = 0; j < projection.length; j++) {
+                values[j] = rows.get(i)[columnMap[j]];
+            }
+            result.addRow(values);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the counters of the {@link ProviderMetrics}, see {@link FoodContract.StatsEntry}.
+     */
+    private Cursor queryStats(String[] projection) {
+        if (projection == null) {
+            projection = ProviderMetrics.COLUMNS;
+        }
+        int[] columnMap = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columnMap[i] = Arrays.asList(ProviderMetrics.COLUMNS).indexOf(projection[i]);
+            if (columnMap[i] < 0) {
+                throw new IllegalArgumentException("Stats do not support column " + projection[i]);
+            }
+        }
+        MatrixCursor result = new MatrixCursor(projection);
+        for (Object[] row : mMetrics.getStats()) {
+            Object[] values = new Object[projection.length];
+            for (int j = 0; j < projection.length; j++) {
+                values[j] = row[columnMap[j]];
+            }
+            result.addRow(values);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the recipes with the ingredients most similar to the recipe of the URI, most
+     * similar first, see {@link MinHashIndex}.
+     */
+    private static Cursor querySimilar(SQLiteDatabase database, Uri uri, String[] projection) {
+        if (projection == null) {
+            projection = SIMILAR_COLUMNS;
+        }
+        int[] columnMap = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columnMap[i] = Arrays.asList(SIMILAR_COLUMNS).indexOf(projection[i]);
+            if (columnMap[i] < 0) {
+                throw new IllegalArgumentException("Similar recipes do not support column " + projection[i]);
+            }
+        }
+        MatrixCursor result = new MatrixCursor(projection);
+
+        List<MinHashIndex.Neighbour> neighbours = MinHashIndex.findSimilar(database,
+                ContentUris.parseId(uri), getLimit(uri, DEFAULT_SIMILAR_LIMIT));
+        if (neighbours.isEmpty()) {
+            return result;
+        }
+        long[] ids = new long[neighbours.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = neighbours.get(i).foodId;
+        }
+        Map<Long, Object[]> rows = new HashMap<>();
+        Cursor cursor = database.query(FoodEntry.TABLE_NAME, new String[] { FoodEntry._ID,
+                        FoodEntry.COLUMN_FOOD_NAME, FoodEntry.COLUMN_FOOD_HASHTAGS,
+                        FoodEntry.COLUMN_FOOD_MEAL, FoodEntry.COLUMN_FOOD_TIME },
+                buildIdSelection(FoodEntry._ID, ids), null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                rows.put(cursor.getLong(0), new Object[] { cursor.getLong(0), cursor.getString(1),
+                        cursor.getString(2), cursor.getInt(3), cursor.getInt(4), null });
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // In the order of similarity
+        for (MinHashIndex.Neighbour neighbour : neighbours) {
+            Object[] row = rows.get(neighbour.foodId);
+            if (row == null) {
+                continue;
+            }
+            row[SIMILAR_COLUMNS.length - 1] = neighbour.similarity;
+            Object[] values = new Object[projection.length];
+            for (int j = 0; j < projection.length; j++) {
+                values[j] = row[columnMap[j]];
+            }
+            result.addRow(values);
+        }
+        return result;
+    }
+
+    /**
+     * Replace the match offsets of the given search results with their snippets. The search
+     * table only holds folded text, so the snippets are cut from the original text of the
+     * recipes, reading the bodies of the results whose best match is in the body.
+     */
+    private static void buildSnippets(SQLiteDatabase database, List<Object[]> rows) {
+        int snippetIndex = Arrays.asList(SEARCH_COLUMNS).indexOf(FoodEntry.COLUMN_SEARCH_SNIPPET);
+        int[] snippetColumns = new int[rows.size()];
+        List<Long> bodyIds = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            snippetColumns[i] = SearchIndex.getSnippetColumn((String) rows.get(i)[snippetIndex]);
+            if (snippetColumns[i] >= 2) {
+                bodyIds.add((Long) rows.get(i)[0]);
+            }
+        }
+
+        Map<Long, String[]> bodies = new HashMap<>();
+        if (!bodyIds.isEmpty()) {
+            long[] ids = new long[bodyIds.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = bodyIds.get(i);
+            }
+            // The body columns may be compressed
+            Cursor cursor = BodyCodec.wrap(database.query(FoodEntry.BODY_TABLE_NAME,
+                    new String[] { FoodEntry.COLUMN_BODY_FOOD_ID,
+                            FoodEntry.COLUMN_FOOD_INGREDIENTS, FoodEntry.COLUMN_FOOD_INSTRUCIONS },
+                    buildIdSelection(FoodEntry.COLUMN_BODY_FOOD_ID, ids), null, null, null, null));
+            try {
+                while (cursor.moveToNext()) {
+                    bodies.put(cursor.getLong(0),
+                            new String[] { cursor.getString(1), cursor.getString(2) });
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] row = rows.get(i);
+            String text;
+            if (snippetColumns[i] < 2) {
+                // The name and the hashtags follow the _id in the result row
+                text = (String) row[1 + snippetColumns[i]];
+            } else {
+                String[] body = bodies.get(row[0]);
+                text = body != null ? body[snippetColumns[i] - 2] : null;
+            }
+            row[snippetIndex] = SearchIndex.buildSnippet(text, snippetColumns[i],
+                    (String) row[snippetIndex]);
+        }
+    }
+
+    /**
+     * Find the recipes that can be cooked with the items in the "items" parameter of the URI,
+     * missing at most the number of ingredients given in the "missing" parameter.
+     */
+    private Cursor queryPantry(SQLiteDatabase database, Uri uri, String[] projection) {
+        if (projection == null) {
+            projection = PANTRY_COLUMNS;
+        }
+        for (String column : projection) {
+            if (!Arrays.asList(PANTRY_COLUMNS).contains(column)) {
+                throw new IllegalArgumentException("Pantry does not support column " + column);
+            }
+        }
+
+        int maxMissing = Integer.MAX_VALUE;
+        String missing = uri.getQueryParameter(FoodEntry.QUERY_PARAM_MAX_MISSING);
+        if (missing != null) {
+            try {
+                maxMissing = Integer.parseInt(missing);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid missing count " + missing + " for " + uri);
+            }
+        }
+
+        String pantryQuery = IngredientIndex.buildPantryQuery(
+                IngredientIndex.tokenize(uri.getQueryParameter(FoodEntry.QUERY_PARAM_PANTRY_ITEMS)),
+                maxMissing, getLimit(uri, DEFAULT_PANTRY_LIMIT));
+        if (pantryQuery == null) {
+            return new MatrixCursor(projection);
+        }
+        return database.rawQuery("SELECT " + TextUtils.join(", ", projection)
+                + " FROM (" + pantryQuery + ")", null);
+    }
+
+    /**
+     * Build the selection restricting the recipe table to the hashtags given in the "all" or
+     * "any" parameter of the URI.
+     */
+    private static String buildTagFilter(Uri uri) {
+        String allTags = uri.getQueryParameter(FoodEntry.QUERY_PARAM_ALL_TAGS);
+        String anyTags = uri.getQueryParameter(FoodEntry.QUERY_PARAM_ANY_TAGS);
+        if (allTags == null && anyTags == null) {
+            throw new IllegalArgumentException("Tag filter requires tags for " + uri);
+        }
+        boolean matchAll = allTags != null;
+        String idQuery = TagIndex.buildFoodIdQuery(TagIndex.parse(matchAll ? allTags : anyTags),
+                matchAll);
+        if (idQuery == null) {
+            // No usable tags, so no recipe can match
+            return "0";
+        }
+        return FoodEntry._ID + " IN (" + idQuery + ")";
+    }
+
+    /**
+     * Turn the text typed by the user into an FTS MATCH expression, where every word is a prefix
+     * term. Returns null if there is nothing to search for.
+     */
+    private static String buildMatchQuery(String text) {
+        if (TextUtils.isEmpty(text)) {
+            return null;
+        }
+        // The terms are folded like the text in the search table
+        StringBuilder match = new StringBuilder();
+        for (String term : SearchIndex.foldTerms(text)) {
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append(term).append('*');
+        }
+        return match.length() > 0 ? match.toString() : null;
+    }
+
+    /**
+     * Score a search hit from its FTS matchinfo 'pcx' blob. For every phrase and column, the hits
+     * in this row are weighted by the column weight and divided by the hits in the whole table,
+     * so rare terms and matches in the name count the most.
+     */
+    private static double rankMatch(byte[] matchInfo) {
+        ByteBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+        int phrases = buffer.getInt(0);
+        int columns = buffer.getInt(4);
+        double score = 0;
+        for (int p = 0; p < phrases; p++) {
+            for (int c = 0; c < columns && c < SEARCH_COLUMN_WEIGHTS.length; c++) {
+                int offset = 4 * (2 + 3 * (p * columns + c));
+                int hitsInRow = buffer.getInt(offset);
+                int hitsInTable = buffer.getInt(offset + 4);
+                if (hitsInRow > 0) {
+                    score += SEARCH_COLUMN_WEIGHTS[c] * hitsInRow / hitsInTable;
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Read the "limit" query parameter of the given URI, or return the default if it is missing.
+     */
+    private static int getLimit(Uri uri, int defaultLimit) {
+        String limit = uri.getQueryParameter(FoodEntry.QUERY_PARAM_LIMIT);
+        if (limit == null) {
+            return defaultLimit;
+        }
+        try {
+            int value = Integer.parseInt(limit);
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the error below
+        }
+        throw new IllegalArgumentException("Invalid limit " + limit + " for " + uri);
+    }
+
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
+        long start = System.nanoTime();
         final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case RECIPES:
-                return insertFood(uri, contentValues);
-            default:
-                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        Uri newUri = null;
+        try {
+            switch (match) {
+                case RECIPES:
+                    newUri = insertFood(uri, contentValues);
+                    return newUri;
+                default:
+                    throw new IllegalArgumentException("Insertion is not supported for " + uri);
+            }
+        } finally {
+            mMetrics.record(ProviderMetrics.OP_INSERT, match - RECIPES, start,
+                    newUri != null ? 1 : 0, newUri == null);
         }
     }
 
@@ -141,19 +1321,53 @@ public class FoodProvider extends ContentProvider {
             throw new IllegalArgumentException("Recipe requires valid preparation time");
         }
 
+        // The ingredient count is derived from the ingredients, so it can't be set directly
+        if (values.containsKey(FoodEntry.COLUMN_FOOD_INGREDIENT_COUNT)) {
+            throw new IllegalArgumentException("Recipe ingredient count is read-only");
+        }
+
+        // Same for the name key, which is derived from the name
+        if (values.containsKey(FoodEntry.COLUMN_FOOD_NAME_KEY)) {
+            throw new IllegalArgumentException("Recipe name key is read-only");
+        }
+
         // Get writeable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // Insert the new recipe with the given values
-        long id = database.insert(FoodEntry.TABLE_NAME, null, values);
-        // If the ID is -1, then the insertion failed. Log an error and return null.
-        if (id == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
-            return null;
+        // The ingredients and instructions go to the body table
+        ContentValues recipe = new ContentValues(values);
+        ContentValues body = removeBody(recipe);
+        recipe.put(FoodEntry.COLUMN_FOOD_NAME_KEY, mNameCollator.getKey(name));
+
+        long id;
+        TermChanges changedTerms = new TermChanges();
+        database.beginTransaction();
+        try {
+            // Insert the new recipe with the given values
+            id = database.insert(FoodEntry.TABLE_NAME, null, recipe);
+            // If the ID is -1, then the insertion failed. Log an error and return null.
+            if (id == -1) {
+                Log.e(LOG_TAG, "Failed to insert row for " + uri);
+                return null;
+            }
+
+            // Every recipe has a body row and a search row, even empty ones
+            SearchIndex.insert(database, id, values);
+            TrigramIndex.update(database, id, name);
+            ContentValues storedBody = encodeBody(body);
+            storedBody.put(FoodEntry.COLUMN_BODY_FOOD_ID, id);
+            database.insertOrThrow(FoodEntry.BODY_TABLE_NAME, null, storedBody);
+
+            // Keep the secondary indexes in the same transaction as the recipe row
+            indexRecipe(database, id, values, changedTerms);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
 
-        // Notify all listeners that the data has changed for the pet content URI
-        getContext().getContentResolver().notifyChange(uri, null);
+        // Notify all listeners that the recipe has been inserted
+        notifyRecipeChange(id, FoodEntry.CHANGE_INSERT);
+        notifyTermChanges(changedTerms);
 
         // Return the new URI with the ID (of the newly inserted row) appended at the end
         return ContentUris.withAppendedId(uri, id);
@@ -162,19 +1376,28 @@ public class FoodProvider extends ContentProvider {
     @Override
     public int update(Uri uri, ContentValues contentValues, String selection,
                       String[] selectionArgs) {
+        long start = System.nanoTime();
         final int match = sUriMatcher.match(uri);
-        switch (match) {
-            case RECIPES:
-                return updateRecipe(uri, contentValues, selection, selectionArgs);
-            case RECIPE_ID:
-                // For the RECIPE_ID code, extract out the ID from the URI,
-                // so we know which row to update. Selection will be "_id=?" and selection
-                // arguments will be a String array containing the actual ID.
-                selection = FoodContract.FoodEntry._ID + "=?";
-                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                return updateRecipe(uri, contentValues, selection, selectionArgs);
-            default:
-                throw new IllegalArgumentException("Update is not supported for " + uri);
+        int rowsUpdated = -1;
+        try {
+            switch (match) {
+                case RECIPES:
+                    rowsUpdated = updateRecipe(uri, contentValues, selection, selectionArgs);
+                    return rowsUpdated;
+                case RECIPE_ID:
+                    // For the RECIPE_ID code, extract out the ID from the URI,
+                    // so we know which row to update. Selection will be "_id=?" and selection
+                    // arguments will be a String array containing the actual ID.
+                    selection = FoodContract.FoodEntry._ID + "=?";
+                    selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
+                    rowsUpdated = updateRecipe(uri, contentValues, selection, selectionArgs);
+                    return rowsUpdated;
+                default:
+                    throw new IllegalArgumentException("Update is not supported for " + uri);
+            }
+        } finally {
+            mMetrics.record(ProviderMetrics.OP_UPDATE, match - RECIPES, start,
+                    Math.max(rowsUpdated, 0), rowsUpdated < 0);
         }
     }
 
@@ -212,6 +1435,15 @@ public class FoodProvider extends ContentProvider {
             }
         }
 
+        // The ingredient count is derived from the ingredients, so it can't be set directly
+        if (values.containsKey(FoodEntry.COLUMN_FOOD_INGREDIENT_COUNT)) {
+            throw new IllegalArgumentException("Recipe ingredient count is read-only");
+        }
+
+        // Same for the name key, which is derived from the name
+        if (values.containsKey(FoodEntry.COLUMN_FOOD_NAME_KEY)) {
+            throw new IllegalArgumentException("Recipe name key is read-only");
+        }
 
         // If there are no values to update, then don't try to update the database
         if (values.size() == 0) {
@@ -221,21 +1453,211 @@ public class FoodProvider extends ContentProvider {
         // Otherwise, get writeable database to update the data
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
-        // Perform the update on the database and get the number of rows affected
-        int rowsUpdated = database.update(FoodContract.FoodEntry.TABLE_NAME, values, selection, selectionArgs);
+        // The ingredients and instructions are updated in the body table, and a new name gets
+        // a new key
+        ContentValues recipe = new ContentValues(values);
+        ContentValues body = removeBody(recipe);
+        if (recipe.containsKey(FoodEntry.COLUMN_FOOD_NAME)) {
+            recipe.put(FoodEntry.COLUMN_FOOD_NAME_KEY,
+                    mNameCollator.getKey(recipe.getAsString(FoodEntry.COLUMN_FOOD_NAME)));
+        }
+
+        int rowsUpdated = 0;
+        long[] ids;
+        TermChanges changedTerms = new TermChanges();
+        database.beginTransaction();
+        try {
+            // Find the recipes to update before the update, since the update may change the
+            // columns the selection is based on. Their body, secondary indexes and cached rows
+            // are updated by id.
+            ids = queryIds(database, selection, selectionArgs);
+            if (body.size() > 0) {
+                storeWriteIds(database, ids);
+            }
+
+            // Perform the update on the database and get the number of rows affected
+            if (recipe.size() > 0) {
+                rowsUpdated = database.update(FoodEntry.TABLE_NAME, recipe, selection, selectionArgs);
+            }
+            SearchIndex.update(database, ids, values);
+            if (values.containsKey(FoodEntry.COLUMN_FOOD_NAME)) {
+                String name = values.getAsString(FoodEntry.COLUMN_FOOD_NAME);
+                for (long id : ids) {
+                    TrigramIndex.update(database, id, name);
+                }
+            }
+            if (body.size() > 0) {
+                int bodiesUpdated = database.update(FoodEntry.BODY_TABLE_NAME, encodeBody(body),
+                        buildWriteIdSelection(FoodEntry.COLUMN_BODY_FOOD_ID), null);
+                if (recipe.size() == 0) {
+                    rowsUpdated = bodiesUpdated;
+                }
+            }
+
+            if (needsIndexing(values)) {
+                for (long id : ids) {
+                    indexRecipe(database, id, values, changedTerms);
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        // Drop the old rows from the cache now that the new ones are committed
+        invalidateRecipes(ids);
 
         // If 1 or more rows were updated, then notify all listeners that the data at the
         // given URI has changed
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            if (sUriMatcher.match(uri) == RECIPE_ID) {
+                notifyRecipeChange(ContentUris.parseId(uri), FoodEntry.CHANGE_UPDATE);
+                notifyTermChanges(changedTerms);
+            } else {
+                notifyBulkChange();
+            }
         }
 
         // Return the number of rows updated
         return rowsUpdated;
     }
 
+    /**
+     * Returns whether the given values change a column that the secondary indexes are built from.
+     */
+    private static boolean needsIndexing(ContentValues values) {
+        return values.containsKey(FoodEntry.COLUMN_FOOD_HASHTAGS)
+                || values.containsKey(FoodEntry.COLUMN_FOOD_INGREDIENTS);
+    }
+
+    /**
+     * Update the secondary indexes of a recipe for the indexed columns present in the values,
+     * and add the hashtags and ingredient terms whose usage counts changed to changedTerms.
+     * Must be called inside the transaction that writes the recipe row.
+     */
+    private static void indexRecipe(SQLiteDatabase database, long id, ContentValues values,
+                                    TermChanges changedTerms) {
+        if (values.containsKey(FoodEntry.COLUMN_FOOD_HASHTAGS)) {
+            changedTerms.tags.addAll(TagIndex.update(database, id,
+                    values.getAsString(FoodEntry.COLUMN_FOOD_HASHTAGS)));
+        }
+        if (values.containsKey(FoodEntry.COLUMN_FOOD_INGREDIENTS)) {
+            String ingredients = values.getAsString(FoodEntry.COLUMN_FOOD_INGREDIENTS);
+            changedTerms.ingredients.addAll(IngredientIndex.update(database, id, ingredients));
+            MinHashIndex.update(database, id, ingredients);
+        }
+    }
+
+    /**
+     * Hashtags and ingredient terms whose usage counts were changed by a write.
+     */
+    private static class TermChanges {
+        final Set<String> tags = new HashSet<>();
+        final Set<String> ingredients = new HashSet<>();
+    }
+
+    /**
+     * Move the values of the body columns out of the given recipe values, and return them.
+     */
+    private static ContentValues removeBody(ContentValues recipe) {
+        ContentValues body = new ContentValues();
+        if (recipe.containsKey(FoodEntry.COLUMN_FOOD_INGREDIENTS)) {
+            body.put(FoodEntry.COLUMN_FOOD_INGREDIENTS,
+                    recipe.getAsString(FoodEntry.COLUMN_FOOD_INGREDIENTS));
+            recipe.remove(FoodEntry.COLUMN_FOOD_INGREDIENTS);
+        }
+        if (recipe.containsKey(FoodEntry.COLUMN_FOOD_INSTRUCIONS)) {
+            body.put(FoodEntry.COLUMN_FOOD_INSTRUCIONS,
+                    recipe.getAsString(FoodEntry.COLUMN_FOOD_INSTRUCIONS));
+            recipe.remove(FoodEntry.COLUMN_FOOD_INSTRUCIONS);
+        }
+        return body;
+    }
+
+    /**
+     * Returns the body values to store in the body table, compressed if compression is on.
+     */
+    private ContentValues encodeBody(ContentValues body) {
+        return mCompressBodies ? BodyCodec.compressValues(body) : body;
+    }
+
+    /**
+     * Build a selection on the given id column matching exactly the given ids. The ids are
+     * inlined, since they are numbers.
+     */
+    private static String buildIdSelection(String idColumn, long[] ids) {
+        StringBuilder selection = new StringBuilder(idColumn).append(" IN (");
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                selection.append(',');
+            }
+            selection.append(ids[i]);
+        }
+        return selection.append(')').toString();
+    }
+
+    /**
+     * Store the given ids in the temporary table of the write ids, replacing the ones stored
+     * by the previous write. The ids can be any number, so they go into a table rather than
+     * into the SQL, which SQLite limits in length. Must be called inside the transaction of the
+     * write, since the table only exists on its connection.
+     */
+    private static void storeWriteIds(SQLiteDatabase database, long[] ids) {
+        database.execSQL("CREATE TABLE IF NOT EXISTS " + WRITE_ID_TABLE_NAME + " ("
+                + FoodEntry._ID + " INTEGER PRIMARY KEY);");
+        database.delete(WRITE_ID_TABLE_NAME, null, null);
+        SQLiteStatement insert = database.compileStatement("INSERT OR IGNORE INTO "
+                + WRITE_ID_TABLE_NAME + " (" + FoodEntry._ID + ") VALUES (?)");
+        try {
+            for (long id : ids) {
+                insert.bindLong(1, id);
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    /**
+     * Build a selection on the given id column matching the ids stored by
+     * {@link #storeWriteIds}.
+     */
+    private static String buildWriteIdSelection(String idColumn) {
+        return idColumn + " IN (SELECT " + FoodEntry._ID + " FROM " + WRITE_ID_TABLE_NAME + ")";
+    }
+
+    /**
+     * Returns the ids of the recipes matching the given selection, which can't refer to the
+     * body columns.
+     */
+    private long[] queryIds(SQLiteDatabase database, String selection, String[] selectionArgs) {
+        Cursor cursor = queryRecipes(database, new String[] { FoodEntry.TABLE_NAME + "." + FoodEntry._ID },
+                selection, selectionArgs, null, null);
+        try {
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
+        int rowsDeleted = -1;
+        try {
+            rowsDeleted = deleteUri(uri, selection, selectionArgs);
+            return rowsDeleted;
+        } finally {
+            mMetrics.record(ProviderMetrics.OP_DELETE, sUriMatcher.match(uri) - RECIPES, start,
+                    Math.max(rowsDeleted, 0), rowsDeleted < 0);
+        }
+    }
+
+    private int deleteUri(Uri uri, String selection, String[] selectionArgs) {
         // Get writeable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
@@ -245,14 +1667,35 @@ public class FoodProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case RECIPES:
-                // Delete all rows that match the selection and selection args
-                rowsDeleted = database.delete(FoodEntry.TABLE_NAME, selection, selectionArgs);
+                // Delete all rows that match the selection and selection args. Their ids are
+                // looked up first for the recipe cache, in the same transaction as the delete,
+                // so a recipe inserted in between is neither deleted unseen nor left cached.
+                // The body rows are deleted by a trigger.
+                long[] ids = null;
+                database.beginTransaction();
+                try {
+                    if (selection != null) {
+                        ids = queryIds(database, selection, selectionArgs);
+                    }
+                    rowsDeleted = database.delete(FoodEntry.TABLE_NAME, selection, selectionArgs);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+
+                // Without a selection, every recipe is gone
+                if (ids == null) {
+                    invalidateAllRecipes();
+                } else {
+                    invalidateRecipes(ids);
+                }
                 break;
             case RECIPE_ID:
                 // Delete a single row given by the ID in the URI
                 selection = FoodEntry._ID + "=?";
                 selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
                 rowsDeleted = database.delete(FoodContract.FoodEntry.TABLE_NAME, selection, selectionArgs);
+                invalidateRecipes(new long[] { ContentUris.parseId(uri) });
                 break;
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
@@ -261,19 +1704,288 @@ public class FoodProvider extends ContentProvider {
         // If 1 or more rows were deleted, then notify all listeners that the data at the
         // given URI has changed
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            if (match == RECIPE_ID) {
+                notifyRecipeChange(ContentUris.parseId(uri), FoodEntry.CHANGE_DELETE);
+                // The links were removed by the delete triggers, without telling which terms
+                notifyTermChanges(null);
+            } else {
+                notifyBulkChange();
+            }
         }
 
         // Return the number of rows deleted
         return rowsDeleted;
     }
 
+    /**
+     * Insert all the given recipes in a single transaction. Every recipe goes through the same
+     * validation as {@link #insert}; if any of them fails, none of the recipes are inserted.
+     * The listeners are notified once, after the transaction has been committed.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        final int match = sUriMatcher.match(uri);
+        if (match != RECIPES) {
+            throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+
+        long start = System.nanoTime();
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        Batch batch = beginBatch(database);
+        try {
+            for (ContentValues recipe : values) {
+                if (insertFood(uri, recipe) == null) {
+                    // Throw rather than skip the recipe, so the whole batch is rolled back
+                    throw new SQLException("Failed to insert row for " + uri);
+                }
+            }
+            database.setTransactionSuccessful();
+            batch.successful = true;
+        } finally {
+            endBatch(database, batch);
+            mMetrics.record(ProviderMetrics.OP_BATCH, match - RECIPES, start,
+                    batch.successful ? values.length : 0, !batch.successful);
+        }
+        return values.length;
+    }
+
+    /**
+     * Apply all the given operations in a single transaction. If any of them fails, the whole
+     * batch is rolled back. The listeners are notified once, after the transaction has been
+     * committed.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long start = System.nanoTime();
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        Batch batch = beginBatch(database);
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            database.setTransactionSuccessful();
+            batch.successful = true;
+            return results;
+        } finally {
+            endBatch(database, batch);
+            // The operations were each counted too; the batch is counted as a whole under no URI
+            mMetrics.record(ProviderMetrics.OP_BATCH, -1, start,
+                    batch.successful ? operations.size() : 0, !batch.successful);
+        }
+    }
+
+    private Batch beginBatch(SQLiteDatabase database) {
+        if (mBatch.get() != null) {
+            throw new IllegalStateException("Batches can't be nested");
+        }
+        Batch batch = new Batch();
+        mBatch.set(batch);
+        database.beginTransaction();
+        return batch;
+    }
+
+    /**
+     * End the transaction of a batch, and notify the listeners if it committed any change.
+     */
+    private void endBatch(SQLiteDatabase database, Batch batch) {
+        try {
+            database.endTransaction();
+        } finally {
+            mBatch.remove();
+        }
+        // Readers may have cached the recipes again from the snapshot before the commit
+        if (batch.invalidatedAll) {
+            mRecipeCache.invalidateAll();
+        } else if (!batch.invalidatedIds.isEmpty()) {
+            long[] ids = new long[batch.invalidatedIds.size()];
+            int i = 0;
+            for (long id : batch.invalidatedIds) {
+                ids[i++] = id;
+            }
+            mRecipeCache.invalidate(ids);
+        }
+
+        if (batch.successful && batch.changed) {
+            notifyBulkChange();
+            // A large batch leaves a long write-ahead log behind, so fold it back in now
+            mDbHelper.checkpointInBackground();
+        }
+    }
+
+    /**
+     * Drop the given recipes from the recipe cache. Must be called once the write has been
+     * committed; inside a batch they are dropped again when the batch is committed.
+     */
+    private void invalidateRecipes(long[] ids) {
+        mRecipeCache.invalidate(ids);
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            for (long id : ids) {
+                batch.invalidatedIds.add(id);
+            }
+        }
+    }
+
+    /**
+     * Drop all recipes from the recipe cache, see {@link #invalidateRecipes}.
+     */
+    private void invalidateAllRecipes() {
+        mRecipeCache.invalidateAll();
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.invalidatedAll = true;
+        }
+    }
+
+    /**
+     * Notify all listeners that a single recipe has changed, on the recipe's own URI with the
+     * kind of change, and on the URIs of the lists derived from the recipes, whose cursors
+     * aren't under the recipe's URI. Inside a batch, the changes are merged into one bulk
+     * notification that is sent when the batch is committed.
+     */
+    private void notifyRecipeChange(long id, String change) {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.changed = true;
+        } else {
+            notifyChange(FoodEntry.buildChangeUri(id, change));
+            for (Uri uri : RECIPE_LIST_URIS) {
+                notifyChange(uri);
+            }
+            mMetrics.recordNotification(ProviderMetrics.NOTIFY_RECIPE);
+        }
+    }
+
+    /**
+     * Notify the listeners of the hashtag and ingredient term counts that the given terms
+     * changed, or that any of them may have if changedTerms is null. The bulk notification
+     * on {@link FoodEntry#CONTENT_URI} also reaches them, so nothing is sent inside a batch.
+     */
+    private void notifyTermChanges(TermChanges changedTerms) {
+        if (mBatch.get() != null) {
+            return;
+        }
+        notifyTermChanges(TagEntry.CONTENT_URI, changedTerms != null ? changedTerms.tags : null);
+        notifyTermChanges(IngredientEntry.CONTENT_URI,
+                changedTerms != null ? changedTerms.ingredients : null);
+    }
+
+    private void notifyTermChanges(Uri uri, Set<String> terms) {
+        if (terms != null && terms.isEmpty()) {
+            return;
+        }
+        if (terms != null) {
+            uri = uri.buildUpon().appendQueryParameter(FoodEntry.QUERY_PARAM_CHANGED_TERMS,
+                    TextUtils.join(",", terms)).build();
+        }
+        notifyChange(uri);
+        mMetrics.recordNotification(ProviderMetrics.NOTIFY_TERMS);
+    }
+
+    /**
+     * Notify all listeners that any number of recipes may have changed.
+     */
+    private void notifyBulkChange() {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.changed = true;
+        } else {
+            notifyChange(FoodEntry.CONTENT_URI.buildUpon()
+                    .appendQueryParameter(FoodEntry.QUERY_PARAM_CHANGE, FoodEntry.CHANGE_BULK)
+                    .build());
+            mMetrics.recordNotification(ProviderMetrics.NOTIFY_BULK);
+        }
+    }
+
+    private void notifyChange(Uri uri) {
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    /**
+     * Handles {@link FoodContract#METHOD_GET_CACHE_STATS}, returning the counters of the recipe
+     * cache for tuning its size, {@link FoodContract#METHOD_COMPRESS_BODIES}, compressing
+     * the recipe bodies stored as plain text and reporting the space saved,
+     * {@link FoodContract#METHOD_RESET_STATS}, clearing the counters of the calls and the slow
+     * query log, and {@link FoodContract#METHOD_SET_SLOW_QUERY_THRESHOLD}.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (FoodContract.METHOD_GET_CACHE_STATS.equals(method)) {
+            Bundle stats = new Bundle();
+            stats.putInt(FoodContract.CACHE_HITS, mRecipeCache.hitCount());
+            stats.putInt(FoodContract.CACHE_MISSES, mRecipeCache.missCount());
+            stats.putInt(FoodContract.CACHE_EVICTIONS, mRecipeCache.evictionCount());
+            stats.putInt(FoodContract.CACHE_SIZE, mRecipeCache.size());
+            stats.putInt(FoodContract.CACHE_MAX_SIZE, mRecipeCache.maxSize());
+            return stats;
+        }
+        if (FoodContract.METHOD_COMPRESS_BODIES.equals(method)) {
+            BodyCodec.Report report = BodyCodec.compressStoredBodies(mDbHelper.getWritableDatabase());
+            Bundle result = new Bundle();
+            result.putInt(FoodContract.COMPRESSION_RECIPES, report.recipes);
+            result.putLong(FoodContract.COMPRESSION_BYTES_BEFORE, report.bytesBefore);
+            result.putLong(FoodContract.COMPRESSION_BYTES_AFTER, report.bytesAfter);
+            result.putLong(FoodContract.COMPRESSION_DECOMPRESS_MICROS, report.getDecompressMicros());
+            return result;
+        }
+        if (FoodContract.METHOD_RESET_STATS.equals(method)) {
+            mMetrics.reset();
+            mSlowQueryLog.clear();
+            return null;
+        }
+        if (FoodContract.METHOD_SET_SLOW_QUERY_THRESHOLD.equals(method)) {
+            long thresholdMillis;
+            try {
+                thresholdMillis = Long.parseLong(arg);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid slow query threshold " + arg);
+            }
+            if (thresholdMillis < 0) {
+                throw new IllegalArgumentException("Slow query threshold can't be negative: "
+                        + thresholdMillis);
+            }
+            mSlowQueryLog.setThresholdMillis(thresholdMillis);
+            return null;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Print the counters of the calls and of the recipe cache, and the slow queries, for
+     * "adb shell dumpsys activity provider FoodProvider". With the "--reset" argument, the
+     * counters of the calls and the slow queries are cleared after being printed.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        mMetrics.dump(writer);
+        writer.println("Recipe cache: hits=" + mRecipeCache.hitCount()
+                + " misses=" + mRecipeCache.missCount()
+                + " evictions=" + mRecipeCache.evictionCount()
+                + " size=" + mRecipeCache.size() + "/" + mRecipeCache.maxSize());
+        mSlowQueryLog.dump(writer);
+        if (args != null && Arrays.asList(args).contains("--reset")) {
+            mMetrics.reset();
+            mSlowQueryLog.clear();
+            writer.println("Counters reset");
+        }
+    }
+
     @Override
     public String getType(Uri uri) {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case RECIPES:
+            case SEARCH:
+            case FUZZY:
+            case SIMILAR:
+            case TAGGED:
+            case PANTRY:
                 return FoodEntry.CONTENT_LIST_TYPE;
+            case TAGS:
+                return TagEntry.CONTENT_LIST_TYPE;
+            case INGREDIENTS:
+                return IngredientEntry.CONTENT_LIST_TYPE;
+            case STATS:
+                return FoodContract.StatsEntry.CONTENT_LIST_TYPE;
             case RECIPE_ID:
                 return FoodEntry.CONTENT_ITEM_TYPE;
             default:
@@ -0,0 +1,198 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+import com.scvetkovic.android.foodmaniac.data.FoodContract.IngredientEntry;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Maintains the inverted ingredient index ({@link IngredientEntry#TABLE_NAME} and
+ * {@link IngredientEntry#LINK_TABLE_NAME}), mapping every ingredient term to the recipes using
+ * it, and builds the pantry query on top of it. Callers are expected to run the writes inside
+ * a transaction.
+ */
+final class IngredientIndex {
+
+    /**
+     * Words that describe an amount, a unit or a preparation rather than the ingredient itself,
+     * in English and Serbian.
+     */
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "and", "or", "of", "to", "for", "with", "some", "little", "few", "pinch",
+            "g", "gr", "kg", "mg", "ml", "dl", "l", "oz", "lb", "lbs", "cup", "cups", "tbsp",
+            "tsp", "spoon", "spoons", "teaspoon", "teaspoons", "tablespoon", "tablespoons",
+            "piece", "pieces", "pcs", "slice", "slices", "clove", "cloves", "can", "cans",
+            "large", "small", "medium", "fresh", "chopped", "sliced", "diced", "minced", "grated",
+            "taste", "optional",
+            "i", "ili", "po", "sa", "malo", "prstohvat", "kašika", "kašike", "kašičica",
+            "kašičice", "šolja", "šolje", "komad", "komada", "ukusu", "svež", "sveže"));
+
+    private IngredientIndex() {}
+
+    /**
+     * Split a free-text ingredient list into distinct normalized terms. Every line (or comma
+     * separated item) is broken into words, numbers and the {@link #STOP_WORDS} are dropped and
+     * simple English plurals are reduced, so "300 g flour\n3 eggs" gives "flour" and "egg".
+     * The same tokenizer is used for the pantry items, so both sides meet on the same terms.
+     */
+    static Set<String> tokenize(String ingredients) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (TextUtils.isEmpty(ingredients)) {
+            return terms;
+        }
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= ingredients.length(); i++) {
+            char c = i < ingredients.length() ? ingredients.charAt(i) : ' ';
+            if (Character.isLetter(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                String term = word.toString();
+                word.setLength(0);
+                if (!STOP_WORDS.contains(term)) {
+                    terms.add(singular(term));
+                }
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Reduce the common English plural endings ("tomatoes", "berries", "eggs").
+     */
+    private static String singular(String word) {
+        int length = word.length();
+        if (length <= 3 || word.charAt(length - 1) != 's' || word.endsWith("ss")) {
+            return word;
+        }
+        if (word.endsWith("ies")) {
+            return word.substring(0, length - 3) + "y";
+        }
+        if (word.endsWith("oes")) {
+            return word.substring(0, length - 2);
+        }
+        return word.substring(0, length - 1);
+    }
+
+    /**
+     * Replace the ingredient terms linked to the given recipe with the ones found in its
+     * ingredient list, and store their number on the recipe row. Returns the terms that were
+     * added to or removed from the recipe, whose usage counts changed.
+     */
+    static Set<String> update(SQLiteDatabase db, long foodId, String ingredients) {
+        Set<String> oldTerms = getTerms(db, foodId);
+        Set<String> terms = tokenize(ingredients);
+        remove(db, foodId);
+        for (String term : terms) {
+            ContentValues link = new ContentValues();
+            link.put(IngredientEntry.COLUMN_INGREDIENT_ID, getOrCreateTermId(db, term));
+            link.put(IngredientEntry.COLUMN_FOOD_ID, foodId);
+            db.insertWithOnConflict(IngredientEntry.LINK_TABLE_NAME, null, link,
+                    SQLiteDatabase.CONFLICT_IGNORE);
+        }
+
+        ContentValues count = new ContentValues();
+        count.put(FoodEntry.COLUMN_FOOD_INGREDIENT_COUNT, terms.size());
+        db.update(FoodEntry.TABLE_NAME, count, FoodEntry._ID + "=?",
+                new String[] { String.valueOf(foodId) });
+        return TagIndex.symmetricDifference(oldTerms, terms);
+    }
+
+    /**
+     * Returns the ingredient terms currently linked to the given recipe.
+     */
+    private static Set<String> getTerms(SQLiteDatabase db, long foodId) {
+        Set<String> terms = new HashSet<>();
+        Cursor cursor = db.rawQuery("SELECT i." + IngredientEntry.COLUMN_INGREDIENT_TERM
+                + " FROM " + IngredientEntry.LINK_TABLE_NAME + " l JOIN "
+                + IngredientEntry.TABLE_NAME + " i ON i." + IngredientEntry._ID + " = l."
+                + IngredientEntry.COLUMN_INGREDIENT_ID + " WHERE l." + IngredientEntry.COLUMN_FOOD_ID
+                + " = ?", new String[] { String.valueOf(foodId) });
+        try {
+            while (cursor.moveToNext()) {
+                terms.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return terms;
+    }
+
+    /**
+     * Unlink all ingredient terms from the given recipe.
+     */
+    static void remove(SQLiteDatabase db, long foodId) {
+        db.delete(IngredientEntry.LINK_TABLE_NAME, IngredientEntry.COLUMN_FOOD_ID + "=?",
+                new String[] { String.valueOf(foodId) });
+    }
+
+    private static long getOrCreateTermId(SQLiteDatabase db, String term) {
+        Cursor cursor = db.query(IngredientEntry.TABLE_NAME, new String[] { IngredientEntry._ID },
+                IngredientEntry.COLUMN_INGREDIENT_TERM + "=?", new String[] { term },
+                null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        ContentValues values = new ContentValues();
+        values.put(IngredientEntry.COLUMN_INGREDIENT_TERM, term);
+        return db.insertOrThrow(IngredientEntry.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Build the query ranking recipes by how many of their ingredient terms are covered by the
+     * pantry terms. Only the posting lists of the pantry terms are read: they are counted per
+     * recipe, and the recipe row is then joined in by primary key for the total term count.
+     * The terms are inlined as escaped literals.
+     *
+     * Returns null if there are no pantry terms.
+     */
+    static String buildPantryQuery(Set<String> pantryTerms, int maxMissing, int limit) {
+        if (pantryTerms.isEmpty()) {
+            return null;
+        }
+        StringBuilder terms = new StringBuilder();
+        for (String term : pantryTerms) {
+            if (terms.length() > 0) {
+                terms.append(", ");
+            }
+            DatabaseUtils.appendEscapedSQLString(terms, term);
+        }
+
+        String missing = "f." + FoodEntry.COLUMN_FOOD_INGREDIENT_COUNT + " - m."
+                + FoodEntry.COLUMN_MATCHED_INGREDIENTS;
+        return "SELECT "
+                + "f." + FoodEntry._ID + ", "
+                + "f." + FoodEntry.COLUMN_FOOD_NAME + ", "
+                + "f." + FoodEntry.COLUMN_FOOD_HASHTAGS + ", "
+                + "f." + FoodEntry.COLUMN_FOOD_MEAL + ", "
+                + "f." + FoodEntry.COLUMN_FOOD_TIME + ", "
+                + "m." + FoodEntry.COLUMN_MATCHED_INGREDIENTS + ", "
+                + missing + " AS " + FoodEntry.COLUMN_MISSING_INGREDIENTS
+                + " FROM (SELECT " + IngredientEntry.COLUMN_FOOD_ID + ", COUNT(*) AS "
+                + FoodEntry.COLUMN_MATCHED_INGREDIENTS
+                + " FROM " + IngredientEntry.LINK_TABLE_NAME
+                + " WHERE " + IngredientEntry.COLUMN_INGREDIENT_ID + " IN (SELECT "
+                + IngredientEntry._ID + " FROM " + IngredientEntry.TABLE_NAME + " WHERE "
+                + IngredientEntry.COLUMN_INGREDIENT_TERM + " IN (" + terms + "))"
+                + " GROUP BY " + IngredientEntry.COLUMN_FOOD_ID + ") m"
+                + " JOIN " + FoodEntry.TABLE_NAME + " f ON f." + FoodEntry._ID + " = m."
+                + IngredientEntry.COLUMN_FOOD_ID
+                + " WHERE " + missing + " <= " + maxMissing
+                + " ORDER BY CAST(m." + FoodEntry.COLUMN_MATCHED_INGREDIENTS + " AS REAL) / f."
+                + FoodEntry.COLUMN_FOOD_INGREDIENT_COUNT + " DESC, "
+                + FoodEntry.COLUMN_MISSING_INGREDIENTS + " ASC"
+                + " LIMIT " + limit;
+    }
+}
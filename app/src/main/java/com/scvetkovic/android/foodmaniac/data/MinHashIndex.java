@@ -0,0 +1,305 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the recipes with the most similar ingredients without comparing a recipe to all the
+ * others. The similarity of two recipes is the Jaccard index of their ingredient terms (see
+ * {@link IngredientIndex#tokenize}): the number of terms they share over the number of terms
+ * they have together.
+ *
+ * Every recipe gets a MinHash signature when it is saved: for each of {@link #SIGNATURE_SIZE}
+ * hash functions, the smallest hash of its terms. Two signatures agree on a hash function with
+ * probability equal to the similarity of the recipes, so the fraction of equal values estimates
+ * it. The signatures are stored as a BLOB, one row per recipe in {@link #SIGNATURE_TABLE_NAME}.
+ *
+ * For the lookup, the signature is cut into {@link #BANDS} bands and every band is hashed into
+ * a bucket of {@link #BUCKET_TABLE_NAME} (locality-sensitive hashing). Recipes sharing a bucket
+ * agree on a whole band, which is likely for similar recipes and unlikely for the others: with
+ * 32 bands of 2 values, recipes 30% similar share a bucket with probability 0.95, 20% similar
+ * ones with probability 0.73, and 10% similar ones with probability 0.28. Only the recipes
+ * sharing a bucket are compared, the ones sharing the most buckets first.
+ *
+ * Callers are expected to run the writes inside a transaction.
+ */
+final class MinHashIndex {
+
+    /** Name of the table holding the signature of every recipe with ingredients */
+    static final String SIGNATURE_TABLE_NAME = "food_minhash";
+
+    /** Name of the table linking the buckets of the signature bands to the recipes */
+    static final String BUCKET_TABLE_NAME = "food_lsh";
+
+    /** Recipe ID in both tables */
+    static final String COLUMN_FOOD_ID = "food_id";
+
+    /** Signature in {@link #SIGNATURE_TABLE_NAME}, {@link #SIGNATURE_SIZE} little endian ints */
+    static final String COLUMN_SIGNATURE = "signature";
+
+    /** Bucket in {@link #BUCKET_TABLE_NAME}: the band index in the high 32 bits, its hash in the low */
+    static final String COLUMN_BUCKET = "bucket";
+
+    /** Number of hash functions, the values in a signature */
+    static final int SIGNATURE_SIZE = 64;
+
+    /** Number of bands the signature is cut into for the buckets */
+    static final int BANDS = 32;
+
+    /** Number of signature values in a band */
+    private static final int ROWS_PER_BAND = SIGNATURE_SIZE / BANDS;
+
+    /** Number of recipes sharing the most buckets whose signatures are compared */
+    private static final int CANDIDATE_LIMIT = 200;
+
+    /** Number of recipes read per query by {@link #rebuild} */
+    private static final int REBUILD_BATCH_SIZE = 100;
+
+    private MinHashIndex() {}
+
+    /**
+     * A recipe similar to the one looked up, with the estimated similarity.
+     */
+    static class Neighbour {
+        final long foodId;
+        final double similarity;
+
+        Neighbour(long foodId, double similarity) {
+            this.foodId = foodId;
+            this.similarity = similarity;
+        }
+    }
+
+    /**
+     * Creates the signature and bucket tables. The bucket table's primary key
+     * (bucket, food_id) holds the recipes of every bucket, the extra index on food_id serves
+     * the updates of a single recipe.
+     */
+    static void createTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + SIGNATURE_TABLE_NAME + " ("
+                + COLUMN_FOOD_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_SIGNATURE + " BLOB NOT NULL);");
+        db.execSQL("CREATE TABLE " + BUCKET_TABLE_NAME + " ("
+                + COLUMN_BUCKET + " INTEGER NOT NULL, "
+                + COLUMN_FOOD_ID + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_BUCKET + ", " + COLUMN_FOOD_ID + "));");
+        db.execSQL("CREATE INDEX " + BUCKET_TABLE_NAME + "_" + COLUMN_FOOD_ID + " ON "
+                + BUCKET_TABLE_NAME + " (" + COLUMN_FOOD_ID + ");");
+    }
+
+    /**
+     * Returns the MinHash signature of the given terms, or null if there are none.
+     */
+    static int[] signature(Set<String> terms) {
+        if (terms.isEmpty()) {
+            return null;
+        }
+        int[] signature = new int[SIGNATURE_SIZE];
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            signature[i] = Integer.MAX_VALUE;
+        }
+        for (String term : terms) {
+            // String.hashCode() is specified, so the signatures don't change between releases
+            long termHash = term.hashCode();
+            for (int i = 0; i < SIGNATURE_SIZE; i++) {
+                int hash = (int) mix(termHash ^ ((i + 1) * 0x9E3779B97F4A7C15L));
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * Returns the buckets of the bands of a signature.
+     */
+    static long[] buckets(int[] signature) {
+        long[] buckets = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long hash = band;
+            for (int row = 0; row < ROWS_PER_BAND; row++) {
+                hash = hash * 0x100000001B3L ^ signature[band * ROWS_PER_BAND + row];
+            }
+            buckets[band] = ((long) band << 32) | (mix(hash) & 0xFFFFFFFFL);
+        }
+        return buckets;
+    }
+
+    /**
+     * Returns the estimated similarity of the recipes with the given signatures.
+     */
+    static double similarity(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / SIGNATURE_SIZE;
+    }
+
+    /**
+     * The finalizer of MurmurHash3, spreading every bit of the input over the output.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB93FE53B3DA1L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static byte[] encode(int[] signature) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * SIGNATURE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asIntBuffer().put(signature);
+        return buffer.array();
+    }
+
+    private static int[] decode(byte[] blob) {
+        int[] signature = new int[SIGNATURE_SIZE];
+        ByteBuffer.wrap(blob).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(signature);
+        return signature;
+    }
+
+    /**
+     * Replace the signature and buckets of the given recipe with the ones of its ingredients.
+     */
+    static void update(SQLiteDatabase db, long foodId, String ingredients) {
+        remove(db, foodId);
+        insert(db, foodId, ingredients);
+    }
+
+    private static void insert(SQLiteDatabase db, long foodId, String ingredients) {
+        int[] signature = signature(IngredientIndex.tokenize(ingredients));
+        if (signature == null) {
+            return;
+        }
+        ContentValues row = new ContentValues();
+        row.put(COLUMN_FOOD_ID, foodId);
+        row.put(COLUMN_SIGNATURE, encode(signature));
+        db.insertOrThrow(SIGNATURE_TABLE_NAME, null, row);
+        for (long bucket : buckets(signature)) {
+            ContentValues link = new ContentValues();
+            link.put(COLUMN_BUCKET, bucket);
+            link.put(COLUMN_FOOD_ID, foodId);
+            db.insertWithOnConflict(BUCKET_TABLE_NAME, null, link, SQLiteDatabase.CONFLICT_IGNORE);
+        }
+    }
+
+    /**
+     * Remove the signature and buckets of the given recipe.
+     */
+    static void remove(SQLiteDatabase db, long foodId) {
+        String[] args = { String.valueOf(foodId) };
+        db.delete(SIGNATURE_TABLE_NAME, COLUMN_FOOD_ID + "=?", args);
+        db.delete(BUCKET_TABLE_NAME, COLUMN_FOOD_ID + "=?", args);
+    }
+
+    /**
+     * Replace the signatures and buckets of all recipes.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        db.delete(SIGNATURE_TABLE_NAME, null, null);
+        db.delete(BUCKET_TABLE_NAME, null, null);
+        long lastId = 0;
+        boolean more = true;
+        while (more) {
+            // The body columns may be compressed
+            Cursor cursor = BodyCodec.wrap(db.query(FoodEntry.BODY_TABLE_NAME,
+                    new String[] { FoodEntry.COLUMN_BODY_FOOD_ID, FoodEntry.COLUMN_FOOD_INGREDIENTS },
+                    FoodEntry.COLUMN_BODY_FOOD_ID + " > ?", new String[] { String.valueOf(lastId) },
+                    null, null, FoodEntry.COLUMN_BODY_FOOD_ID, String.valueOf(REBUILD_BATCH_SIZE)));
+            try {
+                more = cursor.getCount() == REBUILD_BATCH_SIZE;
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    insert(db, lastId, cursor.getString(1));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the signature of the given recipe, or null if it has no ingredients.
+     */
+    private static int[] getSignature(SQLiteDatabase db, long foodId) {
+        Cursor cursor = db.query(SIGNATURE_TABLE_NAME, new String[] { COLUMN_SIGNATURE },
+                COLUMN_FOOD_ID + "=?", new String[] { String.valueOf(foodId) },
+                null, null, null);
+        try {
+            return cursor.moveToFirst() ? decode(cursor.getBlob(0)) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns up to limit recipes with the most similar ingredients to the given one, most
+     * similar first. Only the recipes sharing a bucket with it are read.
+     */
+    static List<Neighbour> findSimilar(SQLiteDatabase db, long foodId, int limit) {
+        List<Neighbour> neighbours = new ArrayList<>();
+        int[] signature = getSignature(db, foodId);
+        if (signature == null) {
+            return neighbours;
+        }
+
+        StringBuilder in = new StringBuilder();
+        for (long bucket : buckets(signature)) {
+            if (in.length() > 0) {
+                in.append(',');
+            }
+            in.append(bucket);
+        }
+        // The candidates sharing the most bands first, their signatures joined in by primary key
+        Cursor cursor = db.rawQuery("SELECT c." + COLUMN_FOOD_ID + ", s." + COLUMN_SIGNATURE
+                + " FROM (SELECT " + COLUMN_FOOD_ID + ", COUNT(*) AS bands FROM "
+                + BUCKET_TABLE_NAME + " WHERE " + COLUMN_BUCKET + " IN (" + in + ") AND "
+                + COLUMN_FOOD_ID + " != " + foodId + " GROUP BY " + COLUMN_FOOD_ID
+                + " ORDER BY bands DESC LIMIT " + CANDIDATE_LIMIT + ") c"
+                + " JOIN " + SIGNATURE_TABLE_NAME + " s ON s." + COLUMN_FOOD_ID + " = c."
+                + COLUMN_FOOD_ID, null);
+        try {
+            while (cursor.moveToNext()) {
+                neighbours.add(new Neighbour(cursor.getLong(0),
+                        similarity(signature, decode(cursor.getBlob(1)))));
+            }
+        } finally {
+            cursor.close();
+        }
+        return top(neighbours, limit);
+    }
+
+    /**
+     * Returns up to limit of the neighbours, the most similar first, and the lowest _id first
+     * for the same similarity.
+     */
+    private static List<Neighbour> top(List<Neighbour> neighbours, int limit) {
+        Collections.sort(neighbours, new Comparator<Neighbour>() {
+            @Override
+            public int compare(Neighbour a, Neighbour b) {
+                int compared = Double.compare(b.similarity, a.similarity);
+                if (compared == 0) {
+                    compared = a.foodId < b.foodId ? -1 : (a.foodId == b.foodId ? 0 : 1);
+                }
+                return compared;
+            }
+        });
+        return neighbours.size() > limit ? neighbours.subList(0, limit) : neighbours;
+    }
+}
@@ -0,0 +1,156 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+
+import java.text.Collator;
+import java.util.Locale;
+
+/**
+ * Builds the collation keys of recipe names stored in {@link FoodEntry#COLUMN_FOOD_NAME_KEY}.
+ *
+ * SQLite compares text byte by byte, which puts "Čorba" after "Zeljanica", and a COLLATE
+ * LOCALIZED sort can't be read from an index. So the key of every name is computed here with
+ * a {@link Collator} for the device language and stored as hex digits: comparing two keys as
+ * plain text gives the same result as comparing the names with the collator, and an index on
+ * the key returns the names in the order of the language.
+ *
+ * Serbian names are written in both Latin and Cyrillic. Cyrillic letters are transliterated to
+ * Latin before the key is computed, so the same name sorts in the same place in either script,
+ * and Serbian (and the other languages sharing its Latin alphabet) are collated with the
+ * Croatian rules, which sort č, ć, dž, đ, lj, nj, š and ž as letters of their own.
+ */
+final class NameCollator {
+
+    /** Number of recipes updated per transaction by {@link #updateStoredKeys} */
+    private static final int UPDATE_BATCH_SIZE = 100;
+
+    /** Languages written with the Serbian Latin alphabet */
+    private static final String[] SERBIAN_LATIN_LANGUAGES = { "sr", "hr", "bs", "sh", "cnr" };
+
+    /** Serbian Cyrillic letters, and the Latin letters they are transliterated to */
+    private static final String CYRILLIC = "абвгдђежзијклљмнњопрстћуфхцчџш"
+            + "АБВГДЂЕЖЗИЈКЛЉМНЊОПРСТЋУФХЦЧЏШ";
+    private static final String[] LATIN = {
+            "a", "b", "v", "g", "d", "đ", "e", "ž", "z", "i", "j", "k", "l", "lj", "m", "n", "nj",
+            "o", "p", "r", "s", "t", "ć", "u", "f", "h", "c", "č", "dž", "š",
+            "A", "B", "V", "G", "D", "Đ", "E", "Ž", "Z", "I", "J", "K", "L", "Lj", "M", "N", "Nj",
+            "O", "P", "R", "S", "T", "Ć", "U", "F", "H", "C", "Č", "Dž", "Š"
+    };
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /** Locale whose rules the keys are built with */
+    private final Locale mLocale;
+
+    /** Collator of {@link #mLocale}. Collators aren't thread safe, so access is synchronized. */
+    private final Collator mCollator;
+
+    /**
+     * Creates a collator for the names of recipes shown in the given language.
+     */
+    NameCollator(Locale locale) {
+        mLocale = isSerbianLatin(locale) ? new Locale("hr") : locale;
+        mCollator = Collator.getInstance(mLocale);
+    }
+
+    private static boolean isSerbianLatin(Locale locale) {
+        for (String language : SERBIAN_LATIN_LANGUAGES) {
+            if (language.equals(locale.getLanguage())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the name of the locale the keys are built with. Keys built for the same name are
+     * only comparable with each other.
+     */
+    String getLocaleName() {
+        return mLocale.toString();
+    }
+
+    /**
+     * Returns the key of the given recipe name.
+     */
+    String getKey(String name) {
+        byte[] key;
+        synchronized (mCollator) {
+            key = mCollator.getCollationKey(transliterate(name)).toByteArray();
+        }
+        // Two hex digits per byte, most significant first, keep the unsigned byte order the
+        // keys are compared in
+        char[] hex = new char[2 * key.length];
+        for (int i = 0; i < key.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(key[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[key[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Returns the text with its Serbian Cyrillic letters replaced by Latin ones.
+     */
+    static String transliterate(String name) {
+        StringBuilder latin = null;
+        for (int i = 0; i < name.length(); i++) {
+            int letter = CYRILLIC.indexOf(name.charAt(i));
+            if (letter >= 0 && latin == null) {
+                latin = new StringBuilder(name.length() + 4).append(name, 0, i);
+            }
+            if (latin != null) {
+                if (letter >= 0) {
+                    latin.append(LATIN[letter]);
+                } else {
+                    latin.append(name.charAt(i));
+                }
+            }
+        }
+        return latin != null ? latin.toString() : name;
+    }
+
+    /**
+     * Rebuild the keys of all stored recipe names with the given collator, in batches so
+     * writers aren't blocked for the whole pass. Returns the number of recipes updated.
+     */
+    static int updateStoredKeys(SQLiteDatabase db, NameCollator collator) {
+        SQLiteStatement update = db.compileStatement("UPDATE " + FoodEntry.TABLE_NAME + " SET "
+                + FoodEntry.COLUMN_FOOD_NAME_KEY + " = ? WHERE " + FoodEntry._ID + " = ?");
+        try {
+            int count = 0;
+            long lastId = 0;
+            boolean more = true;
+            while (more) {
+                db.beginTransaction();
+                try {
+                    Cursor cursor = db.query(FoodEntry.TABLE_NAME,
+                            new String[] { FoodEntry._ID, FoodEntry.COLUMN_FOOD_NAME },
+                            FoodEntry._ID + " > ?", new String[] { String.valueOf(lastId) },
+                            null, null, FoodEntry._ID, String.valueOf(UPDATE_BATCH_SIZE));
+                    try {
+                        more = cursor.getCount() == UPDATE_BATCH_SIZE;
+                        while (cursor.moveToNext()) {
+                            lastId = cursor.getLong(0);
+                            update.bindString(1, collator.getKey(cursor.getString(1)));
+                            update.bindLong(2, lastId);
+                            update.executeUpdateDelete();
+                            count++;
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            return count;
+        } finally {
+            update.close();
+        }
+    }
+}
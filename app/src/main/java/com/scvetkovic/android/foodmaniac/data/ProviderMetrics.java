@@ -0,0 +1,261 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.StatsEntry;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts the calls of {@link FoodProvider} and how long they take, per operation and per URI,
+ * and the change notifications it sends.
+ *
+ * Every (operation, URI) pair has its own counters in an {@link AtomicLongArray}, so recording
+ * a call takes a few atomic additions and never a lock: callers on different threads don't
+ * wait for each other. The counters of a pair are only allocated once it is first called.
+ *
+ * The latencies are kept in a histogram with four buckets per power of two microseconds, so a
+ * percentile read from it is at most 25% over the real one. Reading the counters while calls
+ * are recorded may see a call in some counters and not yet in others, which is fine for stats.
+ */
+final class ProviderMetrics {
+
+    /** Operations of the provider */
+    static final int OP_QUERY = 0;
+    static final int OP_INSERT = 1;
+    static final int OP_UPDATE = 2;
+    static final int OP_DELETE = 3;
+    static final int OP_BATCH = 4;
+    private static final String[] OP_NAMES = { "query", "insert", "update", "delete", "batch" };
+
+    /** Kinds of change notification */
+    static final int NOTIFY_RECIPE = 0;
+    static final int NOTIFY_TERMS = 1;
+    static final int NOTIFY_BULK = 2;
+    private static final String[] NOTIFY_NAMES = { "recipe", "terms", "bulk" };
+
+    /** Name of the operation of the notification rows in the stats */
+    private static final String NOTIFY_OPERATION = "notify";
+
+    /** Number of histogram buckets per power of two */
+    private static final int SUB_BUCKETS = 4;
+
+    /** Latencies from 2^MAX_EXPONENT microseconds on (about 4 s) all fall in the last bucket */
+    private static final int MAX_EXPONENT = 22;
+
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - 2) * SUB_BUCKETS;
+
+    /** Positions of the counters of an (operation, URI) pair, followed by the buckets */
+    private static final int CALLS = 0;
+    private static final int ERRORS = 1;
+    private static final int ROWS = 2;
+    private static final int TOTAL_MICROS = 3;
+    private static final int MAX_MICROS = 4;
+    private static final int FIRST_BUCKET = 5;
+
+    /** Columns of the rows of {@link #getStats}, in their order */
+    static final String[] COLUMNS = {
+            StatsEntry._ID,
+            StatsEntry.COLUMN_OPERATION,
+            StatsEntry.COLUMN_URI,
+            StatsEntry.COLUMN_CALLS,
+            StatsEntry.COLUMN_ERRORS,
+            StatsEntry.COLUMN_ROWS,
+            StatsEntry.COLUMN_TOTAL_MICROS,
+            StatsEntry.COLUMN_MAX_MICROS,
+            StatsEntry.COLUMN_P50_MICROS,
+            StatsEntry.COLUMN_P90_MICROS,
+            StatsEntry.COLUMN_P99_MICROS
+    };
+
+    /** Percentiles reported by {@link #dump} and {@link #getStats} */
+    private static final double[] PERCENTILES = { 0.5, 0.9, 0.99 };
+
+    /** Names of the URIs, by slot; the calls on other URIs are counted under the last one */
+    private final String[] mUriNames;
+
+    private final AtomicReferenceArray<AtomicLongArray> mCounters;
+
+    private final AtomicLongArray mNotifications = new AtomicLongArray(NOTIFY_NAMES.length);
+
+    /** Time the counters were last reset, from {@link System#currentTimeMillis} */
+    private volatile long mSinceMillis = System.currentTimeMillis();
+
+    /**
+     * @param uriNames the names of the URIs of the provider, by the slot they are recorded
+     *                 under. One more slot named "other" is added for anything else.
+     */
+    ProviderMetrics(String[] uriNames) {
+        mUriNames = new String[uriNames.length + 1];
+        System.arraycopy(uriNames, 0, mUriNames, 0, uriNames.length);
+        mUriNames[uriNames.length] = "other";
+        mCounters = new AtomicReferenceArray<>(OP_NAMES.length * mUriNames.length);
+    }
+
+    /**
+     * Record a call that took from startNanos (from {@link System#nanoTime}) until now.
+     *
+     * @param slot the slot of its URI, or any other value for a URI without one
+     * @param rows the number of rows it returned or changed
+     */
+    void record(int operation, int slot, long startNanos, int rows, boolean failed) {
+        long micros = (System.nanoTime() - startNanos) / 1000;
+        AtomicLongArray counters = getCounters(operation, slot);
+        counters.incrementAndGet(CALLS);
+        if (failed) {
+            counters.incrementAndGet(ERRORS);
+        }
+        counters.addAndGet(ROWS, rows);
+        counters.addAndGet(TOTAL_MICROS, micros);
+        long max = counters.get(MAX_MICROS);
+        while (micros > max && !counters.compareAndSet(MAX_MICROS, max, micros)) {
+            max = counters.get(MAX_MICROS);
+        }
+        counters.incrementAndGet(FIRST_BUCKET + bucket(micros));
+    }
+
+    /**
+     * Count a change notification of the given kind.
+     */
+    void recordNotification(int kind) {
+        mNotifications.incrementAndGet(kind);
+    }
+
+    private AtomicLongArray getCounters(int operation, int slot) {
+        if (slot < 0 || slot >= mUriNames.length) {
+            slot = mUriNames.length - 1;
+        }
+        int index = operation * mUriNames.length + slot;
+        AtomicLongArray counters = mCounters.get(index);
+        if (counters == null) {
+            mCounters.compareAndSet(index, null, new AtomicLongArray(FIRST_BUCKET + BUCKETS));
+            counters = mCounters.get(index);
+        }
+        return counters;
+    }
+
+    /**
+     * Set all counters back to zero, for instance between two load tests. Calls in progress
+     * are recorded in the new counters.
+     */
+    void reset() {
+        for (int i = 0; i < mCounters.length(); i++) {
+            mCounters.set(i, null);
+        }
+        for (int i = 0; i < mNotifications.length(); i++) {
+            mNotifications.set(i, 0);
+        }
+        mSinceMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the histogram bucket of a latency: the small values have a bucket each, the
+     * others are split by their highest bit and the {@link #SUB_BUCKETS} bits after it.
+     */
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(micros, 0);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >> (exponent - 2)) - SUB_BUCKETS;
+        return SUB_BUCKETS + (exponent - 2) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the highest latency falling in the given bucket, in microseconds.
+     */
+    static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + 2;
+        long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << (exponent - 2)) - 1;
+    }
+
+    /**
+     * Returns the latency under which the given fraction of the calls fell, in microseconds.
+     * The answer is the upper bound of its bucket, but never more than the slowest call.
+     */
+    private static long percentile(AtomicLongArray counters, long calls, double fraction) {
+        long rank = (long) Math.ceil(calls * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counters.get(FIRST_BUCKET + i);
+            if (seen >= rank && seen > 0) {
+                return Math.min(bucketUpperBound(i), counters.get(MAX_MICROS));
+            }
+        }
+        return counters.get(MAX_MICROS);
+    }
+
+    /**
+     * Returns a row for every (operation, URI) pair that was called, and one for every kind of
+     * notification that was sent, with the values of the {@link #COLUMNS}.
+     */
+    List<Object[]> getStats() {
+        List<Object[]> rows = new ArrayList<>();
+        for (int op = 0; op < OP_NAMES.length; op++) {
+            for (int slot = 0; slot < mUriNames.length; slot++) {
+                AtomicLongArray counters = mCounters.get(op * mUriNames.length + slot);
+                long calls = counters != null ? counters.get(CALLS) : 0;
+                if (calls == 0) {
+                    continue;
+                }
+                rows.add(new Object[] { (long) rows.size(), OP_NAMES[op], mUriNames[slot], calls,
+                        counters.get(ERRORS), counters.get(ROWS), counters.get(TOTAL_MICROS),
+                        counters.get(MAX_MICROS),
+                        percentile(counters, calls, PERCENTILES[0]),
+                        percentile(counters, calls, PERCENTILES[1]),
+                        percentile(counters, calls, PERCENTILES[2]) });
+            }
+        }
+        for (int kind = 0; kind < NOTIFY_NAMES.length; kind++) {
+            long count = mNotifications.get(kind);
+            if (count == 0) {
+                continue;
+            }
+            rows.add(new Object[] { (long) rows.size(), NOTIFY_OPERATION, NOTIFY_NAMES[kind],
+                    count, 0L, 0L, null, null, null, null, null });
+        }
+        return rows;
+    }
+
+    /**
+     * Print the counters as a table, for dumpsys.
+     */
+    void dump(PrintWriter writer) {
+        writer.println("Provider metrics since "
+                + (System.currentTimeMillis() - mSinceMillis) / 1000 + " s ago"
+                + " (latencies in microseconds):");
+        writer.println(String.format(Locale.ROOT, "  %-7s %-12s %8s %6s %9s %8s %8s %8s %8s %9s",
+                "op", "uri", "calls", "errors", "rows", "avg", "p50", "p90", "p99", "max"));
+        for (int op = 0; op < OP_NAMES.length; op++) {
+            for (int slot = 0; slot < mUriNames.length; slot++) {
+                AtomicLongArray counters = mCounters.get(op * mUriNames.length + slot);
+                long calls = counters != null ? counters.get(CALLS) : 0;
+                if (calls == 0) {
+                    continue;
+                }
+                writer.println(String.format(Locale.ROOT, "  %-7s %-12s %8d %6d %9d %8d %8d %8d %8d %9d",
+                        OP_NAMES[op], mUriNames[slot], calls, counters.get(ERRORS),
+                        counters.get(ROWS), counters.get(TOTAL_MICROS) / calls,
+                        percentile(counters, calls, PERCENTILES[0]),
+                        percentile(counters, calls, PERCENTILES[1]),
+                        percentile(counters, calls, PERCENTILES[2]),
+                        counters.get(MAX_MICROS)));
+            }
+        }
+        writer.print("  Notifications:");
+        for (int kind = 0; kind < NOTIFY_NAMES.length; kind++) {
+            writer.print(" " + NOTIFY_NAMES[kind] + "=" + mNotifications.get(kind));
+        }
+        writer.println();
+    }
+}
@@ -0,0 +1,105 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.util.LruCache;
+
+/**
+ * In-process cache of whole recipe rows keyed by _id, used by {@link FoodProvider} to answer
+ * single recipe queries without going to the database. It keeps the most recently used rows up
+ * to {@link #MAX_SIZE_BYTES}, estimated from the length of their texts.
+ *
+ * Rows read from the database can race with a write: the row is read from the last committed
+ * snapshot, and the write may commit and invalidate the recipe before the row is put in the
+ * cache. Every invalidation bumps a generation, so a row read before the latest invalidation is
+ * dropped instead of cached. Writers must invalidate after their transaction has committed.
+ */
+final class RecipeCache {
+
+    /** Maximum estimated size of the cached rows */
+    private static final int MAX_SIZE_BYTES = 512 * 1024;
+
+    /** Estimated overhead of a row and of each value in it, in bytes */
+    private static final int ROW_OVERHEAD_BYTES = 64;
+    private static final int VALUE_OVERHEAD_BYTES = 24;
+
+    private final LruCache<Long, Object[]> mRows = new LruCache<Long, Object[]>(MAX_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(Long id, Object[] row) {
+            int size = ROW_OVERHEAD_BYTES;
+            for (Object value : row) {
+                size += VALUE_OVERHEAD_BYTES;
+                if (value instanceof String) {
+                    size += 2 * ((String) value).length();
+                }
+            }
+            return size;
+        }
+    };
+
+    /** Incremented by every invalidation */
+    private long mGeneration;
+
+    /**
+     * Returns the cached row of the given recipe, or null if it isn't cached.
+     */
+    Object[] get(long id) {
+        return mRows.get(id);
+    }
+
+    /**
+     * Returns the current generation, to be read before the row is queried and passed to
+     * {@link #put}.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Cache the row of a recipe, unless any recipe was invalidated since the given generation.
+     */
+    synchronized void put(long id, Object[] row, long generation) {
+        if (generation == mGeneration) {
+            mRows.put(id, row);
+        }
+    }
+
+    /**
+     * Drop the given recipes from the cache.
+     */
+    synchronized void invalidate(long[] ids) {
+        mGeneration++;
+        for (long id : ids) {
+            mRows.remove(id);
+        }
+    }
+
+    /**
+     * Drop all recipes from the cache.
+     */
+    synchronized void invalidateAll() {
+        mGeneration++;
+        // Removed one by one rather than with evictAll(), which would count them as evictions
+        for (Long id : mRows.snapshot().keySet()) {
+            mRows.remove(id);
+        }
+    }
+
+    int hitCount() {
+        return mRows.hitCount();
+    }
+
+    int missCount() {
+        return mRows.missCount();
+    }
+
+    int evictionCount() {
+        return mRows.evictionCount();
+    }
+
+    int size() {
+        return mRows.size();
+    }
+
+    int maxSize() {
+        return mRows.maxSize();
+    }
+}
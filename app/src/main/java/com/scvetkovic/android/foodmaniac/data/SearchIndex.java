@@ -0,0 +1,343 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Maintains the full-text search table ({@link FoodDbHelper#SEARCH_TABLE_NAME}) for the
+ * recipes. The table holds the searchable columns folded: lowercased, with the diacritics
+ * removed and Serbian Cyrillic transliterated to Latin, so "cevapi" finds "Ćevapi" and
+ * "Ћевапи" through the FTS index. The search terms are folded the same way.
+ *
+ * Since the table only holds the folded text, the snippets of the search results are built by
+ * {@link #buildSnippet} from the original text of the recipe. Callers are expected to run the
+ * writes inside a transaction.
+ */
+final class SearchIndex {
+
+    /** Columns of the search table, in the order they are declared */
+    static final String[] COLUMNS = {
+            FoodEntry.COLUMN_FOOD_NAME,
+            FoodEntry.COLUMN_FOOD_HASHTAGS,
+            FoodEntry.COLUMN_FOOD_INGREDIENTS,
+            FoodEntry.COLUMN_FOOD_INSTRUCIONS
+    };
+
+    /** Number of words in a snippet */
+    private static final int SNIPPET_WORDS = 12;
+
+    /** Number of words shown in front of the first match of a snippet, when there are any */
+    private static final int SNIPPET_LEAD_WORDS = 2;
+
+    private static final String ELLIPSIS = "…";
+
+    /** Number of recipes read per query by {@link #rebuild} */
+    private static final int REBUILD_BATCH_SIZE = 100;
+
+    private SearchIndex() {}
+
+    /**
+     * Returns the text folded the way it is stored in the search table.
+     */
+    static String fold(String text) {
+        return text != null ? fold(text, null) : null;
+    }
+
+    /**
+     * Fold the text, and if sourceIndex isn't null, add the index in the text of the char every
+     * folded char comes from to it, followed by the length of the text.
+     */
+    private static String fold(String text, List<Integer> sourceIndex) {
+        StringBuilder folded = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int start = folded.length();
+            if (c < 0x80) {
+                folded.append(Character.toLowerCase(c));
+            } else {
+                appendFolded(folded, NameCollator.transliterate(String.valueOf(c)));
+            }
+            if (sourceIndex != null) {
+                for (int j = start; j < folded.length(); j++) {
+                    sourceIndex.add(i);
+                }
+            }
+        }
+        if (sourceIndex != null) {
+            sourceIndex.add(text.length());
+        }
+        return folded.toString();
+    }
+
+    /**
+     * Append the Latin letters with their diacritics removed and lowercased.
+     */
+    private static void appendFolded(StringBuilder folded, String latin) {
+        for (int i = 0; i < latin.length(); i++) {
+            char c = latin.charAt(i);
+            if (c == 'đ' || c == 'Đ') {
+                // Đ has no decomposition, and is written as "dj" without diacritics
+                folded.append("dj");
+                continue;
+            }
+            String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            for (int j = 0; j < decomposed.length(); j++) {
+                char d = decomposed.charAt(j);
+                if (Character.getType(d) != Character.NON_SPACING_MARK) {
+                    folded.append(Character.toLowerCase(d));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the given values of the search table columns, folded. Other values are left out.
+     */
+    private static ContentValues foldValues(ContentValues values) {
+        ContentValues folded = new ContentValues();
+        for (String column : COLUMNS) {
+            if (values.containsKey(column)) {
+                folded.put(column, fold(values.getAsString(column)));
+            }
+        }
+        return folded;
+    }
+
+    /**
+     * Add the search row of a new recipe, from the plain text values it was inserted with.
+     */
+    static void insert(SQLiteDatabase db, long foodId, ContentValues values) {
+        ContentValues row = foldValues(values);
+        row.put("docid", foodId);
+        db.insertOrThrow(FoodDbHelper.SEARCH_TABLE_NAME, null, row);
+    }
+
+    /**
+     * Update the search rows of the given recipes with the plain text values they were updated
+     * with. Does nothing if none of the values is searchable.
+     */
+    static void update(SQLiteDatabase db, long[] foodIds, ContentValues values) {
+        ContentValues folded = foldValues(values);
+        if (folded.size() == 0 || foodIds.length == 0) {
+            return;
+        }
+        StringBuilder selection = new StringBuilder("docid IN (");
+        for (int i = 0; i < foodIds.length; i++) {
+            if (i > 0) {
+                selection.append(',');
+            }
+            selection.append(foodIds[i]);
+        }
+        db.update(FoodDbHelper.SEARCH_TABLE_NAME, folded, selection.append(')').toString(), null);
+    }
+
+    /**
+     * Replace the whole search table with the folded text of every recipe.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        db.delete(FoodDbHelper.SEARCH_TABLE_NAME, null, null);
+        String sql = "SELECT f." + FoodEntry._ID + ", f." + FoodEntry.COLUMN_FOOD_NAME + ", f."
+                + FoodEntry.COLUMN_FOOD_HASHTAGS + ", b." + FoodEntry.COLUMN_FOOD_INGREDIENTS
+                + ", b." + FoodEntry.COLUMN_FOOD_INSTRUCIONS
+                + " FROM " + FoodEntry.TABLE_NAME + " f LEFT JOIN " + FoodEntry.BODY_TABLE_NAME
+                + " b ON b." + FoodEntry.COLUMN_BODY_FOOD_ID + " = f." + FoodEntry._ID
+                + " WHERE f." + FoodEntry._ID + " > ? ORDER BY f." + FoodEntry._ID
+                + " LIMIT " + REBUILD_BATCH_SIZE;
+        long lastId = 0;
+        boolean more = true;
+        while (more) {
+            // The body columns may be compressed
+            Cursor cursor = BodyCodec.wrap(db.rawQuery(sql, new String[] { String.valueOf(lastId) }));
+            try {
+                more = cursor.getCount() == REBUILD_BATCH_SIZE;
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    ContentValues values = new ContentValues();
+                    for (int i = 0; i < COLUMNS.length; i++) {
+                        values.put(COLUMNS[i], cursor.getString(i + 1));
+                    }
+                    insert(db, lastId, values);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the search table column to show the snippet of a match from: the one matching the
+     * most distinct terms, the first such column in case of a tie.
+     *
+     * @param offsets the result of the FTS offsets() function for the match
+     */
+    static int getSnippetColumn(String offsets) {
+        int[] values = parseOffsets(offsets);
+        long[] termsPerColumn = new long[COLUMNS.length];
+        for (int i = 0; i + 3 < values.length; i += 4) {
+            int column = values[i];
+            int term = values[i + 1];
+            if (column < COLUMNS.length && term < 64) {
+                termsPerColumn[column] |= 1L << term;
+            }
+        }
+        int best = 0;
+        for (int column = 1; column < COLUMNS.length; column++) {
+            if (Long.bitCount(termsPerColumn[column]) > Long.bitCount(termsPerColumn[best])) {
+                best = column;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Build the snippet of a match from the original text of a column: a window of words
+     * around the first match, with the matched words wrapped in
+     * {@link FoodEntry#SNIPPET_MATCH_START} and {@link FoodEntry#SNIPPET_MATCH_END}, like the
+     * FTS snippet() function would on the plain text.
+     *
+     * @param text    the original text of the column
+     * @param column  index of the column in {@link #COLUMNS}
+     * @param offsets the result of the FTS offsets() function for the match, whose byte
+     *                offsets point into the folded text
+     */
+    static String buildSnippet(String text, int column, String offsets) {
+        if (text == null) {
+            return "";
+        }
+        List<Integer> sourceIndex = new ArrayList<>(text.length() + 1);
+        String folded = fold(text, sourceIndex);
+
+        // The matches in the column, as char ranges of the original text
+        int[] values = parseOffsets(offsets);
+        List<int[]> matches = new ArrayList<>();
+        for (int i = 0; i + 3 < values.length; i += 4) {
+            if (values[i] == column) {
+                int start = charIndex(folded, values[i + 2]);
+                int end = charIndex(folded, values[i + 2] + values[i + 3]);
+                matches.add(new int[] { sourceIndex.get(start), sourceIndex.get(end) });
+            }
+        }
+        Collections.sort(matches, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] a, int[] b) {
+                return a[0] - b[0];
+            }
+        });
+
+        // Start of every word of the original text
+        List<Integer> words = new ArrayList<>();
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetterOrDigit(text.charAt(i))
+                    && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))) {
+                words.add(i);
+            }
+        }
+        if (words.isEmpty()) {
+            return text;
+        }
+
+        int firstWord = 0;
+        if (!matches.isEmpty()) {
+            int firstMatch = matches.get(0)[0];
+            while (firstWord + 1 < words.size() && words.get(firstWord + 1) <= firstMatch) {
+                firstWord++;
+            }
+            firstWord = Math.max(0, Math.min(firstWord - SNIPPET_LEAD_WORDS,
+                    words.size() - SNIPPET_WORDS));
+        }
+        int start = firstWord == 0 ? 0 : words.get(firstWord);
+        int lastWord = firstWord + SNIPPET_WORDS;
+        int end = lastWord < words.size() ? words.get(lastWord) : text.length();
+        // Don't end the snippet on the separators in front of the next word
+        while (end > start && lastWord < words.size()
+                && !Character.isLetterOrDigit(text.charAt(end - 1))) {
+            end--;
+        }
+
+        StringBuilder snippet = new StringBuilder();
+        if (start > 0) {
+            snippet.append(ELLIPSIS);
+        }
+        int position = start;
+        for (int[] match : matches) {
+            if (match[0] < position || match[1] > end) {
+                continue;
+            }
+            snippet.append(text, position, match[0])
+                    .append(FoodEntry.SNIPPET_MATCH_START)
+                    .append(text, match[0], match[1])
+                    .append(FoodEntry.SNIPPET_MATCH_END);
+            position = match[1];
+        }
+        snippet.append(text, position, end);
+        if (end < text.length()) {
+            snippet.append(ELLIPSIS);
+        }
+        return snippet.toString();
+    }
+
+    /**
+     * Parse the space separated numbers returned by the FTS offsets() function.
+     */
+    private static int[] parseOffsets(String offsets) {
+        if (offsets == null || offsets.isEmpty()) {
+            return new int[0];
+        }
+        String[] parts = offsets.split(" ");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the index of the char at the given byte offset of the UTF-8 encoding of the text.
+     */
+    private static int charIndex(String text, int byteOffset) {
+        int bytes = 0;
+        int i = 0;
+        while (i < text.length() && bytes < byteOffset) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the terms of the text typed by the user, folded like the search table.
+     */
+    static List<String> foldTerms(String text) {
+        List<String> terms = new ArrayList<>();
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                term.append(c);
+            } else if (term.length() > 0) {
+                terms.add(fold(term.toString()));
+                term.setLength(0);
+            }
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,160 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Keeps the last recipe queries of {@link FoodProvider} that took longer than a threshold,
+ * with their query plan, so full table scans caused by the selections and sort orders callers
+ * pass in can be found on a device without attaching a profiler.
+ *
+ * The plan is read with EXPLAIN QUERY PLAN right after the slow query, on the same thread. The
+ * selection arguments themselves are not kept, only their number.
+ */
+final class SlowQueryLog {
+
+    /** Tag for the log messages */
+    private static final String LOG_TAG = SlowQueryLog.class.getSimpleName();
+
+    /**
+     * A query that took longer than the threshold.
+     */
+    static class Entry {
+        final long timeMillis;
+        final String sql;
+        final int argCount;
+        final int rows;
+        final long micros;
+        final String plan;
+
+        Entry(long timeMillis, String sql, int argCount, int rows, long micros, String plan) {
+            this.timeMillis = timeMillis;
+            this.sql = sql;
+            this.argCount = argCount;
+            this.rows = rows;
+            this.micros = micros;
+            this.plan = plan;
+        }
+    }
+
+    /** Queries taking this long or longer are logged, in microseconds; 0 turns the log off */
+    private volatile long mThresholdMicros;
+
+    /** Ring buffer of the slow queries; mNext is where the next one goes. Guarded by this. */
+    private final Entry[] mEntries;
+    private int mNext;
+    private int mCount;
+
+    SlowQueryLog(int capacity, long thresholdMillis) {
+        mEntries = new Entry[capacity];
+        setThresholdMillis(thresholdMillis);
+    }
+
+    /**
+     * Change the threshold queries are logged from, 0 to stop logging them.
+     */
+    void setThresholdMillis(long thresholdMillis) {
+        mThresholdMicros = Math.max(thresholdMillis, 0) * 1000;
+    }
+
+    long getThresholdMillis() {
+        return mThresholdMicros / 1000;
+    }
+
+    /**
+     * Returns whether queries are logged at all, so callers can skip timing them when not.
+     */
+    boolean isEnabled() {
+        return mThresholdMicros > 0;
+    }
+
+    /**
+     * Returns whether a query that took the given time must be recorded.
+     */
+    boolean isSlow(long micros) {
+        long threshold = mThresholdMicros;
+        return threshold > 0 && micros >= threshold;
+    }
+
+    /**
+     * Record a slow query, reading its plan from the database it ran on.
+     */
+    void record(SQLiteDatabase db, String sql, String[] args, int rows, long micros) {
+        String plan;
+        try {
+            plan = explain(db, sql, args);
+        } catch (RuntimeException e) {
+            // The query ran, so this shouldn't happen; keep the rest of the entry anyway
+            plan = "(no plan: " + e.getMessage() + ")";
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), sql, args != null ? args.length : 0,
+                rows, micros, plan);
+        Log.w(LOG_TAG, "Slow query: " + describe(entry));
+        synchronized (this) {
+            mEntries[mNext] = entry;
+            mNext = (mNext + 1) % mEntries.length;
+            mCount = Math.min(mCount + 1, mEntries.length);
+        }
+    }
+
+    /**
+     * Returns the query plan of the given query, one step per line.
+     */
+    static String explain(SQLiteDatabase db, String sql, String[] args) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            StringBuilder plan = new StringBuilder();
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                if (plan.length() > 0) {
+                    plan.append('\n');
+                }
+                plan.append(cursor.getString(detail));
+            }
+            return plan.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Drop all the recorded queries.
+     */
+    synchronized void clear() {
+        for (int i = 0; i < mEntries.length; i++) {
+            mEntries[i] = null;
+        }
+        mNext = 0;
+        mCount = 0;
+    }
+
+    /**
+     * Print the recorded queries, the oldest first, for dumpsys.
+     */
+    void dump(PrintWriter writer) {
+        Entry[] entries;
+        synchronized (this) {
+            entries = new Entry[mCount];
+            for (int i = 0; i < mCount; i++) {
+                entries[i] = mEntries[(mNext - mCount + i + mEntries.length) % mEntries.length];
+            }
+        }
+        writer.println("Slow queries (over " + getThresholdMillis() + " ms, last "
+                + mEntries.length + "): " + entries.length);
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.ROOT);
+        for (Entry entry : entries) {
+            writer.println("  " + format.format(new Date(entry.timeMillis)) + " " + describe(entry));
+        }
+    }
+
+    private static String describe(Entry entry) {
+        return entry.micros / 1000 + " ms, " + entry.rows + " rows, " + entry.argCount + " args: "
+                + entry.sql + "\n    plan: " + entry.plan.replace("\n", "\n          ");
+    }
+}
@@ -0,0 +1,148 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.TagEntry;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Maintains the normalized hashtag tables ({@link TagEntry#TABLE_NAME} and
+ * {@link TagEntry#LINK_TABLE_NAME}) for the recipes, and builds the queries that filter recipes
+ * by their tags. Callers are expected to run the writes inside a transaction.
+ */
+final class TagIndex {
+
+    private TagIndex() {}
+
+    /**
+     * Split the free-text hashtags of a recipe into distinct tags. Anything that isn't a letter,
+     * digit or underscore separates two tags, so "#Cake #cakePop, vegan" gives
+     * "cake", "cakepop" and "vegan".
+     */
+    static Set<String> parse(String hashtags) {
+        Set<String> tags = new LinkedHashSet<>();
+        if (TextUtils.isEmpty(hashtags)) {
+            return tags;
+        }
+        StringBuilder tag = new StringBuilder();
+        for (int i = 0; i <= hashtags.length(); i++) {
+            char c = i < hashtags.length() ? hashtags.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                tag.append(c);
+            } else if (tag.length() > 0) {
+                tags.add(tag.toString().toLowerCase(Locale.ROOT));
+                tag.setLength(0);
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Replace the tags linked to the given recipe with the ones found in its hashtags. Returns
+     * the tags that were added to or removed from the recipe, whose usage counts changed.
+     */
+    static Set<String> update(SQLiteDatabase db, long foodId, String hashtags) {
+        Set<String> oldTags = getTags(db, foodId);
+        Set<String> newTags = parse(hashtags);
+        remove(db, foodId);
+        for (String tag : newTags) {
+            ContentValues link = new ContentValues();
+            link.put(TagEntry.COLUMN_TAG_ID, getOrCreateTagId(db, tag));
+            link.put(TagEntry.COLUMN_FOOD_ID, foodId);
+            db.insertWithOnConflict(TagEntry.LINK_TABLE_NAME, null, link,
+                    SQLiteDatabase.CONFLICT_IGNORE);
+        }
+        return symmetricDifference(oldTags, newTags);
+    }
+
+    /**
+     * Returns the tags currently linked to the given recipe.
+     */
+    private static Set<String> getTags(SQLiteDatabase db, long foodId) {
+        Set<String> tags = new HashSet<>();
+        Cursor cursor = db.rawQuery("SELECT t." + TagEntry.COLUMN_TAG_NAME + " FROM "
+                + TagEntry.LINK_TABLE_NAME + " l JOIN " + TagEntry.TABLE_NAME + " t ON t."
+                + TagEntry._ID + " = l." + TagEntry.COLUMN_TAG_ID + " WHERE l."
+                + TagEntry.COLUMN_FOOD_ID + " = ?", new String[] { String.valueOf(foodId) });
+        try {
+            while (cursor.moveToNext()) {
+                tags.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return tags;
+    }
+
+    /**
+     * Returns the terms found in only one of the two sets.
+     */
+    static Set<String> symmetricDifference(Set<String> a, Set<String> b) {
+        Set<String> difference = new HashSet<>(a);
+        for (String term : b) {
+            if (!difference.remove(term)) {
+                difference.add(term);
+            }
+        }
+        return difference;
+    }
+
+    /**
+     * Unlink all tags from the given recipe.
+     */
+    static void remove(SQLiteDatabase db, long foodId) {
+        db.delete(TagEntry.LINK_TABLE_NAME, TagEntry.COLUMN_FOOD_ID + "=?",
+                new String[] { String.valueOf(foodId) });
+    }
+
+    private static long getOrCreateTagId(SQLiteDatabase db, String tag) {
+        Cursor cursor = db.query(TagEntry.TABLE_NAME, new String[] { TagEntry._ID },
+                TagEntry.COLUMN_TAG_NAME + "=?", new String[] { tag }, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        ContentValues values = new ContentValues();
+        values.put(TagEntry.COLUMN_TAG_NAME, tag);
+        return db.insertOrThrow(TagEntry.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Build a sub-query returning the ids of the recipes that have all (or any) of the given
+     * tags. Each tag is a lookup on the (tag_id, food_id) primary key, and the per-tag id lists
+     * are combined with INTERSECT or UNION, so no recipe row is read to evaluate the filter.
+     * The tags are inlined as escaped literals, since a filter has only a handful of them.
+     *
+     * Returns null if there are no tags to filter on.
+     */
+    static String buildFoodIdQuery(Set<String> tags, boolean matchAll) {
+        if (tags.isEmpty()) {
+            return null;
+        }
+        StringBuilder query = new StringBuilder();
+        for (String tag : tags) {
+            if (query.length() > 0) {
+                query.append(matchAll ? " INTERSECT " : " UNION ");
+            }
+            query.append("SELECT ").append(TagEntry.COLUMN_FOOD_ID)
+                    .append(" FROM ").append(TagEntry.LINK_TABLE_NAME)
+                    .append(" WHERE ").append(TagEntry.COLUMN_TAG_ID).append(" = (SELECT ")
+                    .append(TagEntry._ID).append(" FROM ").append(TagEntry.TABLE_NAME)
+                    .append(" WHERE ").append(TagEntry.COLUMN_TAG_NAME).append(" = ");
+            DatabaseUtils.appendEscapedSQLString(query, tag);
+            query.append(")");
+        }
+        return query.toString();
+    }
+}
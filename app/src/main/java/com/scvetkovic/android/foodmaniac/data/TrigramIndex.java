@@ -0,0 +1,254 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maintains the trigram index of the recipe names ({@link #TABLE_NAME}), which finds names
+ * that are spelled differently from the search terms, like "Palačinke" for "palachinke".
+ *
+ * The names are folded like the search table (see {@link SearchIndex#fold}) and every word is
+ * split into the overlapping three letter sequences it is made of, padded with two spaces in
+ * front and one after, so "pita" gives "  p", " pi", "pit", "ita" and "ta ". Each trigram is
+ * stored packed in an INTEGER next to the recipe _id, and the (trigram, food_id) primary key
+ * holds the list of recipes of every trigram. A typing mistake breaks at most
+ * {@link #TRIGRAMS_PER_MISTAKE} trigrams, so a name within k mistakes of the search terms shares
+ * all but at most 4k of their trigrams. The candidates are the recipes sharing enough of them,
+ * which are then ranked by their actual edit distance.
+ *
+ * Callers are expected to run the writes inside a transaction.
+ */
+final class TrigramIndex {
+
+    /** Name of the table linking the trigrams of the names to the recipes */
+    static final String TABLE_NAME = "food_trigram";
+
+    /** Packed trigram in {@link #TABLE_NAME} */
+    static final String COLUMN_TRIGRAM = "trigram";
+
+    /** Recipe ID in {@link #TABLE_NAME} */
+    static final String COLUMN_FOOD_ID = "food_id";
+
+    /**
+     * Number of trigrams of the search terms a single typing mistake can break: three for a
+     * wrong letter, four for two swapped letters
+     */
+    static final int TRIGRAMS_PER_MISTAKE = 4;
+
+    /** Number of recipes read per query by {@link #rebuild} */
+    private static final int REBUILD_BATCH_SIZE = 100;
+
+    private TrigramIndex() {}
+
+    /**
+     * Creates the trigram table. The primary key serves the lookups of the search, the extra
+     * index on food_id serves the updates of a single recipe.
+     */
+    static void createTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_NAME + " ("
+                + COLUMN_TRIGRAM + " INTEGER NOT NULL, "
+                + COLUMN_FOOD_ID + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + COLUMN_TRIGRAM + ", " + COLUMN_FOOD_ID + "));");
+        db.execSQL("CREATE INDEX " + TABLE_NAME + "_" + COLUMN_FOOD_ID + " ON " + TABLE_NAME
+                + " (" + COLUMN_FOOD_ID + ");");
+    }
+
+    /**
+     * Returns the words of the text, folded like the search table.
+     */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        String folded = SearchIndex.fold(text);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean letter = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Returns the distinct packed trigrams of the given words. When padLast is false, the last
+     * word gets no trailing padding, since it may still be being typed.
+     */
+    static Set<Long> trigrams(List<String> words, boolean padLast) {
+        Set<Long> trigrams = new LinkedHashSet<>();
+        for (int w = 0; w < words.size(); w++) {
+            String padded = "  " + words.get(w) + (padLast || w < words.size() - 1 ? " " : "");
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams.add(pack(padded.charAt(i), padded.charAt(i + 1), padded.charAt(i + 2)));
+            }
+        }
+        return trigrams;
+    }
+
+    private static long pack(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    /**
+     * Replace the trigrams of the given recipe with the ones of its name.
+     */
+    static void update(SQLiteDatabase db, long foodId, String name) {
+        remove(db, foodId);
+        insert(db, foodId, name);
+    }
+
+    private static void insert(SQLiteDatabase db, long foodId, String name) {
+        SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_NAME
+                + " (" + COLUMN_TRIGRAM + ", " + COLUMN_FOOD_ID + ") VALUES (?, ?)");
+        try {
+            for (long trigram : trigrams(words(name), true)) {
+                insert.bindLong(1, trigram);
+                insert.bindLong(2, foodId);
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    /**
+     * Remove the trigrams of the given recipe.
+     */
+    static void remove(SQLiteDatabase db, long foodId) {
+        db.delete(TABLE_NAME, COLUMN_FOOD_ID + "=?", new String[] { String.valueOf(foodId) });
+    }
+
+    /**
+     * Replace the whole trigram table with the trigrams of every recipe name.
+     */
+    static void rebuild(SQLiteDatabase db) {
+        db.delete(TABLE_NAME, null, null);
+        long lastId = 0;
+        boolean more = true;
+        while (more) {
+            Cursor cursor = db.query(FoodEntry.TABLE_NAME,
+                    new String[] { FoodEntry._ID, FoodEntry.COLUMN_FOOD_NAME },
+                    FoodEntry._ID + " > ?", new String[] { String.valueOf(lastId) },
+                    null, null, FoodEntry._ID, String.valueOf(REBUILD_BATCH_SIZE));
+            try {
+                more = cursor.getCount() == REBUILD_BATCH_SIZE;
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    insert(db, lastId, cursor.getString(1));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of typing mistakes tolerated in search terms of the given length:
+     * none in very short terms, where any change makes another word.
+     */
+    static int getMaxDistance(int length) {
+        if (length <= 2) {
+            return 0;
+        }
+        return length <= 5 ? 1 : 2;
+    }
+
+    /**
+     * Build the query of the candidate recipes: the ones sharing at least minShared of the
+     * trigrams, with the number they share, most first. Only the primary key of the trigram
+     * table is read. The trigrams are inlined, since they are plain numbers.
+     */
+    static String buildCandidateQuery(Set<Long> trigrams, int minShared, int limit) {
+        StringBuilder in = new StringBuilder();
+        for (long trigram : trigrams) {
+            if (in.length() > 0) {
+                in.append(',');
+            }
+            in.append(trigram);
+        }
+        return "SELECT " + COLUMN_FOOD_ID + ", COUNT(*) AS shared FROM " + TABLE_NAME
+                + " WHERE " + COLUMN_TRIGRAM + " IN (" + in + ")"
+                + " GROUP BY " + COLUMN_FOOD_ID
+                + " HAVING shared >= " + minShared
+                + " ORDER BY shared DESC"
+                + " LIMIT " + limit;
+    }
+
+    /**
+     * Returns the smallest number of typing mistakes (inserted, deleted, replaced or swapped
+     * neighbouring letters) that turn the search terms into the start of the name from one of
+     * its words on, so "lazanja" is 1 from "Lazanje sa spanaćem" and "pala" is 0 from
+     * "Palačinke". Returns maxDistance + 1 as soon as the distance is known to be over
+     * maxDistance.
+     *
+     * @param query     the folded words of the search terms, joined with single spaces
+     * @param nameWords the folded words of the name
+     */
+    static int distance(String query, List<String> nameWords, int maxDistance) {
+        StringBuilder joined = new StringBuilder();
+        int[] wordStarts = new int[nameWords.size()];
+        for (int i = 0; i < nameWords.size(); i++) {
+            if (i > 0) {
+                joined.append(' ');
+            }
+            wordStarts[i] = joined.length();
+            joined.append(nameWords.get(i));
+        }
+        String name = joined.toString();
+
+        int best = maxDistance + 1;
+        int n = query.length();
+        int[] beforePrevious = new int[n + 1];
+        int[] previous = new int[n + 1];
+        int[] current = new int[n + 1];
+        for (int start : wordStarts) {
+            // Row j holds the distances from the first i letters of the query to the j letters
+            // of the name after start; the best end of the name part is the lowest last column
+            for (int i = 0; i <= n; i++) {
+                previous[i] = i;
+            }
+            int distance = previous[n];
+            for (int j = start; j < name.length() && j - start < n + maxDistance; j++) {
+                current[0] = j - start + 1;
+                int rowMin = current[0];
+                for (int i = 1; i <= n; i++) {
+                    int cost = query.charAt(i - 1) == name.charAt(j) ? 0 : 1;
+                    current[i] = Math.min(Math.min(current[i - 1] + 1, previous[i] + 1),
+                            previous[i - 1] + cost);
+                    if (i > 1 && j > start && query.charAt(i - 1) == name.charAt(j - 1)
+                            && query.charAt(i - 2) == name.charAt(j)) {
+                        current[i] = Math.min(current[i], beforePrevious[i - 2] + 1);
+                    }
+                    rowMin = Math.min(rowMin, current[i]);
+                }
+                distance = Math.min(distance, current[n]);
+                int[] swap = beforePrevious;
+                beforePrevious = previous;
+                previous = current;
+                current = swap;
+                if (rowMin >= best) {
+                    // Every later column only grows from this row
+                    break;
+                }
+            }
+            best = Math.min(best, distance);
+            if (best == 0) {
+                break;
+            }
+        }
+        return best;
+    }
+}
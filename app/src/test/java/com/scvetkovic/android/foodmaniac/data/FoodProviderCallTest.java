@@ -0,0 +1,75 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import com.scvetkovic.android.foodmaniac.BuildConfig;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the arguments of the {@link FoodProvider#call} methods.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class FoodProviderCallTest {
+
+    private FoodProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mProvider = new FoodProvider();
+        mProvider.attachInfo(RuntimeEnvironment.application, null);
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+    }
+
+    @Test
+    public void setsSlowQueryThreshold() {
+        assertNull(mProvider.call(FoodContract.METHOD_SET_SLOW_QUERY_THRESHOLD, "250", null));
+        String dump = dump();
+        assertTrue(dump, dump.contains("Slow queries (over 250 ms"));
+
+        assertNull(mProvider.call(FoodContract.METHOD_SET_SLOW_QUERY_THRESHOLD, "0", null));
+        dump = dump();
+        assertTrue(dump, dump.contains("Slow queries (over 0 ms"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingSlowQueryThreshold() {
+        mProvider.call(FoodContract.METHOD_SET_SLOW_QUERY_THRESHOLD, null, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonNumericSlowQueryThreshold() {
+        mProvider.call(FoodContract.METHOD_SET_SLOW_QUERY_THRESHOLD, "fast", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeSlowQueryThreshold() {
+        mProvider.call(FoodContract.METHOD_SET_SLOW_QUERY_THRESHOLD, "-1", null);
+    }
+
+    /**
+     * Returns what "adb shell dumpsys activity provider FoodProvider" prints.
+     */
+    private String dump() {
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        mProvider.dump(null, writer, null);
+        writer.flush();
+        return out.toString();
+    }
+}
@@ -0,0 +1,183 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.app.Application;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.scvetkovic.android.foodmaniac.BuildConfig;
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fills a provider with generated recipes up to a target size, then measures what the user
+ * waits for at that size: opening the catalog from a cold start, opening a recipe and saving
+ * it, and how much space the database takes.
+ *
+ * The requests are the ones the screens make: the first page of
+ * {@link com.scvetkovic.android.foodmaniac.FoodPagedAdapter}, the recipe and similar recipes
+ * loaders of {@link com.scvetkovic.android.foodmaniac.EditorActivity}, and an update of every
+ * field like its save. It only runs when the number of recipes is given in the
+ * "loadtest.recipes" system property (./gradlew test -PloadTestRecipes=100000), so the usual
+ * test runs stay fast and quiet; it is skipped otherwise. The seed of the recipes is read from
+ * "loadtest.seed", and the report is printed to the test's output.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class LoadTest {
+
+    /** Seed of the recipes when the property isn't set */
+    private static final long DEFAULT_SEED = 1;
+
+    /** Number of recipes inserted per transaction while filling */
+    private static final int FILL_BATCH_SIZE = 500;
+
+    /** Number of cold catalog opens, each with a new provider */
+    private static final int CATALOG_SAMPLES = 10;
+
+    /** Runs of the recipe opens and saves, before and while measuring */
+    private static final int WARMUP = 5;
+    private static final int SAMPLES = 50;
+
+    /** Number of recipes in the first page of the catalog */
+    private static final int PAGE_SIZE = 50;
+
+    /** Columns of the catalog rows */
+    private static final String[] CATALOG_COLUMNS = {
+            FoodEntry._ID,
+            FoodEntry.COLUMN_FOOD_NAME,
+            FoodEntry.COLUMN_FOOD_HASHTAGS,
+            FoodEntry.COLUMN_FOOD_TIME
+    };
+
+    /** Columns the editor reads for a recipe */
+    private static final String[] EDITOR_COLUMNS = {
+            FoodEntry._ID,
+            FoodEntry.COLUMN_FOOD_NAME,
+            FoodEntry.COLUMN_FOOD_HASHTAGS,
+            FoodEntry.COLUMN_FOOD_MEAL,
+            FoodEntry.COLUMN_FOOD_TIME,
+            FoodEntry.COLUMN_FOOD_INGREDIENTS,
+            FoodEntry.COLUMN_FOOD_INSTRUCIONS
+    };
+
+    private Application mContext;
+    private FoodProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mProvider = open();
+    }
+
+    @After
+    public void tearDown() {
+        mProvider.shutdown();
+        mContext.deleteDatabase(FoodDbHelper.DATABASE_NAME);
+    }
+
+    @Test
+    public void measureAtTargetSize() {
+        String recipesProperty = System.getProperty("loadtest.recipes");
+        Assume.assumeTrue("No loadtest.recipes given", recipesProperty != null);
+        int recipes = Integer.parseInt(recipesProperty);
+        long seed = Long.parseLong(System.getProperty("loadtest.seed",
+                String.valueOf(DEFAULT_SEED)));
+
+        RecipeGenerator generator = new RecipeGenerator(seed);
+        long start = System.nanoTime();
+        for (int filled = 0; filled < recipes; filled += FILL_BATCH_SIZE) {
+            ContentValues[] batch = new ContentValues[Math.min(FILL_BATCH_SIZE, recipes - filled)];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = generator.next();
+            }
+            mProvider.bulkInsert(FoodEntry.CONTENT_URI, batch);
+        }
+        long fillMillis = (System.nanoTime() - start) / 1000000;
+        File database = mContext.getDatabasePath(FoodDbHelper.DATABASE_NAME);
+        long databaseBytes = database.length();
+        long walBytes = new File(database.getPath() + "-wal").length();
+
+        // A cold start opens the database and queries the first page; the file is still in
+        // the OS page cache, as it usually is when the app is opened again soon
+        long[] catalogNanos = new long[CATALOG_SAMPLES];
+        for (int i = 0; i < CATALOG_SAMPLES; i++) {
+            mProvider.shutdown();
+            start = System.nanoTime();
+            mProvider = open();
+            Uri firstPage = FoodEntry.buildPageUri(FoodEntry._ID, PAGE_SIZE, null, 0);
+            assertEquals(Math.min(PAGE_SIZE, recipes), ProviderBenchmarkTest.readAll(
+                    mProvider.query(firstPage, CATALOG_COLUMNS, null, null, null)));
+            catalogNanos[i] = System.nanoTime() - start;
+        }
+
+        List<Long> ids = readIds();
+        assertEquals(recipes, ids.size());
+        Random random = new Random(seed);
+        long[] detailNanos = new long[SAMPLES];
+        long[] saveNanos = new long[SAMPLES];
+        for (int i = -WARMUP; i < SAMPLES; i++) {
+            long id = ids.get(random.nextInt(ids.size()));
+            Uri uri = ContentUris.withAppendedId(FoodEntry.CONTENT_URI, id);
+            start = System.nanoTime();
+            assertEquals(1, ProviderBenchmarkTest.readAll(
+                    mProvider.query(uri, EDITOR_COLUMNS, null, null, null)));
+            ProviderBenchmarkTest.readAll(mProvider.query(FoodEntry.buildSimilarUri(id),
+                    new String[] { FoodEntry._ID, FoodEntry.COLUMN_FOOD_NAME }, null, null, null));
+            long opened = System.nanoTime();
+            assertEquals(1, mProvider.update(uri, generator.next(), null, null));
+            long saved = System.nanoTime();
+            if (i >= 0) {
+                detailNanos[i] = opened - start;
+                saveNanos[i] = saved - opened;
+            }
+        }
+        assertTrue("Empty database file " + database, databaseBytes > 0);
+
+        System.out.println(recipes + " recipes filled in " + fillMillis + " ms, database "
+                + databaseBytes + " bytes + " + walBytes + " bytes of log");
+        System.out.println(new ProviderBenchmarkTest.Result("catalog_open", recipes, 1, 0,
+                catalogNanos));
+        System.out.println(new ProviderBenchmarkTest.Result("detail_open", recipes, 1, WARMUP,
+                detailNanos));
+        System.out.println(new ProviderBenchmarkTest.Result("save", recipes, 1, WARMUP,
+                saveNanos));
+    }
+
+    private FoodProvider open() {
+        FoodProvider provider = new FoodProvider();
+        provider.attachInfo(mContext, null);
+        return provider;
+    }
+
+    private List<Long> readIds() {
+        List<Long> ids = new ArrayList<>();
+        Cursor cursor = mProvider.query(FoodEntry.CONTENT_URI, new String[] { FoodEntry._ID },
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+}
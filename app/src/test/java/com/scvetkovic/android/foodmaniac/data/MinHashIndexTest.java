@@ -0,0 +1,181 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+
+import com.scvetkovic.android.foodmaniac.BuildConfig;
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the similar recipes {@link MinHashIndex} finds through its buckets with the exact
+ * answer, the Jaccard index of the ingredient terms computed for every pair of recipes.
+ *
+ * The recipes come in families of {@link #FAMILY_SIZE}: every recipe of a family leaves out
+ * {@link #DROPPED_TERMS} of the family's {@link #FAMILY_TERMS} ingredients, and all of them have
+ * the same {@link #COMMON_TERMS} common ones, so a recipe's top {@link #LIMIT} similar recipes
+ * are the other members of its family, at least 70% similar, and any other recipe is at most
+ * 10% similar.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class MinHashIndexTest {
+
+    /** Number of similar recipes looked up, as on the recipe screen */
+    private static final int LIMIT = 10;
+
+    private static final int FAMILIES = 50;
+    private static final int FAMILY_SIZE = LIMIT + 1;
+    private static final int FAMILY_TERMS = 12;
+    private static final int DROPPED_TERMS = 2;
+    private static final String[] COMMON_TERMS = { "salt", "oil" };
+
+    /** Lowest average fraction of the exact top recipes that must be found */
+    private static final double MIN_RECALL = 0.95;
+
+    /** Seed of the dropped ingredients, so every run sees the same recipes */
+    private static final long SEED = 19;
+
+    private FoodDbHelper mDbHelper;
+
+    /** The _id of every recipe, and its ingredient terms at the same position */
+    private List<Long> mIds;
+    private List<Set<String>> mTerms;
+
+    @Before
+    public void setUp() {
+        mDbHelper = new FoodDbHelper(RuntimeEnvironment.application);
+        mIds = new ArrayList<>();
+        mTerms = new ArrayList<>();
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        Random random = new Random(SEED);
+        db.beginTransaction();
+        try {
+            for (int family = 0; family < FAMILIES; family++) {
+                for (int member = 0; member < FAMILY_SIZE; member++) {
+                    List<String> ingredients = new ArrayList<>();
+                    for (int term = 0; term < FAMILY_TERMS; term++) {
+                        ingredients.add(term(family, term));
+                    }
+                    for (int dropped = 0; dropped < DROPPED_TERMS; dropped++) {
+                        ingredients.remove(random.nextInt(ingredients.size()));
+                    }
+                    for (String common : COMMON_TERMS) {
+                        ingredients.add("100 g " + common);
+                    }
+                    String text = TextUtils.join("\n", ingredients);
+
+                    ContentValues values = new ContentValues();
+                    values.put(FoodEntry.COLUMN_FOOD_NAME, "Recipe " + family + "." + member);
+                    values.put(FoodEntry.COLUMN_FOOD_MEAL, FoodEntry.MEAL_LUNCH);
+                    values.put(FoodEntry.COLUMN_FOOD_TIME, 30);
+                    long id = db.insertOrThrow(FoodEntry.TABLE_NAME, null, values);
+                    MinHashIndex.update(db, id, text);
+                    mIds.add(id);
+                    mTerms.add(IngredientIndex.tokenize(text));
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+    }
+
+    @Test
+    public void findsTheExactSimilarRecipes() {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        double recallSum = 0;
+        for (int i = 0; i < mIds.size(); i++) {
+            Set<Long> exact = findSimilarExhaustive(i);
+            assertEquals(LIMIT, exact.size());
+
+            int hits = 0;
+            for (MinHashIndex.Neighbour neighbour : MinHashIndex.findSimilar(db, mIds.get(i),
+                    LIMIT)) {
+                if (exact.contains(neighbour.foodId)) {
+                    hits++;
+                }
+            }
+            recallSum += (double) hits / exact.size();
+        }
+        double recall = recallSum / mIds.size();
+        assertTrue("Recall@" + LIMIT + " of " + recall + " is under " + MIN_RECALL,
+                recall >= MIN_RECALL);
+    }
+
+    @Test
+    public void doesNotFindTheRecipeItself() {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        for (MinHashIndex.Neighbour neighbour : MinHashIndex.findSimilar(db, mIds.get(0), LIMIT)) {
+            assertTrue(neighbour.foodId != mIds.get(0));
+        }
+    }
+
+    /**
+     * Returns the _ids of the {@link #LIMIT} recipes with the highest Jaccard index with the
+     * recipe at the given position, found by comparing it with every other recipe.
+     */
+    private Set<Long> findSimilarExhaustive(int position) {
+        Set<String> terms = mTerms.get(position);
+        final double[] similarities = new double[mIds.size()];
+        List<Integer> others = new ArrayList<>();
+        for (int i = 0; i < mIds.size(); i++) {
+            if (i == position) {
+                continue;
+            }
+            Set<String> shared = new HashSet<>(terms);
+            shared.retainAll(mTerms.get(i));
+            similarities[i] = (double) shared.size()
+                    / (terms.size() + mTerms.get(i).size() - shared.size());
+            others.add(i);
+        }
+        Collections.sort(others, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(similarities[b], similarities[a]);
+            }
+        });
+        Set<Long> ids = new HashSet<>();
+        for (int i = 0; i < LIMIT; i++) {
+            ids.add(mIds.get(others.get(i)));
+        }
+        return ids;
+    }
+
+    /**
+     * Returns an ingredient made of letters only, as the tokenizer drops numbers: "spice", then
+     * the family and the term as letters from "a" to "j" for their digits.
+     */
+    private static String term(int family, int term) {
+        StringBuilder word = new StringBuilder("spice");
+        for (char digit : (family + "x" + term).toCharArray()) {
+            word.append(digit == 'x' ? 'x' : (char) ('a' + digit - '0'));
+        }
+        return word.toString();
+    }
+}
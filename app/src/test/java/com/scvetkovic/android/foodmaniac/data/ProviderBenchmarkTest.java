@@ -0,0 +1,447 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.app.Application;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.util.JsonWriter;
+
+import com.scvetkovic.android.foodmaniac.BuildConfig;
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+import com.scvetkovic.android.foodmaniac.data.FoodContract.IngredientEntry;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the main operations of {@link FoodProvider} and {@link FoodDbHelper} on collections
+ * of given sizes made by a {@link RecipeGenerator}: single and bulk inserts, single recipe
+ * lookups, a scan of the whole catalog, sorted and filtered catalog pages, a query with a
+ * selection and sort order, and deleting everything. The similar recipes found through the
+ * {@link MinHashIndex} buckets are timed next to the exact answer they approximate, which
+ * compares the ingredient terms of the recipe with those of every other one.
+ *
+ * It runs on the JVM with Robolectric's SQLite, so the numbers compare builds with each other
+ * rather than tell how long a phone takes. Like JMH, every operation is first run a number of
+ * warm-up times that aren't measured, so the page cache, the statement cache and the JIT have
+ * settled, and then timed one run at a time.
+ *
+ * It only runs when the sizes are given in the "benchmark.sizes" system property, a comma
+ * separated list like "1000,10000" (./gradlew test -PbenchmarkSizes=1000,10000), so the usual
+ * test runs stay fast and quiet; it is skipped otherwise. The results are written as JSON to
+ * a new file in the directory of the "benchmark.output" property, one file per run:
+ * {"format": 1, "app_version": ..., "jvm": ..., "time": ..., "results": [
+ * {"operation": "insert", "recipes": 1000, "ops_per_sample": 1, "warmup": 20, "samples": 200,
+ * "mean_us": ..., "min_us": ..., "p50_us": ..., "p90_us": ..., "p99_us": ..., "max_us": ...},
+ * ...]}
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class ProviderBenchmarkTest {
+
+    /** Directory of the result files when the property isn't set */
+    private static final String DEFAULT_OUTPUT = "build/benchmarks";
+
+    /** Version of the result file format */
+    private static final int FORMAT_VERSION = 1;
+
+    /** Runs of the operations on a single recipe or page */
+    private static final int POINT_WARMUP = 20;
+    private static final int POINT_ITERATIONS = 200;
+
+    /** Runs of the operations reading every recipe */
+    private static final int SCAN_WARMUP = 2;
+    private static final int SCAN_ITERATIONS = 10;
+
+    /** Number of recipes inserted per bulk insert while filling a collection */
+    private static final int BULK_INSERT_SIZE = 500;
+
+    /** Number of recipes in a catalog page */
+    private static final int PAGE_SIZE = 50;
+
+    /** Number of similar recipes looked up, as on the recipe screen */
+    private static final int SIMILAR_LIMIT = 10;
+
+    /** Seed of the collections and of the lookups, so every run measures the same work */
+    private static final long SEED = 42;
+
+    /** Columns the catalog reads for its list */
+    private static final String[] CATALOG_COLUMNS = {
+            FoodEntry._ID,
+            FoodEntry.COLUMN_FOOD_NAME,
+            FoodEntry.COLUMN_FOOD_HASHTAGS,
+            FoodEntry.COLUMN_FOOD_TIME
+    };
+
+    /**
+     * The measurements of one operation on one collection.
+     */
+    static class Result {
+        final String operation;
+        final int recipes;
+        final int opsPerSample;
+        final int warmup;
+        final long[] sampleNanos;
+
+        Result(String operation, int recipes, int opsPerSample, int warmup, long[] sampleNanos) {
+            this.operation = operation;
+            this.recipes = recipes;
+            this.opsPerSample = opsPerSample;
+            this.warmup = warmup;
+            this.sampleNanos = sampleNanos;
+        }
+
+        long getMeanMicros() {
+            long sum = 0;
+            for (long nanos : sampleNanos) {
+                sum += nanos;
+            }
+            return sampleNanos.length > 0 ? sum / sampleNanos.length / 1000 : 0;
+        }
+
+        /** Returns the sample under which the given fraction of them fell, in microseconds */
+        long getPercentileMicros(double fraction) {
+            if (sampleNanos.length == 0) {
+                return 0;
+            }
+            long[] sorted = sampleNanos.clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(fraction * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000;
+        }
+
+        @Override
+        public String toString() {
+            return operation + " on " + recipes + " recipes: mean " + getMeanMicros() + " us, p50 "
+                    + getPercentileMicros(0.5) + " us, p99 " + getPercentileMicros(0.99) + " us";
+        }
+    }
+
+    /**
+     * A timed operation, run once per sample.
+     */
+    private interface Operation {
+        void run(int iteration);
+    }
+
+    private final List<Result> mResults = new ArrayList<>();
+
+    /** Provider, recipes and lookups of the collection being measured */
+    private FoodProvider mProvider;
+    private int mRecipes;
+    private Random mRandom;
+    private RecipeGenerator mGenerator;
+
+    /** IDs of the recipes of the collection, for the lookups */
+    private final List<Long> mIds = new ArrayList<>();
+
+    @Test
+    public void measureProvider() throws IOException {
+        String sizes = System.getProperty("benchmark.sizes");
+        Assume.assumeTrue("No benchmark.sizes given", sizes != null);
+        Application context = RuntimeEnvironment.application;
+        for (String size : sizes.split(",")) {
+            mRecipes = Integer.parseInt(size.trim());
+            mRandom = new Random(SEED);
+            mGenerator = new RecipeGenerator(SEED);
+            context.deleteDatabase(FoodDbHelper.DATABASE_NAME);
+            mProvider = new FoodProvider();
+            mProvider.attachInfo(context, null);
+            try {
+                measure();
+            } finally {
+                mProvider.shutdown();
+                context.deleteDatabase(FoodDbHelper.DATABASE_NAME);
+            }
+        }
+
+        File directory = new File(System.getProperty("benchmark.output", DEFAULT_OUTPUT));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File file = new File(directory, "provider-" + System.currentTimeMillis() + ".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writeResults(writer);
+        } finally {
+            writer.close();
+        }
+        System.out.println("Provider benchmark written to " + file.getAbsolutePath());
+    }
+
+    private void writeResults(Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject();
+        writer.name("format").value(FORMAT_VERSION);
+        writer.name("app_version").value(BuildConfig.VERSION_NAME + " (" + BuildConfig.VERSION_CODE + ")");
+        writer.name("jvm").value(System.getProperty("java.vm.name") + " "
+                + System.getProperty("java.version"));
+        writer.name("time").value(System.currentTimeMillis());
+        writer.name("results").beginArray();
+        for (Result result : mResults) {
+            writer.beginObject();
+            writer.name("operation").value(result.operation);
+            writer.name("recipes").value(result.recipes);
+            writer.name("ops_per_sample").value(result.opsPerSample);
+            writer.name("warmup").value(result.warmup);
+            writer.name("samples").value(result.sampleNanos.length);
+            writer.name("mean_us").value(result.getMeanMicros());
+            writer.name("min_us").value(result.getPercentileMicros(0));
+            writer.name("p50_us").value(result.getPercentileMicros(0.5));
+            writer.name("p90_us").value(result.getPercentileMicros(0.9));
+            writer.name("p99_us").value(result.getPercentileMicros(0.99));
+            writer.name("max_us").value(result.getPercentileMicros(1));
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+
+    private void measure() {
+        fill();
+        readIds();
+        assertEquals(mRecipes, mIds.size());
+
+        measure("insert", 1, POINT_WARMUP, POINT_ITERATIONS, new Operation() {
+            @Override
+            public void run(int iteration) {
+                mProvider.insert(FoodEntry.CONTENT_URI, mGenerator.next());
+            }
+        });
+        measure("lookup_id", 1, POINT_WARMUP, POINT_ITERATIONS, new Operation() {
+            @Override
+            public void run(int iteration) {
+                long id = mIds.get(mRandom.nextInt(mIds.size()));
+                readAll(mProvider.query(ContentUris.withAppendedId(FoodEntry.CONTENT_URI, id),
+                        null, null, null, null));
+            }
+        });
+        measure("scan_catalog", 1, SCAN_WARMUP, SCAN_ITERATIONS, new Operation() {
+            @Override
+            public void run(int iteration) {
+                readAll(mProvider.query(FoodEntry.CONTENT_URI, CATALOG_COLUMNS, null, null,
+                        FoodEntry.COLUMN_FOOD_NAME_KEY));
+            }
+        });
+        for (final String sortColumn : new String[] {
+                FoodEntry.COLUMN_FOOD_NAME, FoodEntry.COLUMN_FOOD_TIME }) {
+            measure("page_sorted_" + sortColumn, 1, POINT_WARMUP, POINT_ITERATIONS, new Operation() {
+                @Override
+                public void run(int iteration) {
+                    readAll(mProvider.query(FoodEntry.buildPageUri(sortColumn, PAGE_SIZE, null, 0),
+                            CATALOG_COLUMNS, null, null, null));
+                }
+            });
+        }
+        measure("page_filtered", 1, POINT_WARMUP, POINT_ITERATIONS, new Operation() {
+            @Override
+            public void run(int iteration) {
+                Uri uri = FoodEntry.filterPageUri(FoodEntry.buildPageUri(
+                        FoodEntry.COLUMN_FOOD_NAME, PAGE_SIZE, null, 0),
+                        iteration % 4, 30);
+                readAll(mProvider.query(uri, CATALOG_COLUMNS, null, null, null));
+            }
+        });
+        measure("query_selection_sorted", 1, SCAN_WARMUP, SCAN_ITERATIONS, new Operation() {
+            @Override
+            public void run(int iteration) {
+                readAll(mProvider.query(FoodEntry.CONTENT_URI, CATALOG_COLUMNS,
+                        FoodEntry.COLUMN_FOOD_MEAL + "=? AND " + FoodEntry.COLUMN_FOOD_TIME + "<=?",
+                        new String[] { String.valueOf(iteration % 4), "60" },
+                        FoodEntry.COLUMN_FOOD_TIME + " DESC"));
+            }
+        });
+        measureSimilar();
+        measure("delete_all", 1, 0, 1, new Operation() {
+            @Override
+            public void run(int iteration) {
+                mProvider.delete(FoodEntry.CONTENT_URI, null, null);
+            }
+        });
+    }
+
+    /**
+     * Time the lookup of similar recipes through the signature buckets, and the exhaustive
+     * lookup it saves, on the same recipes. Both read the database directly, so only the
+     * lookups themselves are compared.
+     */
+    private void measureSimilar() {
+        final FoodDbHelper dbHelper = new FoodDbHelper(RuntimeEnvironment.application);
+        try {
+            final SQLiteDatabase db = dbHelper.getReadableDatabase();
+            measure("similar", 1, POINT_WARMUP, POINT_ITERATIONS, new Operation() {
+                @Override
+                public void run(int iteration) {
+                    long id = mIds.get(mRandom.nextInt(mIds.size()));
+                    MinHashIndex.findSimilar(db, id, SIMILAR_LIMIT);
+                }
+            });
+            measure("similar_exhaustive", 1, SCAN_WARMUP, SCAN_ITERATIONS, new Operation() {
+                @Override
+                public void run(int iteration) {
+                    long id = mIds.get(mRandom.nextInt(mIds.size()));
+                    findSimilarExhaustive(db, id, SIMILAR_LIMIT);
+                }
+            });
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    /**
+     * Returns the _ids of up to limit recipes with the highest Jaccard index of their
+     * ingredient terms with those of the given recipe, walking the terms of every recipe.
+     */
+    private static List<Long> findSimilarExhaustive(SQLiteDatabase db, long foodId, int limit) {
+        Set<Long> terms = new HashSet<>();
+        Cursor cursor = db.query(IngredientEntry.LINK_TABLE_NAME,
+                new String[] { IngredientEntry.COLUMN_INGREDIENT_ID },
+                IngredientEntry.COLUMN_FOOD_ID + "=?", new String[] { String.valueOf(foodId) },
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                terms.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        final List<Long> ids = new ArrayList<>();
+        final List<Double> similarities = new ArrayList<>();
+        cursor = db.query(IngredientEntry.LINK_TABLE_NAME, new String[] {
+                        IngredientEntry.COLUMN_FOOD_ID, IngredientEntry.COLUMN_INGREDIENT_ID },
+                null, null, null, null, IngredientEntry.COLUMN_FOOD_ID);
+        try {
+            long current = -1;
+            int shared = 0;
+            int total = 0;
+            while (true) {
+                boolean more = cursor.moveToNext();
+                long id = more ? cursor.getLong(0) : -1;
+                if (id != current) {
+                    if (current >= 0 && current != foodId && shared > 0) {
+                        ids.add(current);
+                        similarities.add((double) shared / (terms.size() + total - shared));
+                    }
+                    current = id;
+                    shared = 0;
+                    total = 0;
+                }
+                if (!more) {
+                    break;
+                }
+                total++;
+                if (terms.contains(cursor.getLong(1))) {
+                    shared++;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(similarities.get(b), similarities.get(a));
+            }
+        });
+        List<Long> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, order.size()); i++) {
+            top.add(ids.get(order.get(i)));
+        }
+        return top;
+    }
+
+    /**
+     * Fill the collection with bulk inserts, timing every one of them.
+     */
+    private void fill() {
+        final int batches = (mRecipes + BULK_INSERT_SIZE - 1) / BULK_INSERT_SIZE;
+        measure("bulk_insert", BULK_INSERT_SIZE, 0, batches, new Operation() {
+            @Override
+            public void run(int iteration) {
+                int first = iteration * BULK_INSERT_SIZE;
+                ContentValues[] batch = new ContentValues[Math.min(BULK_INSERT_SIZE, mRecipes - first)];
+                for (int i = 0; i < batch.length; i++) {
+                    batch[i] = mGenerator.next();
+                }
+                mProvider.bulkInsert(FoodEntry.CONTENT_URI, batch);
+            }
+        });
+    }
+
+    private void readIds() {
+        mIds.clear();
+        Cursor cursor = mProvider.query(FoodEntry.CONTENT_URI, new String[] { FoodEntry._ID },
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                mIds.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void measure(String name, int opsPerSample, int warmup, int iterations,
+                         Operation operation) {
+        for (int i = 0; i < warmup; i++) {
+            operation.run(i);
+        }
+        long[] samples = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            operation.run(warmup + i);
+            samples[i] = System.nanoTime() - start;
+        }
+        Result result = new Result(name, mRecipes, opsPerSample, warmup, samples);
+        System.out.println(result);
+        mResults.add(result);
+    }
+
+    /**
+     * Read every column of every row, like a list binding its items would, and close the cursor.
+     * Returns the number of rows read.
+     */
+    static int readAll(Cursor cursor) {
+        try {
+            int rows = 0;
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    cursor.getString(i);
+                }
+                rows++;
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import com.scvetkovic.android.foodmaniac.BuildConfig;
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs EXPLAIN QUERY PLAN over every combination of filter, search, sort column and page
+ * position the catalog can ask {@link FoodProvider} for, and fails on plans that scan the
+ * recipe table or sort rows in a temporary B-tree instead of reading them in order from an
+ * index. A search may sort its matches, which it reads by _id from the full-text index.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class QueryPlanTest {
+
+    /** Columns of a catalog row */
+    private static final String[] CATALOG_COLUMNS = {
+            FoodEntry._ID,
+            FoodEntry.COLUMN_FOOD_NAME,
+            FoodEntry.COLUMN_FOOD_HASHTAGS,
+            FoodEntry.COLUMN_FOOD_TIME
+    };
+
+    private static final String[] SORT_COLUMNS = {
+            FoodEntry._ID, FoodEntry.COLUMN_FOOD_NAME, FoodEntry.COLUMN_FOOD_TIME
+    };
+
+    /** No search, and a search typed in the catalog */
+    private static final String[] SEARCH_TEXTS = { "", "recipe" };
+
+    /** Recipes in the database when the plans are read after ANALYZE */
+    private static final int RECIPES = 500;
+
+    private FoodDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mDbHelper = new FoodDbHelper(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+    }
+
+    @Test
+    public void pageQueriesUseIndexesOnNewDatabase() {
+        assertIndexed(mDbHelper.getReadableDatabase());
+    }
+
+    @Test
+    public void pageQueriesUseIndexesAfterAnalyze() {
+        // Upgraded databases are analyzed, which can change the planner's choices
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        NameCollator collator = new NameCollator(Locale.getDefault());
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < RECIPES; i++) {
+                ContentValues values = new ContentValues();
+                String name = "Recipe " + i;
+                values.put(FoodEntry.COLUMN_FOOD_NAME, name);
+                values.put(FoodEntry.COLUMN_FOOD_NAME_KEY, collator.getKey(name));
+                values.put(FoodEntry.COLUMN_FOOD_HASHTAGS, "#tag" + i % 10);
+                values.put(FoodEntry.COLUMN_FOOD_MEAL, i % 4);
+                values.put(FoodEntry.COLUMN_FOOD_TIME, 5 * (i % 60));
+                db.insert(FoodEntry.TABLE_NAME, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.execSQL("ANALYZE;");
+        assertIndexed(db);
+    }
+
+    private static void assertIndexed(SQLiteDatabase db) {
+        List<String> failures = new ArrayList<>();
+        for (String sortColumn : SORT_COLUMNS) {
+            for (int meal : new int[] { -1, FoodEntry.MEAL_BREAKFAST }) {
+                for (int maxTime : new int[] { -1, 20 }) {
+                    for (String searchText : SEARCH_TEXTS) {
+                        for (boolean firstPage : new boolean[] { true, false }) {
+                            Uri page = FoodEntry.buildPageUri(sortColumn, 50,
+                                    firstPage ? null : "1", 1);
+                            Uri uri = FoodEntry.searchPageUri(
+                                    FoodEntry.filterPageUri(page, meal, maxTime), searchText);
+                            String plan = explain(db, uri);
+                            if (!isIndexed(plan, sortColumn, meal >= 0, !searchText.isEmpty())) {
+                                failures.add(uri + ": " + plan);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue("Catalog queries not using an index:\n" + TextUtils.join("\n", failures),
+                failures.isEmpty());
+    }
+
+    /**
+     * Returns the query plan of a page query, one step per line.
+     */
+    private static String explain(SQLiteDatabase db, Uri uri) {
+        List<String> args = new ArrayList<>();
+        String sql = FoodProvider.buildPageQuery(uri, CATALOG_COLUMNS, null, null, args);
+        return SlowQueryLog.explain(db, sql, args.toArray(new String[args.size()]));
+    }
+
+    /**
+     * Returns whether the plan reads the rows in order from an index. Walking the table itself
+     * is only fine when sorting on _id without a meal filter or a search, since the table is
+     * stored in _id order and the page stops after its limit. A search can instead look its
+     * matches up by _id and sort them, as there are only as many as the terms match.
+     */
+    private static boolean isIndexed(String plan, String sortColumn, boolean mealFilter,
+                                     boolean search) {
+        if (plan.contains("TEMP B-TREE") && !search) {
+            return false;
+        }
+        for (String step : plan.split("\n")) {
+            // "SCAN TABLE food" on older SQLite versions, "SCAN food" on newer ones. The
+            // full-text table is scanned through its index, "SCAN fts VIRTUAL TABLE INDEX".
+            boolean tableScan = step.startsWith("SCAN") && !step.contains("INDEX");
+            if (tableScan && (mealFilter || search || !sortColumn.equals(FoodEntry._ID))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,222 @@
+package com.scvetkovic.android.foodmaniac.data;
+
+import android.content.ContentValues;
+import android.text.TextUtils;
+
+import com.scvetkovic.android.foodmaniac.data.FoodContract.FoodEntry;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates synthetic recipes shaped like the ones people type in, for the benchmarks and load
+ * tests. The same seed always gives the same sequence of recipes.
+ *
+ * Distributions, per recipe:
+ * <ul>
+ * <li>name: one to six words, mostly two or three, from a list of dish words;</li>
+ * <li>hashtags: none to eight, about two on average, the popular ones much more often (Zipf);</li>
+ * <li>ingredients: three to twenty lines, eight on average, with a quantity and a unit, the
+ * common ingredients much more often (Zipf);</li>
+ * <li>instructions: three to twenty-five steps of one to five sentences each, about 2 KB on
+ * average and up to about 6 KB;</li>
+ * <li>meal: 20% breakfast, 35% lunch, 30% dinner, 15% dessert;</li>
+ * <li>preparation time: log-normal around 35 minutes, in steps of 5, from 5 to 300.</li>
+ * </ul>
+ * Names get a number when they repeat, like people's "Pita 2", so the name sort has few ties.
+ */
+final class RecipeGenerator {
+
+    private static final String[] DISHES = {
+            "pita", "palačinke", "sarma", "gulaš", "pasulj", "musaka", "torta", "kolač", "supa",
+            "čorba", "salata", "pogača", "burek", "gibanica", "proja", "pljeskavica", "ćufte",
+            "paprikaš", "rižoto", "pasta", "lazanje", "omlet", "pire", "krofne", "štrudla",
+            "pancakes", "soup", "stew", "pie", "cake", "salad", "bread", "curry", "risotto"
+    };
+
+    private static final String[] QUALIFIERS = {
+            "domaća", "bakina", "brza", "posna", "punjena", "pečena", "kuvana", "prolećna",
+            "zimska", "sa sirom", "sa mesom", "sa pečurkama", "od spanaća", "od tikvica",
+            "classic", "easy", "spicy", "vegan"
+    };
+
+    /** Hashtags, the most used first */
+    private static final String[] TAGS = {
+            "#brzo", "#lako", "#slatko", "#posno", "#ručak", "#doručak", "#večera", "#vegan",
+            "#zimsko", "#letnje", "#praznik", "#slavlje", "#deca", "#zdravo", "#bezglutena",
+            "#budžet", "#tradicionalno", "#italijansko", "#grčko", "#meksičko", "#kinesko",
+            "#roštilj", "#rerna", "#jednolonac", "#testo", "#supa", "#salata", "#kolač",
+            "#torta", "#piće", "#smoothie", "#proteini", "#keto", "#bezlaktoze", "#piknik",
+            "#doručakutrku", "#nedelja", "#gosti", "#užina", "#ostaci"
+    };
+
+    /** Ingredients, the most used first */
+    private static final String[] INGREDIENTS = {
+            "so", "ulje", "luk", "brašno", "jaja", "šećer", "mleko", "beli luk", "biber",
+            "puter", "paradajz", "paprika", "krompir", "šargarepa", "sir", "pavlaka", "voda",
+            "limun", "peršun", "pirinač", "piletina", "mleveno meso", "kupus", "pečurke",
+            "tikvice", "spanać", "jogurt", "kajmak", "prašak za pecivo", "vanilin šećer",
+            "čokolada", "orasi", "lešnici", "med", "cimet", "kvasac", "mleveni biber",
+            "aleva paprika", "lovorov list", "kečap", "senf", "majonez", "pasulj", "grašak",
+            "boranija", "kukuruz", "testenina", "kore za pitu", "slanina", "šunka", "kobasica",
+            "riba", "tuna", "pavlaka za kuvanje", "mozzarella", "parmezan", "bosiljak",
+            "origano", "ruzmarin", "đumbir", "soja sos", "sirće", "maslinovo ulje", "jabuke",
+            "banane", "jagode", "maline", "suvo grožđe", "kokos", "kakao", "gustin", "želatin"
+    };
+
+    private static final String[] UNITS = { "g", "kg", "ml", "dl", "l", "kašika", "kašičica",
+            "šolja", "komad", "prstohvat" };
+
+    private static final String[] VERBS = { "Iseckati", "Dodati", "Promešati", "Propržiti",
+            "Skuvati", "Umutiti", "Sipati", "Ostaviti", "Začiniti", "Preliti", "Izmiksati",
+            "Zagrejati", "Poređati", "Posuti", "Ispeći" };
+
+    private static final String[] DETAILS = { "na srednjoj vatri", "dok ne porumeni",
+            "uz stalno mešanje", "u zagrejanoj rerni na 200 stepeni", "u dubljoj posudi",
+            "dok se ne zgusne", "i ostaviti da se prohladi", "pa dobro sjediniti",
+            "po ukusu", "u tankom mlazu", "dok ne omekša", "poklopljeno" };
+
+    /** Cumulative weights of the meal categories, in the order of {@link #MEALS} */
+    private static final int[] MEALS = { FoodEntry.MEAL_BREAKFAST, FoodEntry.MEAL_LUNCH,
+            FoodEntry.MEAL_DINNER, FoodEntry.MEAL_DESSERT };
+    private static final double[] MEAL_WEIGHTS = { 0.20, 0.55, 0.85, 1.0 };
+
+    /** Exponent of the Zipf distributions of the hashtags and ingredients */
+    private static final double ZIPF_EXPONENT = 1.0;
+
+    private static final double[] TAG_WEIGHTS = zipf(TAGS.length);
+    private static final double[] INGREDIENT_WEIGHTS = zipf(INGREDIENTS.length);
+
+    private final Random mRandom;
+
+    /** Number of recipes generated so far, used to number the repeated names */
+    private int mCount;
+
+    RecipeGenerator(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Returns the values of the next recipe, ready for {@link FoodProvider#insert}.
+     */
+    ContentValues next() {
+        ContentValues values = new ContentValues();
+        values.put(FoodEntry.COLUMN_FOOD_NAME, nextName());
+        values.put(FoodEntry.COLUMN_FOOD_HASHTAGS, nextTags());
+        values.put(FoodEntry.COLUMN_FOOD_MEAL, MEALS[pick(MEAL_WEIGHTS)]);
+        values.put(FoodEntry.COLUMN_FOOD_TIME, nextTime());
+        values.put(FoodEntry.COLUMN_FOOD_INGREDIENTS, nextIngredients());
+        values.put(FoodEntry.COLUMN_FOOD_INSTRUCIONS, nextInstructions());
+        mCount++;
+        return values;
+    }
+
+    private String nextName() {
+        // 1 word 15%, 2 words 35%, 3 words 30%, then fewer and fewer up to 6
+        int words = 1 + pick(new double[] { 0.15, 0.50, 0.80, 0.92, 0.98, 1.0 });
+        StringBuilder name = new StringBuilder(capitalize(DISHES[mRandom.nextInt(DISHES.length)]));
+        for (int i = 1; i < words; i++) {
+            name.append(' ').append(i % 2 == 1
+                    ? QUALIFIERS[mRandom.nextInt(QUALIFIERS.length)]
+                    : DISHES[mRandom.nextInt(DISHES.length)]);
+        }
+        // One recipe in four shares its name with an earlier one and gets a number
+        if (mCount > 0 && mRandom.nextInt(4) == 0) {
+            name.append(' ').append(2 + mRandom.nextInt(1 + mCount / 100));
+        }
+        return name.toString();
+    }
+
+    private String nextTags() {
+        int count = Math.min(poisson(2.0), 8);
+        Set<String> tags = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            // A popular tag drawn twice is only written once, like people do
+            tags.add(TAGS[pick(TAG_WEIGHTS)]);
+        }
+        return TextUtils.join(" ", tags);
+    }
+
+    private int nextTime() {
+        double minutes = Math.exp(Math.log(35) + 0.7 * mRandom.nextGaussian());
+        return (int) Math.max(5, Math.min(300, Math.round(minutes / 5) * 5));
+    }
+
+    private String nextIngredients() {
+        int count = Math.min(20, 3 + poisson(5.0));
+        StringBuilder ingredients = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                ingredients.append('\n');
+            }
+            ingredients.append(1 + mRandom.nextInt(mRandom.nextBoolean() ? 10 : 500)).append(' ')
+                    .append(UNITS[mRandom.nextInt(UNITS.length)]).append(' ')
+                    .append(INGREDIENTS[pick(INGREDIENT_WEIGHTS)]);
+        }
+        return ingredients.toString();
+    }
+
+    private String nextInstructions() {
+        int steps = Math.min(25, 3 + poisson(9.0));
+        StringBuilder instructions = new StringBuilder();
+        for (int step = 1; step <= steps; step++) {
+            if (step > 1) {
+                instructions.append("\n\n");
+            }
+            instructions.append(step).append('.');
+            for (int sentence = 1 + mRandom.nextInt(5); sentence > 0; sentence--) {
+                instructions.append(' ').append(VERBS[mRandom.nextInt(VERBS.length)]).append(' ')
+                        .append(INGREDIENTS[pick(INGREDIENT_WEIGHTS)]).append(", zatim ")
+                        .append(INGREDIENTS[pick(INGREDIENT_WEIGHTS)]).append(' ')
+                        .append(DETAILS[mRandom.nextInt(DETAILS.length)]).append(", oko ")
+                        .append(1 + mRandom.nextInt(30)).append(" minuta.");
+            }
+        }
+        return instructions.toString();
+    }
+
+    /**
+     * Returns the index of the first cumulative weight over a uniform draw.
+     */
+    private int pick(double[] cumulativeWeights) {
+        int index = Arrays.binarySearch(cumulativeWeights, mRandom.nextDouble());
+        return Math.min(index >= 0 ? index + 1 : -index - 1, cumulativeWeights.length - 1);
+    }
+
+    /**
+     * Returns a draw from a Poisson distribution with the given mean (Knuth's method, fine for
+     * small means).
+     */
+    private int poisson(double mean) {
+        double limit = Math.exp(-mean);
+        double product = mRandom.nextDouble();
+        int count = 0;
+        while (product > limit) {
+            product *= mRandom.nextDouble();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the cumulative weights of a Zipf distribution over n items.
+     */
+    private static double[] zipf(int n) {
+        double[] weights = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            weights[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            weights[i] /= sum;
+        }
+        return weights;
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}